@@ -0,0 +1,165 @@
+package com.aspirecsl.labs.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark in this module, except the {@link VirtualThreadBenchmark}, at 1, 4, 16 and
+ * 64 threads with the GC profiler attached, and compares the results with a baseline.
+ *
+ * <p>For every benchmark and thread count two figures are kept: the throughput, in operations per
+ * microsecond, and the normalised allocation rate, in bytes per operation. A run fails if any
+ * throughput drops, or any allocation rate grows, by more than the tolerance relative to the
+ * baseline. A result the baseline has no figure for is reported as <tt>UNCHECKED</tt> and does not
+ * fail the run. Figures are only comparable on the machine they were recorded on, and the
+ * committed baseline has none yet, so until they are recorded this is a report of the results, not
+ * a regression gate.
+ *
+ * <pre>
+ *   mvn -Pbenchmarks verify                       # from the parent directory
+ *   java -cp benchmarks/target/benchmarks.jar com.aspirecsl.labs.benchmarks.BenchmarkRunner
+ * </pre>
+ *
+ * <p>System properties:
+ *
+ * <ul>
+ *   <li><tt>baseline</tt>: the baseline file; <tt>benchmarks/baseline.properties</tt> by default
+ *   <li><tt>baseline.record</tt>: if <tt>true</tt>, (re)writes the baseline with this run's
+ *       results instead of checking them
+ *   <li><tt>tolerance</tt>: the accepted relative regression; <tt>0.10</tt> by default
+ *   <li><tt>include</tt>: a regular expression restricting the benchmarks run
+ * </ul>
+ *
+ * @author anoopr
+ */
+public final class BenchmarkRunner {
+
+  private static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+
+  private static final String THROUGHPUT = ".throughput";
+
+  private static final String ALLOCATION = ".alloc";
+
+  /** allocation rates below this many bytes per operation are treated as noise * */
+  private static final double ALLOCATION_NOISE_FLOOR = 1.0;
+
+  private BenchmarkRunner() {}
+
+  public static void main(String[] args) throws RunnerException, IOException {
+    final Path baseline =
+        Paths.get(System.getProperty("baseline", "benchmarks/baseline.properties"));
+    final double tolerance = Double.parseDouble(System.getProperty("tolerance", "0.10"));
+    final String include =
+        System.getProperty("include", BenchmarkRunner.class.getPackage().getName());
+
+    final Map<String, Double> results = new TreeMap<>();
+    for (int threads : THREAD_COUNTS) {
+      final Options options =
+          new OptionsBuilder()
+              .include(include)
+              // brings its own concurrency; run on its own
+              .exclude(VirtualThreadBenchmark.class.getSimpleName())
+              .threads(threads)
+              .addProfiler(GCProfiler.class)
+              .build();
+      for (RunResult runResult : new Runner(options).run()) {
+        final String key = runResult.getParams().getBenchmark() + "@" + threads;
+        results.put(key + THROUGHPUT, runResult.getPrimaryResult().getScore());
+        for (Map.Entry<String, Result> secondary : runResult.getSecondaryResults().entrySet()) {
+          if (secondary.getKey().endsWith("gc.alloc.rate.norm")) {
+            results.put(key + ALLOCATION, secondary.getValue().getScore());
+          }
+        }
+      }
+    }
+
+    if (Boolean.getBoolean("baseline.record")) {
+      record(results, baseline);
+      System.out.println("Recorded the baseline in " + baseline.toAbsolutePath());
+      return;
+    }
+    final Map<String, Double> expected =
+        Files.exists(baseline) ? load(baseline) : new TreeMap<String, Double>();
+    final List<String> unchecked = new ArrayList<>();
+    for (Map.Entry<String, Double> result : results.entrySet()) {
+      if (!expected.containsKey(result.getKey())) {
+        unchecked.add(String.format("UNCHECKED %s: %.3f", result.getKey(), result.getValue()));
+      }
+    }
+    unchecked.forEach(System.out::println);
+    final List<String> regressions = compare(results, expected, tolerance);
+    if (!regressions.isEmpty()) {
+      regressions.forEach(System.out::println);
+      System.exit(1);
+    }
+    System.out.printf(
+        "No regressions against %s; %d of %d results checked%n",
+        baseline.toAbsolutePath(), results.size() - unchecked.size(), results.size());
+  }
+
+  /**
+   * Returns a description of every result that regressed against the baseline by more than the
+   * tolerance; results the baseline has no figure for, and baseline figures not in the results,
+   * e.g. of benchmarks left out by <tt>include</tt>, are skipped.
+   */
+  static List<String> compare(
+      Map<String, Double> results, Map<String, Double> baseline, double tolerance) {
+    final List<String> regressions = new ArrayList<>();
+    for (Map.Entry<String, Double> result : results.entrySet()) {
+      final Double expected = baseline.get(result.getKey());
+      if (expected == null) {
+        continue;
+      }
+      final double actual = result.getValue();
+      final boolean regressed =
+          result.getKey().endsWith(THROUGHPUT)
+              ? actual < expected * (1 - tolerance)
+              : actual > ALLOCATION_NOISE_FLOOR && actual > expected * (1 + tolerance);
+      if (regressed) {
+        regressions.add(
+            String.format(
+                "REGRESSION %s: %.3f against a baseline of %.3f",
+                result.getKey(), actual, expected));
+      }
+    }
+    return regressions;
+  }
+
+  private static Map<String, Double> load(Path file) throws IOException {
+    final Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      properties.load(in);
+    }
+    final Map<String, Double> values = new TreeMap<>();
+    for (String key : properties.stringPropertyNames()) {
+      values.put(key, Double.valueOf(properties.getProperty(key)));
+    }
+    return values;
+  }
+
+  private static void record(Map<String, Double> results, Path file) throws IOException {
+    final Properties properties = new Properties();
+    results.forEach((key, value) -> properties.setProperty(key, String.valueOf(value)));
+    try (OutputStream out = Files.newOutputStream(file)) {
+      properties.store(
+          out, "circuit-breaker benchmark baseline, JVM " + System.getProperty("java.vm.version"));
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package com.aspirecsl.labs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aspirecsl.labs.CircuitBreakerExecutor;
+
+/**
+ * Measures the throughput of {@link CircuitBreakerExecutor#execute()} when the task always passes,
+ * with every benchmark thread sharing a single executor (<tt>execute</tt>), against the same calls
+ * with every thread holding an executor of its own (<tt>executeUnshared</tt>).
+ *
+ * <p>In that steady healthy state the shared executor performs no shared-memory writes, so its
+ * throughput should scale with the thread count like that of the unshared executors, which share
+ * nothing. {@link BenchmarkRunner} measures both at 1, 4, 16 and 64 threads; a shared throughput
+ * that falls behind the unshared one as threads are added is the cost of a write on the success
+ * path. The comparison is made within one run, so it needs no recorded baseline.
+ *
+ * @author anoopr
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClosedSuccessBenchmark {
+
+  private CircuitBreakerExecutor<Integer> circuitBreakerExecutor;
+
+  @Setup
+  public void setUp() {
+    circuitBreakerExecutor = CircuitBreakerExecutor.create("closed-success", () -> 1, 5);
+  }
+
+  @Benchmark
+  public Integer execute() throws Exception {
+    return circuitBreakerExecutor.execute();
+  }
+
+  @Benchmark
+  public Integer executeUnshared(Unshared unshared) throws Exception {
+    return unshared.circuitBreakerExecutor.execute();
+  }
+
+  /** An executor per benchmark thread. */
+  @State(Scope.Thread)
+  public static class Unshared {
+
+    private CircuitBreakerExecutor<Integer> circuitBreakerExecutor;
+
+    @Setup
+    public void setUp() {
+      circuitBreakerExecutor = CircuitBreakerExecutor.create("closed-success-unshared", () -> 1, 5);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.aspirecsl.labs.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aspirecsl.labs.CircuitBreakerExecutor;
+import com.aspirecsl.labs.ExecutionResult;
+
+/**
+ * Measures {@link CircuitBreakerExecutor#tryExecute()} on a single executor shared by every
+ * benchmark thread, with a task that fails one call in a hundred.
+ *
+ * <p>Each failure increments the error count in the shared state word and the next pass resets
+ * it, so unlike {@link ClosedSuccessBenchmark} this exercises the compare-and-set paths under
+ * contention. {@link BenchmarkRunner} measures it at 1, 4, 16 and 64 threads.
+ *
+ * @author anoopr
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContendedExecutionBenchmark {
+
+  private static final IllegalStateException FAILURE = new IllegalStateException();
+
+  private CircuitBreakerExecutor<Integer> circuitBreakerExecutor;
+
+  @Setup
+  public void setUp() {
+    circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            "contended-execution",
+            () -> {
+              if (ThreadLocalRandom.current().nextInt(100) == 0) {
+                throw FAILURE;
+              }
+              return 1;
+            },
+            // five consecutive failures across all threads are vanishingly unlikely
+            5);
+  }
+
+  @Benchmark
+  public ExecutionResult<Integer> tryExecute() {
+    return circuitBreakerExecutor.tryExecute();
+  }
+}
@@ -0,0 +1,88 @@
+package com.aspirecsl.labs.benchmarks;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aspirecsl.labs.CircuitBreakerConfig;
+import com.aspirecsl.labs.CircuitBreakerExecutor;
+import com.aspirecsl.labs.ExecutionResult;
+
+/**
+ * Measures the failure path of {@link CircuitBreakerExecutor#tryExecute()}: classifying the
+ * exception thrown by the task and recording the outcome.
+ *
+ * <ul>
+ *   <li><tt>recorded</tt>: the task throws a subclass of a listed exception, which is recorded as
+ *       an error in a sliding window that never trips
+ *   <li><tt>ignored</tt>: the task throws an exception that is not listed and is not recorded
+ * </ul>
+ *
+ * <p>The exceptions are preallocated so that the benchmark measures the executor rather than the
+ * cost of filling in stack traces.
+ *
+ * @author anoopr
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FailureClassificationBenchmark {
+
+  private static final SocketTimeoutException RECORDED = new SocketTimeoutException();
+
+  private static final IllegalStateException IGNORED = new IllegalStateException();
+
+  private CircuitBreakerExecutor<Integer> recordedFailure;
+
+  private CircuitBreakerExecutor<Integer> ignoredFailure;
+
+  @Setup
+  public void setUp() {
+    final CircuitBreakerConfig config =
+        CircuitBreakerConfig.builder()
+            .failOnExceptions(Collections.singletonList(IOException.class))
+            .timeBasedSlidingWindow(Duration.ofSeconds(10), 10)
+            .minimumNumberOfCalls(Integer.MAX_VALUE)
+            .build();
+    recordedFailure =
+        CircuitBreakerExecutor.create(
+            "recorded-failure",
+            () -> {
+              throw RECORDED;
+            },
+            config);
+    ignoredFailure =
+        CircuitBreakerExecutor.create(
+            "ignored-failure",
+            () -> {
+              throw IGNORED;
+            },
+            config);
+  }
+
+  @Benchmark
+  public ExecutionResult<Integer> recorded() {
+    return recordedFailure.tryExecute();
+  }
+
+  @Benchmark
+  public ExecutionResult<Integer> ignored() {
+    return ignoredFailure.tryExecute();
+  }
+}
@@ -0,0 +1,72 @@
+package com.aspirecsl.labs.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.aspirecsl.labs.CircuitBreakerConfig;
+import com.aspirecsl.labs.CircuitBreakerExecutor;
+import com.aspirecsl.labs.KeyedCircuitBreakerExecutor;
+
+/**
+ * Prints the heap taken per key by a {@link KeyedCircuitBreakerExecutor} and by one {@link
+ * CircuitBreakerExecutor} per key held in a <tt>ConcurrentHashMap</tt>, the two set-ups compared
+ * for throughput by {@link KeyedExecutionBenchmark}.
+ *
+ * <p>The figures are the growth of the used heap, after repeated full collections, while the
+ * structure is built and held; they are approximate but stable from run to run with a fixed heap.
+ *
+ * <pre>
+ *   java -Xms4g -Xmx4g -cp benchmarks/target/benchmarks.jar \
+ *       com.aspirecsl.labs.benchmarks.FootprintReport [keyCount]
+ * </pre>
+ *
+ * @author anoopr
+ */
+public final class FootprintReport {
+
+  private FootprintReport() {}
+
+  public static void main(String[] args) throws Exception {
+    final int keyCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    final CircuitBreakerConfig config = CircuitBreakerConfig.ofDefaults();
+    final Callable<Integer> task = () -> 1;
+    final Callable<Integer> failing =
+        () -> {
+          throw new IllegalStateException();
+        };
+
+    long before = usedHeap();
+    final KeyedCircuitBreakerExecutor keyed =
+        KeyedCircuitBreakerExecutor.create("footprint", keyCount, config);
+    for (long key = 0; key < keyCount; key++) {
+      try {
+        keyed.execute(key, failing);
+      } catch (IllegalStateException expected) {
+        // every key takes a slot on its first error
+      }
+    }
+    report("keyed table", usedHeap() - before, keyed.size());
+
+    before = usedHeap();
+    final Map<Long, CircuitBreakerExecutor<Integer>> perObject = new ConcurrentHashMap<>();
+    for (long key = 0; key < keyCount; key++) {
+      perObject.put(key, CircuitBreakerExecutor.create("key-" + key, task, config));
+    }
+    report("executor per key", usedHeap() - before, perObject.size());
+  }
+
+  private static void report(String name, long bytes, int keys) {
+    System.out.printf(
+        "%-18s %,12d keys %,15d bytes %8.1f bytes/key%n", name, keys, bytes, (double) bytes / keys);
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,135 @@
+package com.aspirecsl.labs.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aspirecsl.labs.CircuitBreakerConfig;
+import com.aspirecsl.labs.CircuitBreakerExecutor;
+import com.aspirecsl.labs.KeyedCircuitBreakerExecutor;
+
+/**
+ * Compares calls under a per-key breaker held in a {@link KeyedCircuitBreakerExecutor} with calls
+ * under one {@link CircuitBreakerExecutor} per key held in a <tt>ConcurrentHashMap</tt>, picking
+ * a random key on every call.
+ *
+ * <p>Every key has failed once during setup, so every key holds a slot in the keyed table, and has
+ * an executor in the map. With keys spread over far more memory than the caches hold this mostly
+ * measures cache misses: one or two per call in the table, several per call in the map. See {@link
+ * FootprintReport} for the heap taken by each.
+ *
+ * <p>The <tt>churn</tt> benchmarks fail a random key once and then succeed on it, so in the keyed
+ * table every call pair claims a free slot and gives it back, which is the path the table's
+ * compare-and-set protocol adds to; the tolerance is high enough that no key ever trips. As an
+ * executor's task is fixed, both run the same task, which fails when a per-thread flag is set.
+ *
+ * @author anoopr
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class KeyedExecutionBenchmark {
+
+  private static final Callable<Integer> TASK = () -> 1;
+
+  private static final Callable<Integer> FAILING =
+      () -> {
+        throw new IllegalStateException();
+      };
+
+  private static final ThreadLocal<boolean[]> FAIL = ThreadLocal.withInitial(() -> new boolean[1]);
+
+  private static final Callable<Integer> CHURN =
+      () -> {
+        if (FAIL.get()[0]) {
+          throw new IllegalStateException();
+        }
+        return 1;
+      };
+
+  @Param({"10000", "1000000"})
+  public int keyCount;
+
+  private KeyedCircuitBreakerExecutor keyed;
+
+  private Map<Long, CircuitBreakerExecutor<Integer>> perObject;
+
+  private KeyedCircuitBreakerExecutor churnKeyed;
+
+  private Map<Long, CircuitBreakerExecutor<Integer>> churnPerObject;
+
+  @Setup
+  public void setUp() {
+    final CircuitBreakerConfig config = CircuitBreakerConfig.ofDefaults();
+    final CircuitBreakerConfig tolerant =
+        CircuitBreakerConfig.builder().errorToleranceFactor(1000).build();
+    keyed = KeyedCircuitBreakerExecutor.create("keyed-execution", keyCount, config);
+    perObject = new ConcurrentHashMap<>(keyCount * 2);
+    for (long key = 0; key < keyCount; key++) {
+      try {
+        keyed.execute(key, FAILING);
+      } catch (Exception expected) {
+        // every key takes a slot on its first error
+      }
+      perObject.put(key, CircuitBreakerExecutor.create("key-" + key, TASK, config));
+    }
+    churnKeyed = KeyedCircuitBreakerExecutor.create("keyed-churn", keyCount, tolerant);
+    churnPerObject = new ConcurrentHashMap<>(keyCount * 2);
+    for (long key = 0; key < keyCount; key++) {
+      churnPerObject.put(key, CircuitBreakerExecutor.create("churn-" + key, CHURN, tolerant));
+    }
+  }
+
+  @Benchmark
+  public Integer keyed() throws Exception {
+    return keyed.execute(ThreadLocalRandom.current().nextInt(keyCount), TASK);
+  }
+
+  @Benchmark
+  public Integer perObject() throws Exception {
+    return perObject.get((long) ThreadLocalRandom.current().nextInt(keyCount)).execute();
+  }
+
+  @Benchmark
+  public Integer keyedChurn() throws Exception {
+    final long key = ThreadLocalRandom.current().nextInt(keyCount);
+    return churn(() -> churnKeyed.execute(key, CHURN));
+  }
+
+  @Benchmark
+  public Integer perObjectChurn() throws Exception {
+    final CircuitBreakerExecutor<Integer> executor =
+        churnPerObject.get((long) ThreadLocalRandom.current().nextInt(keyCount));
+    return churn(executor::execute);
+  }
+
+  private static Integer churn(Callable<Integer> call) throws Exception {
+    final boolean[] fail = FAIL.get();
+    fail[0] = true;
+    try {
+      call.call();
+    } catch (IllegalStateException expected) {
+      // the key claims a slot, or its breaker counts an error
+    } finally {
+      fail[0] = false;
+    }
+    return call.call();
+  }
+}
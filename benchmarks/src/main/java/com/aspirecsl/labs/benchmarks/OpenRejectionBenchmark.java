@@ -0,0 +1,68 @@
+package com.aspirecsl.labs.benchmarks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aspirecsl.labs.CircuitBreakerConfig;
+import com.aspirecsl.labs.CircuitBreakerExecutor;
+import com.aspirecsl.labs.ExecutionResult;
+
+/**
+ * Measures the cost of rejecting calls once the circuit is open, both by throwing from {@link
+ * CircuitBreakerExecutor#execute()} and by returning from {@link
+ * CircuitBreakerExecutor#tryExecute()}.
+ *
+ * <p>The executor is tripped during setup and stays open for far longer than the run.
+ *
+ * @author anoopr
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpenRejectionBenchmark {
+
+  private CircuitBreakerExecutor<Integer> circuitBreakerExecutor;
+
+  @Setup
+  public void setUp() {
+    circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            "open-rejection",
+            () -> {
+              throw new IllegalStateException();
+            },
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(1)
+                .waitDurationInOpenState(Duration.ofDays(1))
+                .build());
+    circuitBreakerExecutor.tryExecute();
+  }
+
+  @Benchmark
+  public Object execute() {
+    try {
+      return circuitBreakerExecutor.execute();
+    } catch (Exception e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public ExecutionResult<Integer> tryExecute() {
+    return circuitBreakerExecutor.tryExecute();
+  }
+}
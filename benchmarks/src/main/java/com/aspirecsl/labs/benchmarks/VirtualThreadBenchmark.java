@@ -0,0 +1,119 @@
+package com.aspirecsl.labs.benchmarks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aspirecsl.labs.CircuitBreakerConfig;
+import com.aspirecsl.labs.CircuitBreakerExecutor;
+import com.aspirecsl.labs.VirtualThreadTask;
+
+/**
+ * Measures the time to complete 100,000 concurrent calls of a task that blocks for 10 ms, as if
+ * on I/O, each under a {@link CircuitBreakerExecutor} with a 5 s timeout.
+ *
+ * <ul>
+ *   <li><tt>virtual</tt>: every call is made on a virtual thread of its own, and the task is a
+ *       {@link VirtualThreadTask}, which runs it on another virtual thread
+ *   <li><tt>platform</tt>: the calls are made on a pool of platform threads, and the task is timed
+ *       out by the executor's own call timeout
+ * </ul>
+ *
+ * <p>The <tt>virtual</tt> mode needs Java 21 or later and fails its setup otherwise. This benchmark
+ * brings its own concurrency, so {@link BenchmarkRunner} leaves it out; run it on its own:
+ *
+ * <pre>
+ *   java -jar benchmarks/target/benchmarks.jar VirtualThreadBenchmark
+ * </pre>
+ *
+ * @author anoopr
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class VirtualThreadBenchmark {
+
+  private static final int CALLS = 100_000;
+
+  private static final int PLATFORM_POOL_SIZE = 512;
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+  private static final Callable<Integer> BLOCKING_TASK =
+      () -> {
+        Thread.sleep(10);
+        return 1;
+      };
+
+  @Param({"virtual", "platform"})
+  public String mode;
+
+  private ExecutorService callers;
+
+  private CircuitBreakerExecutor<Integer> circuitBreakerExecutor;
+
+  @Setup
+  public void setUp() throws Exception {
+    if ("virtual".equals(mode)) {
+      if (!VirtualThreadTask.isVirtual()) {
+        throw new IllegalStateException("The virtual mode needs Java 21 or later");
+      }
+      // looked up reflectively, as this module is compiled for Java 8
+      callers =
+          (ExecutorService)
+              Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      circuitBreakerExecutor =
+          CircuitBreakerExecutor.create(
+              "virtual-threads",
+              VirtualThreadTask.create(BLOCKING_TASK, TIMEOUT),
+              CircuitBreakerConfig.ofDefaults());
+    } else {
+      callers = Executors.newFixedThreadPool(PLATFORM_POOL_SIZE);
+      circuitBreakerExecutor =
+          CircuitBreakerExecutor.create(
+              "platform-threads",
+              BLOCKING_TASK,
+              CircuitBreakerConfig.builder().timeoutDuration(TIMEOUT).build());
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    callers.shutdownNow();
+  }
+
+  @Benchmark
+  public int concurrentCalls() throws InterruptedException, ExecutionException {
+    final List<Future<Integer>> calls = new ArrayList<>(CALLS);
+    for (int i = 0; i < CALLS; i++) {
+      calls.add(callers.submit(circuitBreakerExecutor::execute));
+    }
+    int sum = 0;
+    for (Future<Integer> call : calls) {
+      sum += call.get();
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,510 @@
+package com.aspirecsl.labs.flow;
+
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import com.aspirecsl.labs.BulkheadFullException;
+import com.aspirecsl.labs.CallNotPermittedException;
+import com.aspirecsl.labs.CircuitBreakerExecutor;
+import com.aspirecsl.labs.CircuitState;
+
+/**
+ * A <tt>Flow.Processor</tt> that calls an asynchronous task for every element of a stream under
+ * the circuit of a <tt>CircuitBreakerExecutor</tt>, and publishes the results.
+ *
+ * <pre>
+ *   CircuitBreakerProcessor&lt;Event, Ack&gt; processor =
+ *       CircuitBreakerProcessor.create(executor, client::publishAsync, 16, DROP);
+ *   events.subscribe(processor);
+ *   processor.subscribe(acks);
+ * </pre>
+ *
+ * <p>Each element is called through {@link CircuitBreakerExecutor#executeAsync}, so the call is
+ * recorded with the breaker, and timed out, like any other asynchronous call of the executor. The
+ * thread that delivers an element only starts its call; the results are published in the order
+ * the calls complete, not the order of the elements. A call that fails, whatever it throws, is
+ * recorded and its element dropped; the stream goes on. An element the executor rejects, because
+ * its circuit is open or its bulkhead is full, is, depending on the {@link OpenCircuitStrategy},
+ * either dropped or the end of the stream: the subscription to the publisher is cancelled and the
+ * subscriber receives the exception of the rejection. A result the executor serves in place of a
+ * rejected call, if it is configured to serve stale results, is published like any other.
+ *
+ * <p>At most <tt>maxInFlight</tt> elements are requested from the publisher and not yet published
+ * or dropped, and no more than the subscriber has asked for: the calls in flight and the results
+ * held back for want of demand are bounded together. Every published or dropped element is
+ * replaced by requesting one more. Requests, the cancellation and every signal to the subscriber
+ * go out serially through a work-in-progress counter, as the specification requires, and never
+ * before the subscriber's <tt>onSubscribe</tt> has returned.
+ *
+ * <p>The processor allocates what an element needs up front: <tt>maxInFlight</tt> reusable call
+ * objects, which hold an element while its call is in flight and are the callback it completes,
+ * and a ring of as many slots for the results held back. Per element, only the stage the task
+ * returns and the stages, with their completion nodes, that the executor and the processor chain
+ * onto it are allocated. The thread that delivers an element waits for a permit of the executor's
+ * bulkhead up to its <em>max wait duration</em>, if one is configured; keep it at its default of
+ * zero to never block the publisher.
+ *
+ * <p>A processor serves one publisher and one subscriber; a second subscriber receives an
+ * <tt>IllegalStateException</tt>.
+ *
+ * @author anoopr
+ */
+public final class CircuitBreakerProcessor<T, R> implements Flow.Processor<T, R> {
+
+  /** What to do with an element the executor rejects. */
+  public enum OpenCircuitStrategy {
+    /** end the stream with the exception of the rejection * */
+    FAIL_FAST,
+
+    /** drop the element and request another in its place * */
+    DROP
+  }
+
+  /** the executor whose circuit guards the calls * */
+  private final CircuitBreakerExecutor<R> executor;
+
+  /** the call made for each element * */
+  private final ElementTask<? super T, R> task;
+
+  /** the largest value of <tt>maxInFlight</tt>, as what it bounds is allocated up front * */
+  static final int MAX_IN_FLIGHT = 1 << 20;
+
+  /** the largest number of elements requested and not yet published or dropped * */
+  private final int maxInFlight;
+
+  /** what to do with an element the executor rejects * */
+  private final OpenCircuitStrategy openCircuitStrategy;
+
+  /** the number of elements whose call failed * */
+  private final LongAdder failed = new LongAdder();
+
+  /** the number of elements rejected by the executor * */
+  private final LongAdder rejected = new LongAdder();
+
+  /** the results not yet published * */
+  private final Ring<R> results;
+
+  /** the calls not holding an element; polled by the thread delivering elements only * */
+  private final Ring<Call> idleCalls;
+
+  /** the demand of the subscriber not yet met * */
+  private final AtomicLong requested = new AtomicLong();
+
+  /** the number of elements requested from the publisher and not yet published or dropped * */
+  private final AtomicInteger outstanding = new AtomicInteger();
+
+  /** the number of elements whose call has not completed * */
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  /** the number of pending passes over the demand and the signals * */
+  private final AtomicInteger wip = new AtomicInteger();
+
+  /** <tt>true</tt> once a subscriber has subscribed * */
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+
+  /** the exception the stream ends with, or <tt>null</tt> unless it fails * */
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  /** the subscription to the publisher, or <tt>null</tt> until the publisher subscribes * */
+  private volatile Flow.Subscription upstream;
+
+  /** the subscriber, or <tt>null</tt> until it subscribes * */
+  private volatile Flow.Subscriber<? super R> downstream;
+
+  /** <tt>true</tt> once the subscriber's <tt>onSubscribe</tt> has returned * */
+  private volatile boolean ready;
+
+  /** <tt>true</tt> once the subscriber has cancelled * */
+  private volatile boolean cancelled;
+
+  /** <tt>true</tt> once the publisher is to be cancelled * */
+  private volatile boolean cancelling;
+
+  /** <tt>true</tt> once the publisher has completed or failed * */
+  private volatile boolean done;
+
+  /** <tt>true</tt> once the subscriber has cancelled or been signalled to end; drain only * */
+  private boolean terminated;
+
+  /** <tt>true</tt> once the publisher has been cancelled; drain only * */
+  private boolean upstreamCancelled;
+
+  private CircuitBreakerProcessor(
+      CircuitBreakerExecutor<R> executor,
+      ElementTask<? super T, R> task,
+      int maxInFlight,
+      OpenCircuitStrategy openCircuitStrategy) {
+    this.executor = executor;
+    this.task = task;
+    this.maxInFlight = maxInFlight;
+    this.openCircuitStrategy = openCircuitStrategy;
+    this.results = new Ring<>(maxInFlight);
+    this.idleCalls = new Ring<>(maxInFlight);
+    for (int i = 0; i < maxInFlight; i++) {
+      idleCalls.offer(new Call());
+    }
+  }
+
+  /**
+   * Returns a <tt>CircuitBreakerProcessor</tt> instance with the supplied values.
+   *
+   * @param executor the executor whose circuit guards the calls; its own task is not called, and
+   *     if its bulkhead has a max wait duration the publisher's thread may wait that long for it
+   * @param task the call made for each element
+   * @param maxInFlight the largest number of elements requested from the publisher and not yet
+   *     published or dropped; as many calls and result slots are allocated up front
+   * @param openCircuitStrategy what to do with an element the executor rejects
+   * @return a <tt>CircuitBreakerProcessor</tt> instance with the supplied values
+   * @throws NullPointerException if any of the arguments is <tt>null</tt>
+   * @throws IllegalArgumentException if <tt>maxInFlight</tt> is not positive or is greater than
+   *     2<sup>20</sup>
+   */
+  public static <T, R> CircuitBreakerProcessor<T, R> create(
+      CircuitBreakerExecutor<R> executor,
+      ElementTask<? super T, R> task,
+      int maxInFlight,
+      OpenCircuitStrategy openCircuitStrategy) {
+    Objects.requireNonNull(executor);
+    Objects.requireNonNull(task);
+    Objects.requireNonNull(openCircuitStrategy);
+    if (maxInFlight <= 0 || maxInFlight > MAX_IN_FLIGHT) {
+      throw new IllegalArgumentException("Max in flight must be in [1, " + MAX_IN_FLIGHT + "]");
+    }
+    return new CircuitBreakerProcessor<>(executor, task, maxInFlight, openCircuitStrategy);
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super R> subscriber) {
+    Objects.requireNonNull(subscriber);
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(
+          new Flow.Subscription() {
+            @Override
+            public void request(long n) {}
+
+            @Override
+            public void cancel() {}
+          });
+      subscriber.onError(new IllegalStateException("The processor allows only one subscriber"));
+      return;
+    }
+    downstream = subscriber;
+    subscriber.onSubscribe(new Demand());
+    ready = true;
+    drain();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    Objects.requireNonNull(subscription);
+    if (upstream != null) {
+      subscription.cancel();
+      return;
+    }
+    upstream = subscription;
+    drain();
+  }
+
+  @Override
+  public void onNext(T element) {
+    Objects.requireNonNull(element);
+    if (cancelling) {
+      return;
+    }
+    inFlight.incrementAndGet();
+    final Call call = idleCall();
+    call.element = element;
+    // the executor fails the stage with whatever the task throws, so nothing escapes to the
+    // publisher
+    executor.executeAsync(call).whenComplete(call);
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    Objects.requireNonNull(throwable);
+    failure.compareAndSet(null, throwable);
+    done = true;
+    drain();
+  }
+
+  @Override
+  public void onComplete() {
+    done = true;
+    drain();
+  }
+
+  public CircuitState getState() {
+    return executor.getState();
+  }
+
+  /**
+   * Returns the number of elements whose call failed, and which were dropped.
+   *
+   * @return the number of elements whose call failed
+   */
+  public long getFailedCount() {
+    return failed.sum();
+  }
+
+  /**
+   * Returns the number of elements rejected by the executor.
+   *
+   * @return the number of elements rejected by the executor
+   */
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  /**
+   * Returns a call not holding an element. The publisher has delivered no more elements than were
+   * requested, so at most <tt>maxInFlight - 1</tt> calls hold one, and a call is given back before
+   * the element it held stops counting against that bound; one may only still be on its way back.
+   */
+  private Call idleCall() {
+    for (; ; ) {
+      final Call call = idleCalls.poll();
+      if (call != null) {
+        return call;
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  /** Queues the result of a call, or drops its element; runs on whichever thread completed it. */
+  private void onCallCompleted(R result, Throwable thrown) {
+    if (thrown == null && result == null) {
+      // the executor has recorded the call as passed; the element is dropped all the same
+      failed.increment();
+      outstanding.decrementAndGet();
+    } else if (thrown == null) {
+      results.offer(result);
+    } else {
+      final Throwable cause =
+          thrown instanceof CompletionException && thrown.getCause() != null
+              ? thrown.getCause()
+              : thrown;
+      if (cause instanceof CallNotPermittedException || cause instanceof BulkheadFullException) {
+        rejected.increment();
+        if (openCircuitStrategy == OpenCircuitStrategy.FAIL_FAST) {
+          fail(cause);
+        }
+      } else {
+        failed.increment();
+      }
+      outstanding.decrementAndGet();
+    }
+    // after the result is queued, so that the drain never completes the stream ahead of it
+    inFlight.decrementAndGet();
+    drain();
+  }
+
+  /** Ends the stream with the supplied exception and cancels the publisher. */
+  private void fail(Throwable cause) {
+    failure.compareAndSet(null, cause);
+    cancelling = true;
+    drain();
+  }
+
+  /** Adds to the demand of the subscriber. */
+  private void request(long n) {
+    for (; ; ) {
+      final long current = requested.get();
+      final long next = current + n < 0 ? Long.MAX_VALUE : current + n;
+      if (requested.compareAndSet(current, next)) {
+        break;
+      }
+    }
+    drain();
+  }
+
+  /**
+   * Publishes the results within the demand, then the terminal signal once it is due, and
+   * requests from the publisher the elements that make up for those published or dropped. Only
+   * one thread drains at a time; a thread that finds another draining leaves its work to it.
+   */
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      final Flow.Subscription subscription = upstream;
+      if (subscription != null && cancelling && !upstreamCancelled) {
+        upstreamCancelled = true;
+        subscription.cancel();
+      }
+      if (!terminated && ready) {
+        terminated = cancelled || publish();
+      }
+      if (terminated) {
+        while (results.poll() != null) {
+          // drops the results no longer wanted
+        }
+      } else if (subscription != null && !upstreamCancelled && !done) {
+        final long wanted = Math.min(maxInFlight, requested.get()) - outstanding.get();
+        if (wanted > 0) {
+          outstanding.addAndGet((int) wanted);
+          subscription.request(wanted);
+        }
+      }
+      missed = wip.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  /**
+   * Publishes the results within the demand, then the terminal signal if it is due; returns
+   * <tt>true</tt> once the subscriber has received it or has cancelled.
+   */
+  private boolean publish() {
+    final Flow.Subscriber<? super R> subscriber = downstream;
+    if (failure.get() != null) {
+      subscriber.onError(failure.get());
+      return true;
+    }
+    final long demand = requested.get();
+    long emitted = 0;
+    while (emitted != demand && !cancelled) {
+      final R result = results.poll();
+      if (result == null) {
+        break;
+      }
+      subscriber.onNext(result);
+      outstanding.decrementAndGet();
+      emitted++;
+    }
+    if (emitted != 0 && demand != Long.MAX_VALUE) {
+      requested.addAndGet(-emitted);
+    }
+    // the publisher's failure is set before it is done, so it is read again once done is seen
+    if (done && failure.get() == null && inFlight.get() == 0 && results.isEmpty()) {
+      subscriber.onComplete();
+      return true;
+    }
+    return cancelled;
+  }
+
+  /**
+   * The asynchronous call made for each element.
+   *
+   * @param <T> the type of the elements
+   * @param <R> the type of the results
+   */
+  @FunctionalInterface
+  public interface ElementTask<T, R> {
+
+    /**
+     * Starts the call for the supplied element; a synchronous task returns a stage that is already
+     * complete.
+     *
+     * @param element the element
+     * @return the stage that completes with the result published for the element, or
+     *     exceptionally if the call fails; the element is then dropped, as it is if the stage
+     *     completes with <tt>null</tt>
+     */
+    CompletionStage<R> call(T element);
+  }
+
+  /** The subscription of the subscriber. */
+  private final class Demand implements Flow.Subscription {
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        fail(new IllegalArgumentException("Demand must be > 0 but was " + n));
+        return;
+      }
+      CircuitBreakerProcessor.this.request(n);
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      cancelling = true;
+      drain();
+    }
+  }
+
+  /**
+   * The call for one element at a time: supplies the stage of the element's call to the executor
+   * and takes its outcome, then goes back to the idle calls.
+   */
+  private final class Call implements Supplier<CompletionStage<R>>, BiConsumer<R, Throwable> {
+
+    /** the element whose call is in flight, or <tt>null</tt> while idle * */
+    private T element;
+
+    @Override
+    public CompletionStage<R> get() {
+      return task.call(element);
+    }
+
+    @Override
+    public void accept(R result, Throwable thrown) {
+      element = null;
+      // given back first, so that it is idle before its element stops counting as outstanding
+      idleCalls.offer(this);
+      onCallCompleted(result, thrown);
+    }
+  }
+
+  /**
+   * A bounded queue that allocates nothing once created, which any thread may offer to and one
+   * thread at a time polls. The processor never holds more in it than its capacity, so an offer
+   * never waits for a poll.
+   */
+  private static final class Ring<E> {
+
+    /** the elements, at their sequence number modulo the number of slots * */
+    private final AtomicReferenceArray<E> slots;
+
+    /** the number of slots, less one; the number of slots is a power of two * */
+    private final int mask;
+
+    /** the sequence number of the next element offered * */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** the sequence number of the next element polled; the polling thread only * */
+    private long head;
+
+    private Ring(int capacity) {
+      final int size = Integer.highestOneBit(capacity * 2 - 1);
+      this.slots = new AtomicReferenceArray<>(size);
+      this.mask = size - 1;
+    }
+
+    /** Adds the supplied element, which must not be <tt>null</tt>. */
+    private void offer(E element) {
+      slots.set((int) tail.getAndIncrement() & mask, element);
+    }
+
+    /**
+     * Removes and returns the next element, or returns <tt>null</tt> if there is none or it is
+     * still being offered.
+     */
+    private E poll() {
+      final int index = (int) head & mask;
+      final E element = slots.get(index);
+      if (element == null) {
+        return null;
+      }
+      slots.lazySet(index, null);
+      head++;
+      return element;
+    }
+
+    /** Returns <tt>true</tt> if every element offered has been polled. */
+    private boolean isEmpty() {
+      return head == tail.get();
+    }
+  }
+}
@@ -0,0 +1,407 @@
+package com.aspirecsl.labs.flow;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.aspirecsl.labs.CallNotPermittedException;
+import com.aspirecsl.labs.CircuitBreakerConfig;
+import com.aspirecsl.labs.CircuitBreakerExecutor;
+import com.aspirecsl.labs.CircuitState;
+
+import static com.aspirecsl.labs.flow.CircuitBreakerProcessor.OpenCircuitStrategy.DROP;
+import static com.aspirecsl.labs.flow.CircuitBreakerProcessor.OpenCircuitStrategy.FAIL_FAST;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for {@link CircuitBreakerProcessor}
+ *
+ * @author anoopr
+ */
+public class CircuitBreakerProcessorTest {
+
+  private static final String TASK_ID = "SOME_TASK";
+
+  @Test
+  public void publishesTheResultOfEveryElementWithinTheDemand() {
+    final CircuitBreakerProcessor<Integer, Integer> processor =
+        CircuitBreakerProcessor.create(
+            executor(CircuitBreakerConfig.ofDefaults()), i -> completedFuture(i * i), 16, DROP);
+    final RangePublisher publisher = new RangePublisher(5);
+    final RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(processor);
+    processor.subscribe(subscriber);
+
+    subscriber.subscription.request(2);
+    assertThat(subscriber.results).containsExactly(1, 4);
+    assertThat(publisher.requested).isEqualTo(2);
+
+    subscriber.subscription.request(10);
+    assertThat(subscriber.results).containsExactly(1, 4, 9, 16, 25);
+    assertThat(subscriber.completed).isTrue();
+  }
+
+  @Test
+  public void dropsFailedElementsAndRequestsReplacements() {
+    final CircuitBreakerProcessor<Integer, Integer> processor =
+        CircuitBreakerProcessor.create(
+            executor(CircuitBreakerConfig.builder().errorToleranceFactor(10).build()),
+            i -> {
+              if (i % 2 == 0) {
+                throw new IllegalStateException();
+              }
+              return completedFuture(i);
+            },
+            16,
+            DROP);
+    final RangePublisher publisher = new RangePublisher(6);
+    final RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(processor);
+    processor.subscribe(subscriber);
+
+    subscriber.subscription.request(2);
+
+    assertThat(subscriber.results).containsExactly(1, 3);
+    assertThat(processor.getFailedCount()).isEqualTo(1);
+    assertThat(publisher.requested).isEqualTo(3);
+  }
+
+  @Test
+  public void dropsElementsWhileTheCircuitIsOpen() {
+    final CircuitBreakerProcessor<Integer, Integer> processor =
+        CircuitBreakerProcessor.create(
+            executor(CircuitBreakerConfig.builder().errorToleranceFactor(1).build()),
+            i -> {
+              if (i == 1) {
+                throw new IllegalStateException();
+              }
+              return completedFuture(i);
+            },
+            16,
+            DROP);
+    final RangePublisher publisher = new RangePublisher(4);
+    final RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(processor);
+    processor.subscribe(subscriber);
+
+    subscriber.subscription.request(1);
+
+    assertThat(processor.getState()).isEqualTo(CircuitState.OPEN);
+    assertThat(subscriber.results).isEmpty();
+    assertThat(processor.getRejectedCount()).isEqualTo(3);
+    assertThat(subscriber.completed).isTrue();
+  }
+
+  @Test
+  public void failsFastAndCancelsThePublisherWhileTheCircuitIsOpen() {
+    final CircuitBreakerProcessor<Integer, Integer> processor =
+        CircuitBreakerProcessor.create(
+            executor(CircuitBreakerConfig.builder().errorToleranceFactor(1).build()),
+            i -> {
+              if (i == 1) {
+                throw new IllegalStateException();
+              }
+              return completedFuture(i);
+            },
+            16,
+            FAIL_FAST);
+    final RangePublisher publisher = new RangePublisher(4);
+    final RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(processor);
+    processor.subscribe(subscriber);
+
+    subscriber.subscription.request(4);
+
+    assertThat(subscriber.error).isInstanceOf(CallNotPermittedException.class);
+    assertThat(publisher.cancelled).isTrue();
+    assertThat(subscriber.results).isEmpty();
+  }
+
+  @Test
+  public void rejectsNonPositiveDemandAndASecondSubscriber() {
+    final CircuitBreakerProcessor<Integer, Integer> processor =
+        CircuitBreakerProcessor.create(
+            executor(CircuitBreakerConfig.ofDefaults()), i -> completedFuture(i), 16, DROP);
+    final RangePublisher publisher = new RangePublisher(4);
+    final RecordingSubscriber subscriber = new RecordingSubscriber();
+    final RecordingSubscriber second = new RecordingSubscriber();
+    publisher.subscribe(processor);
+    processor.subscribe(subscriber);
+    processor.subscribe(second);
+
+    subscriber.subscription.request(0);
+
+    assertThat(subscriber.error).isInstanceOf(IllegalArgumentException.class);
+    assertThat(publisher.cancelled).isTrue();
+    assertThat(second.error).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void boundsTheElementsInFlightAndPublishesInTheOrderTheCallsComplete() {
+    final List<CompletableFuture<Integer>> calls = new ArrayList<>();
+    final CircuitBreakerProcessor<Integer, Integer> processor =
+        CircuitBreakerProcessor.create(
+            executor(CircuitBreakerConfig.ofDefaults()),
+            i -> {
+              final CompletableFuture<Integer> call = new CompletableFuture<>();
+              calls.add(call);
+              return call;
+            },
+            3,
+            DROP);
+    final RangePublisher publisher = new RangePublisher(5);
+    final RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(processor);
+    processor.subscribe(subscriber);
+
+    subscriber.subscription.request(10);
+    assertThat(calls).hasSize(3);
+    assertThat(publisher.requested).isEqualTo(3);
+
+    calls.get(2).complete(3);
+    assertThat(subscriber.results).containsExactly(3);
+    assertThat(calls).hasSize(4);
+
+    calls.get(1).completeExceptionally(new IllegalStateException());
+    calls.get(0).complete(1);
+    assertThat(calls).hasSize(5);
+    calls.get(3).complete(4);
+    calls.get(4).complete(5);
+
+    assertThat(subscriber.results).containsExactly(3, 1, 4, 5);
+    assertThat(processor.getFailedCount()).isEqualTo(1);
+    assertThat(subscriber.completed).isTrue();
+  }
+
+  @Test
+  public void requestsNoMoreElementsThanTheSubscriberHasAskedFor() {
+    final List<CompletableFuture<Integer>> calls = new ArrayList<>();
+    final CircuitBreakerProcessor<Integer, Integer> processor =
+        CircuitBreakerProcessor.create(
+            executor(CircuitBreakerConfig.ofDefaults()),
+            i -> {
+              final CompletableFuture<Integer> call = new CompletableFuture<>();
+              calls.add(call);
+              return call;
+            },
+            4,
+            DROP);
+    final RangePublisher publisher = new RangePublisher(5);
+    final RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(processor);
+    processor.subscribe(subscriber);
+
+    subscriber.subscription.request(2);
+    assertThat(calls).hasSize(2);
+    calls.get(0).complete(1);
+    calls.get(1).complete(2);
+    assertThat(subscriber.results).containsExactly(1, 2);
+    assertThat(publisher.requested).isEqualTo(2);
+
+    subscriber.subscription.request(1);
+    assertThat(calls).hasSize(3);
+    assertThat(publisher.requested).isEqualTo(3);
+  }
+
+  @Test
+  public void dropsTheElementAndRecordsAnErrorIfTheTaskThrowsAnError() {
+    final CircuitBreakerProcessor<Integer, Integer> processor =
+        CircuitBreakerProcessor.create(
+            executor(CircuitBreakerConfig.builder().errorToleranceFactor(1).build()),
+            i -> {
+              if (i == 1) {
+                throw new AssertionError();
+              }
+              return completedFuture(i);
+            },
+            16,
+            DROP);
+    final RangePublisher publisher = new RangePublisher(2);
+    final RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(processor);
+    processor.subscribe(subscriber);
+
+    subscriber.subscription.request(2);
+
+    assertThat(processor.getFailedCount()).isEqualTo(1);
+    assertThat(processor.getState()).isEqualTo(CircuitState.OPEN);
+    assertThat(subscriber.results).isEmpty();
+    assertThat(subscriber.completed).isTrue();
+  }
+
+  @Test
+  public void dropsTheElementOfACallThatCompletesWithNull() {
+    final CircuitBreakerProcessor<Integer, Integer> processor =
+        CircuitBreakerProcessor.create(
+            executor(CircuitBreakerConfig.ofDefaults()),
+            i -> completedFuture(i == 2 ? null : i),
+            16,
+            DROP);
+    final RangePublisher publisher = new RangePublisher(3);
+    final RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(processor);
+    processor.subscribe(subscriber);
+
+    subscriber.subscription.request(3);
+
+    assertThat(subscriber.results).containsExactly(1, 3);
+    assertThat(processor.getFailedCount()).isEqualTo(1);
+    assertThat(subscriber.completed).isTrue();
+  }
+
+  @Test
+  public void reusesItsCallsAndResultSlotsAcrossMoreElementsThanTheyHold() {
+    final CircuitBreakerProcessor<Integer, Integer> processor =
+        CircuitBreakerProcessor.create(
+            executor(CircuitBreakerConfig.ofDefaults()), i -> completedFuture(i), 2, DROP);
+    final RangePublisher publisher = new RangePublisher(100);
+    final RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(processor);
+    processor.subscribe(subscriber);
+
+    for (int i = 0; i < 100; i++) {
+      subscriber.subscription.request(1);
+    }
+
+    assertThat(subscriber.results).hasSize(100);
+    assertThat(subscriber.completed).isTrue();
+  }
+
+  @Test
+  public void publishesEveryResultOfCallsCompletedOnOtherThreads() throws Exception {
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      final CircuitBreakerProcessor<Integer, Integer> processor =
+          CircuitBreakerProcessor.create(
+              executor(CircuitBreakerConfig.ofDefaults()),
+              i -> CompletableFuture.supplyAsync(() -> i, pool),
+              8,
+              DROP);
+      final RangePublisher publisher = new RangePublisher(10_000);
+      final RecordingSubscriber subscriber = new RecordingSubscriber();
+      publisher.subscribe(processor);
+      processor.subscribe(subscriber);
+
+      subscriber.subscription.request(Long.MAX_VALUE);
+
+      assertThat(subscriber.terminated.await(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(new HashSet<>(subscriber.results)).hasSize(10_000);
+      assertThat(subscriber.completed).isTrue();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void rejectsAMaxInFlightThatCannotBeAllocatedUpFront() {
+    assertThat(
+            catchThrowable(
+                () ->
+                    CircuitBreakerProcessor.<Integer, Integer>create(
+                        executor(CircuitBreakerConfig.ofDefaults()),
+                        i -> completedFuture(i),
+                        CircuitBreakerProcessor.MAX_IN_FLIGHT + 1,
+                        DROP)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static CircuitBreakerExecutor<Integer> executor(CircuitBreakerConfig config) {
+    return CircuitBreakerExecutor.create(TASK_ID, () -> 0, config);
+  }
+
+  /** Publishes 1 to <tt>count</tt> synchronously, within the demand. */
+  private static final class RangePublisher implements Flow.Publisher<Integer> {
+
+    private final int count;
+
+    private long requested;
+
+    private boolean cancelled;
+
+    private RangePublisher(int count) {
+      this.count = count;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Integer> subscriber) {
+      subscriber.onSubscribe(
+          new Flow.Subscription() {
+            private int next = 1;
+
+            private long demand;
+
+            private boolean emitting;
+
+            @Override
+            public void request(long n) {
+              requested += n;
+              demand += n;
+              if (emitting) {
+                return;
+              }
+              emitting = true;
+              while (demand > 0 && next <= count && !cancelled) {
+                demand--;
+                subscriber.onNext(next++);
+              }
+              emitting = false;
+              if (next > count && !cancelled) {
+                cancelled = true;
+                subscriber.onComplete();
+              }
+            }
+
+            @Override
+            public void cancel() {
+              cancelled = true;
+            }
+          });
+    }
+  }
+
+  /** Records the signals it receives. */
+  private static final class RecordingSubscriber implements Flow.Subscriber<Integer> {
+
+    private final List<Integer> results = new ArrayList<>();
+
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private Flow.Subscription subscription;
+
+    private Throwable error;
+
+    private boolean completed;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(Integer item) {
+      results.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+      terminated.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+      terminated.countDown();
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.aspirecsl.labs;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrency limit that adapts to the round-trip time and outcome of the calls it admits.
+ *
+ * <p>The limit is held in an <tt>AtomicInteger</tt> that the {@link Bulkhead} reads on every
+ * acquisition, and is kept between the configured minimum and maximum. Each change is reported to
+ * the {@link CircuitBreakerListener}.
+ *
+ * @author anoopr
+ */
+abstract class AdaptiveLimit {
+
+  /** the limit a new instance starts at, unless outside the configured bounds * */
+  static final int INITIAL_LIMIT = 20;
+
+  /** the lowest the limit may drop to * */
+  final int minLimit;
+
+  /** the highest the limit may grow to * */
+  final int maxLimit;
+
+  /** the label or description corresponding to the limited task * */
+  private final String taskId;
+
+  /** the listener to report changes of the limit to * */
+  private final CircuitBreakerListener listener;
+
+  /** the current limit * */
+  private final AtomicInteger limit;
+
+  AdaptiveLimit(int minLimit, int maxLimit, String taskId, CircuitBreakerListener listener) {
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.taskId = taskId;
+    this.listener = GuardedListener.of(listener);
+    this.limit = new AtomicInteger(Math.max(minLimit, Math.min(maxLimit, INITIAL_LIMIT)));
+  }
+
+  /**
+   * Returns the current limit.
+   *
+   * @return the current limit
+   */
+  final int get() {
+    return limit.get();
+  }
+
+  /**
+   * Adjusts the limit with the outcome of a call.
+   *
+   * @param rttNanos the time, in nanoseconds, the call took
+   * @param inFlight the number of calls in flight, including this one, when it completed
+   * @param dropped <tt>true</tt> if the call failed with an error or timed out
+   */
+  abstract void onSample(long rttNanos, int inFlight, boolean dropped);
+
+  /**
+   * Replaces the limit, if it is still <tt>expected</tt>, with <tt>update</tt> clamped to the
+   * configured bounds.
+   *
+   * @return <tt>true</tt> if the limit was replaced or is unchanged; <tt>false</tt> if another
+   *     thread changed it first
+   */
+  final boolean compareAndSet(int expected, int update) {
+    final int next = Math.max(minLimit, Math.min(maxLimit, update));
+    if (next == expected) {
+      return true;
+    }
+    if (!limit.compareAndSet(expected, next)) {
+      return false;
+    }
+    listener.onLimitChanged(taskId, expected, next);
+    return true;
+  }
+}
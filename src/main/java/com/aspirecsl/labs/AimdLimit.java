@@ -0,0 +1,41 @@
+package com.aspirecsl.labs;
+
+/**
+ * An <tt>AdaptiveLimit</tt> that grows additively and shrinks multiplicatively, as TCP congestion
+ * control does.
+ *
+ * <p>Each call that passes while at least half the limit is in use raises the limit by one; a limit
+ * that is not being used is not raised, so an idle period cannot build up headroom the task cannot
+ * take. Each call that fails with an error or times out cuts the limit by a tenth. Round-trip times
+ * are not looked at, so this limit reacts to failures only; pair it with a timeout to shed load on
+ * latency as well.
+ *
+ * @author anoopr
+ */
+final class AimdLimit extends AdaptiveLimit {
+
+  /** the factor the limit is multiplied by on a dropped call * */
+  private static final double BACKOFF_RATIO = 0.9;
+
+  AimdLimit(int minLimit, int maxLimit, String taskId, CircuitBreakerListener listener) {
+    super(minLimit, maxLimit, taskId, listener);
+  }
+
+  @Override
+  void onSample(long rttNanos, int inFlight, boolean dropped) {
+    for (; ; ) {
+      final int limit = get();
+      final int next;
+      if (dropped) {
+        next = (int) (limit * BACKOFF_RATIO);
+      } else if (inFlight * 2 >= limit) {
+        next = limit + 1;
+      } else {
+        return;
+      }
+      if (compareAndSet(limit, next)) {
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,350 @@
+package com.aspirecsl.labs;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Provides an approximate <tt>circuit breaker</tt> per key over an unbounded key space, e.g. one
+ * per user id, in memory that does not depend on the number of keys.
+ *
+ * <p>Erroneous failures are counted in a <em>count-min sketch</em>: <tt>d</tt> rows of <tt>w</tt>
+ * counters, each row indexed by a different hash of the key. A failure increments one counter per
+ * row and the failure count of a key is estimated as the least of its <tt>d</tt> counters. Keys
+ * whose estimated recent failure count has reached the <em>error tolerance factor</em> are
+ * rejected with a {@link CallNotPermittedException}; calls of all other keys are permitted.
+ *
+ * <p>The sketch decays by generations. Failures are counted in the current generation and a key's
+ * estimate is the sum of its estimates in the current and the previous generation. Every
+ * <em>wait duration in open state</em> the previous generation is dropped and the current one takes
+ * its place, so a failure counts for between one and two wait durations. A tripped key makes no
+ * further calls, so it is permitted again once its failures have aged out; there are no
+ * <tt>HALF_OPEN</tt> probes. Passing calls do not reset the count: unlike the other executors this
+ * one trips on the number of recent failures, not on consecutive ones.
+ *
+ * <p><b>Error bounds.</b> With <tt>w = e / &epsilon;</tt> counters per row, rounded up to a power
+ * of two, and <tt>d = ln(1 / &delta;)</tt> rows, the estimate of a key exceeds its recorded recent
+ * failure count by more than <tt>&epsilon; N</tt> with a probability of at most <tt>&delta;</tt>,
+ * where <tt>N</tt> is the total number of failures of all keys in the two generations. So a key
+ * that has not failed is wrongly rejected only if <tt>&epsilon; N</tt> approaches the error
+ * tolerance factor: size <tt>&epsilon;</tt> from the failure rate expected across all keys during
+ * an incident, not from the number of keys. Failures are only recorded once the counters of their
+ * generation are cleared, so those of the first moments after a pause longer than a generation may
+ * go uncounted, as may a failure recorded by a thread stalled for a whole generation.
+ *
+ * <p>Every counter is an element of one <tt>AtomicIntegerArray</tt> holding three generations: the
+ * current one, the previous one and the next one. Recording a failure is <tt>d</tt> atomic
+ * increments and estimating is <tt>2d</tt> reads; neither locks. The thread that first notices a
+ * new generation hands the clearing of the expired one over to an executor rather than clearing it
+ * itself, so no call waits for <tt>w d</tt> writes; the counters it clears are those of the next
+ * generation, so they are ready a whole generation before they are used.
+ *
+ * @author anoopr
+ */
+public final class ApproximateKeyedCircuitBreakerExecutor {
+
+  /** the largest number of counters per row * */
+  private static final int MAX_WIDTH = 1 << 24;
+
+  /** the largest number of rows * */
+  private static final int MAX_DEPTH = 16;
+
+  /** the number of generations held: the previous, the current and the next one * */
+  private static final int GENERATIONS = 3;
+
+  /** the label or description corresponding to the keyed tasks * */
+  private final String name;
+
+  /** the estimated recent failure count at which a key is rejected * */
+  private final int errorToleranceFactor;
+
+  /** the time, in nanoseconds, a generation of the sketch lasts * */
+  private final long generationNanos;
+
+  /** the monotonic clock, in nanoseconds, used to age the generations * */
+  private final LongSupplier clock;
+
+  /** the clock reading at which this executor was created * */
+  private final long epoch;
+
+  /** decides whether an exception thrown by a task deems it erroneous * */
+  private final ExceptionClassifier exceptionClassifier;
+
+  /** the exception thrown, every time, when a call is rejected * */
+  private final CallNotPermittedException callNotPermitted;
+
+  /** the number of rows * */
+  private final int depth;
+
+  /** the number of counters per row, less one; the number of counters is a power of two * */
+  private final int mask;
+
+  /** the counters of the generations, each generation in the set of its index modulo three * */
+  private final AtomicIntegerArray counters;
+
+  /** the generation each set of counters has been handed over to be cleared for * */
+  private final AtomicLongArray clearingFor = new AtomicLongArray(GENERATIONS);
+
+  /** the generation each set of counters has been cleared for * */
+  private final AtomicLongArray clearedFor = new AtomicLongArray(GENERATIONS);
+
+  /** clears the sets of counters of expired generations * */
+  private final Executor clearer;
+
+  /** the number of generations since this executor was created * */
+  private final AtomicLong generation = new AtomicLong();
+
+  private ApproximateKeyedCircuitBreakerExecutor(
+      String name, int width, int depth, Executor clearer, CircuitBreakerConfig config) {
+    this.name = name;
+    this.errorToleranceFactor = config.getErrorToleranceFactor();
+    this.generationNanos = config.waitDurationInOpenStateNanos();
+    this.clock = config.clock();
+    this.epoch = clock.getAsLong();
+    this.exceptionClassifier = config.exceptionClassifier();
+    this.callNotPermitted = new CallNotPermittedException(name);
+    this.depth = depth;
+    this.mask = width - 1;
+    this.counters = new AtomicIntegerArray(GENERATIONS * depth * width);
+    this.clearer = clearer;
+    // the counters start cleared for the generation before the first one, the first one and the
+    // one after it
+    for (long generation = -1; generation <= 1; generation++) {
+      clearingFor.set(set(generation), generation);
+      clearedFor.set(set(generation), generation);
+    }
+  }
+
+  /**
+   * Returns an <tt>ApproximateKeyedCircuitBreakerExecutor</tt> instance with the supplied values.
+   *
+   * <p>The sketch takes <tt>12 w d</tt> bytes for the three generations; e.g. <tt>&epsilon; =
+   * 0.0001</tt> and <tt>&delta; = 0.001</tt> give 32,768 counters in each of 7 rows, i.e. 2.625
+   * MiB. Expired generations are cleared on a daemon thread shared by every executor created this
+   * way and started on first use, so clearing neither waits behind nor delays unrelated work in a
+   * shared pool.
+   *
+   * @param name the label or description corresponding to the keyed tasks
+   * @param epsilon the overestimate of a key's failure count, as a fraction of all the recent
+   *     failures, that is exceeded with a probability of at most <tt>delta</tt>
+   * @param delta the probability of exceeding the <tt>epsilon</tt> bound
+   * @param config the settings that govern how a key trips and recovers; only the error tolerance
+   *     factor, the wait duration in open state and the fail-on exceptions are used
+   * @return an <tt>ApproximateKeyedCircuitBreakerExecutor</tt> instance with the supplied values
+   * @throws NullPointerException if the <tt>name</tt> or <tt>config</tt> is <tt>null</tt>
+   * @throws IllegalArgumentException if the <tt>name</tt> is empty, the <tt>epsilon</tt> or
+   *     <tt>delta</tt> is not in <tt>(0, 1)</tt> or calls for a sketch larger than 16 rows of
+   *     2<sup>24</sup> counters, or the wait duration in open state is zero
+   */
+  public static ApproximateKeyedCircuitBreakerExecutor create(
+      String name, double epsilon, double delta, CircuitBreakerConfig config) {
+    return create(name, epsilon, delta, SharedClearer.EXECUTOR, config);
+  }
+
+  /**
+   * Returns an <tt>ApproximateKeyedCircuitBreakerExecutor</tt> instance with the supplied values.
+   *
+   * @param name the label or description corresponding to the keyed tasks
+   * @param epsilon the overestimate of a key's failure count, as a fraction of all the recent
+   *     failures, that is exceeded with a probability of at most <tt>delta</tt>
+   * @param delta the probability of exceeding the <tt>epsilon</tt> bound
+   * @param clearer clears the counters of expired generations, once a generation
+   * @param config the settings that govern how a key trips and recovers; only the error tolerance
+   *     factor, the wait duration in open state and the fail-on exceptions are used
+   * @return an <tt>ApproximateKeyedCircuitBreakerExecutor</tt> instance with the supplied values
+   * @throws NullPointerException if the <tt>name</tt>, <tt>clearer</tt> or <tt>config</tt> is
+   *     <tt>null</tt>
+   * @throws IllegalArgumentException if the <tt>name</tt> is empty, the <tt>epsilon</tt> or
+   *     <tt>delta</tt> is not in <tt>(0, 1)</tt> or calls for a sketch larger than 16 rows of
+   *     2<sup>24</sup> counters, or the wait duration in open state is zero
+   */
+  public static ApproximateKeyedCircuitBreakerExecutor create(
+      String name, double epsilon, double delta, Executor clearer, CircuitBreakerConfig config) {
+    Objects.requireNonNull(name);
+    Objects.requireNonNull(clearer);
+    Objects.requireNonNull(config);
+    if (name.trim().isEmpty()) {
+      throw new IllegalArgumentException("name cannot be empty");
+    }
+    if (!(epsilon > 0 && epsilon < 1) || !(delta > 0 && delta < 1)) {
+      throw new IllegalArgumentException("Epsilon and delta must be in (0, 1)");
+    }
+    if (config.waitDurationInOpenStateNanos() == 0) {
+      // the wait duration is the length of a generation, which the clock is divided by
+      throw new IllegalArgumentException("Wait duration in open state must be > 0");
+    }
+    final double width = Math.ceil(Math.E / epsilon);
+    final double depth = Math.ceil(Math.log(1 / delta));
+    if (width > MAX_WIDTH || depth > MAX_DEPTH) {
+      throw new IllegalArgumentException("Epsilon or delta too small");
+    }
+    return new ApproximateKeyedCircuitBreakerExecutor(
+        name,
+        Integer.highestOneBit((int) width * 2 - 1),
+        Math.max(1, (int) depth),
+        clearer,
+        config);
+  }
+
+  /**
+   * Executes the <tt>task</tt> unless the supplied key has failed too often recently.
+   *
+   * @param key the key the <tt>task</tt> is executed for
+   * @param task the complex and/or time consuming task to execute
+   * @return the result obtained by executing the <tt>task</tt>
+   * @throws Exception if the <tt>task</tt> throws an exception
+   * @throws CallNotPermittedException if the estimated recent failure count of the key has
+   *     reached the error tolerance factor
+   */
+  public <T> T execute(long key, Callable<T> task) throws Exception {
+    return executeHashed(KeyHash.of(key), task);
+  }
+
+  /**
+   * Executes the <tt>task</tt> unless the supplied key has failed too often recently.
+   *
+   * @param key the key the <tt>task</tt> is executed for
+   * @param task the complex and/or time consuming task to execute
+   * @return the result obtained by executing the <tt>task</tt>
+   * @throws Exception if the <tt>task</tt> throws an exception
+   * @throws CallNotPermittedException if the estimated recent failure count of the key has
+   *     reached the error tolerance factor
+   */
+  public <T> T execute(CharSequence key, Callable<T> task) throws Exception {
+    return executeHashed(KeyHash.of(key), task);
+  }
+
+  /**
+   * Returns the estimated number of erroneous failures of the supplied key in the current and the
+   * previous generation.
+   *
+   * @param key the key to estimate the recent failure count of
+   * @return the estimated recent failure count of the supplied key
+   */
+  public int estimateFailures(long key) {
+    return estimate(KeyHash.of(key), currentGeneration());
+  }
+
+  /**
+   * Returns the estimated number of erroneous failures of the supplied key in the current and the
+   * previous generation.
+   *
+   * @param key the key to estimate the recent failure count of
+   * @return the estimated recent failure count of the supplied key
+   */
+  public int estimateFailures(CharSequence key) {
+    return estimate(KeyHash.of(key), currentGeneration());
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  private <T> T executeHashed(long hash, Callable<T> task) throws Exception {
+    final long generation = currentGeneration();
+    if (estimate(hash, generation) >= errorToleranceFactor) {
+      throw callNotPermitted;
+    }
+    try {
+      return task.call();
+    } catch (Throwable t) {
+      final int offset = offset(generation);
+      if (offset >= 0 && exceptionClassifier.isErroneous(t)) {
+        for (int row = 0; row < depth; row++) {
+          counters.incrementAndGet(offset + index(hash, row));
+        }
+      }
+      throw t;
+    }
+  }
+
+  /** Returns the least, over the rows, of the key's counters in both live generations. */
+  private int estimate(long hash, long generation) {
+    final int current = offset(generation);
+    final int previous = offset(generation - 1);
+    int estimate = Integer.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      final int index = index(hash, row);
+      final int inCurrent = current < 0 ? 0 : counters.get(current + index);
+      final int inPrevious = previous < 0 ? 0 : counters.get(previous + index);
+      estimate = Math.min(estimate, inCurrent + inPrevious);
+    }
+    return estimate;
+  }
+
+  /**
+   * Returns the current generation, first handing the clearing of the generations that have
+   * expired since the last call over to the clearer if this thread is the first to notice.
+   */
+  private long currentGeneration() {
+    final long now = (clock.getAsLong() - epoch) / generationNanos;
+    final long last = generation.get();
+    if (now > last && generation.compareAndSet(last, now)) {
+      // the set of the next generation held the one before the previous one, which has expired;
+      // after a pause longer than a generation, the sets of the current and the previous one may
+      // hold expired ones as well
+      for (long live = now - 1; live <= now + 1; live++) {
+        final long clearing = clearingFor.get(set(live));
+        if (clearing < live && clearingFor.compareAndSet(set(live), clearing, live)) {
+          final long cleared = live;
+          clearer.execute(() -> clear(cleared));
+        }
+      }
+    }
+    return now;
+  }
+
+  /** Clears the set of counters of the supplied generation, unless it has expired meanwhile. */
+  private void clear(long generation) {
+    if (generation < this.generation.get() - 1) {
+      return;
+    }
+    final int length = depth * (mask + 1);
+    final int offset = set(generation) * length;
+    for (int i = offset; i < offset + length; i++) {
+      counters.set(i, 0);
+    }
+    clearedFor.set(set(generation), generation);
+  }
+
+  /**
+   * Returns the offset of the counters of the supplied generation, or <tt>-1</tt> if they have not
+   * been cleared for it yet.
+   */
+  private int offset(long generation) {
+    final int set = set(generation);
+    return clearedFor.get(set) == generation ? set * depth * (mask + 1) : -1;
+  }
+
+  /** Returns the set of counters of the supplied generation. */
+  private static int set(long generation) {
+    return (int) Math.floorMod(generation, (long) GENERATIONS);
+  }
+
+  /**
+   * Returns the index of the key's counter in the supplied row, derived from two halves of its
+   * hash by double hashing.
+   */
+  private int index(long hash, int row) {
+    final int h1 = (int) hash;
+    final int h2 = (int) (hash >>> 32) | 1;
+    return row * (mask + 1) + ((h1 + row * h2) & mask);
+  }
+
+  /** Holds the shared clearer, so that its thread only starts once it is first needed. */
+  private static final class SharedClearer {
+
+    private static final Executor EXECUTOR =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              final Thread thread = new Thread(runnable, "approximate-circuit-breaker-clearer");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+}
@@ -0,0 +1,325 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Provides a <tt>circuit breaker</tt> interface to a backend that takes many small calls more
+ * cheaply as batches.
+ *
+ * <pre>
+ *   BatchingCircuitBreakerExecutor&lt;String, Price&gt; prices =
+ *       BatchingCircuitBreakerExecutor.create(
+ *           "GET_PRICES", client::getPrices, 100, Duration.ofMillis(2), pool, config);
+ *   ...
+ *   Price price = prices.execute("ACME");
+ * </pre>
+ *
+ * <p>Submitted items accumulate in a batch until it holds <em>max batch size</em> items or the
+ * <em>max delay</em> has elapsed since its first item, whichever comes first. The batch task is
+ * then called once, on the supplied <tt>Executor</tt>, with the items in the order they were
+ * submitted, and must return one result per item in the same order; each submitter receives the
+ * result of its own item. The breaker is consulted and its outcome recorded once per batch, so a
+ * batch that fails counts as one error and every item in it fails with the same exception, and a
+ * batch that the breaker rejects fails every item with a {@link CallNotPermittedException}.
+ *
+ * <p>Submitting an item claims a slot of the current batch with one atomic increment and does not
+ * lock. The submitter that fills the last slot seals the batch; otherwise the max delay is timed on
+ * the shared {@link HashedWheelTimer}, which seals whatever the batch holds by then. The max delay
+ * is therefore rounded up to the timer's tick of a millisecond. Whichever of the submitters and
+ * the timer is last to finish with a sealed batch hands it to the <tt>Executor</tt>.
+ *
+ * <p>Of the <tt>CircuitBreakerConfig</tt>, the settings that govern how the breaker trips and
+ * recovers are used; call timeouts, concurrency limits, coalescing and stale results are not.
+ *
+ * @author anoopr
+ */
+public final class BatchingCircuitBreakerExecutor<I, O> {
+
+  /** the label or description corresponding to the batch task * */
+  private final String taskId;
+
+  /** the call to the backend with a batch of items * */
+  private final BatchTask<I, O> batchTask;
+
+  /** the number of items at which a batch is sealed * */
+  private final int maxBatchSize;
+
+  /** the time, in nanoseconds, after its first item at which a batch is sealed * */
+  private final long maxDelayNanos;
+
+  /** runs the batch task * */
+  private final Executor executor;
+
+  /** the state machine that decides whether the batch task may be called * */
+  private final CircuitBreaker circuitBreaker;
+
+  /** the exception every item of a rejected batch fails with * */
+  private final CallNotPermittedException callNotPermitted;
+
+  /** decides whether an exception thrown by the batch task deems it erroneous * */
+  private final ExceptionClassifier exceptionClassifier;
+
+  /** the batch items are added to * */
+  private final AtomicReference<Batch> current;
+
+  /** a batch allocated to replace the current one by a thread that lost the race to, or null * */
+  private final AtomicReference<Batch> spare = new AtomicReference<>();
+
+  private BatchingCircuitBreakerExecutor(
+      String taskId,
+      BatchTask<I, O> batchTask,
+      int maxBatchSize,
+      Duration maxDelay,
+      Executor executor,
+      CircuitBreakerConfig config) {
+    this.taskId = taskId;
+    this.batchTask = batchTask;
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayNanos = maxDelay.toNanos();
+    this.executor = executor;
+    this.circuitBreaker = new CircuitBreaker(taskId, config);
+    this.callNotPermitted = new CallNotPermittedException(taskId);
+    this.exceptionClassifier = config.exceptionClassifier();
+    this.current = new AtomicReference<>(new Batch());
+  }
+
+  /**
+   * Returns a <tt>BatchingCircuitBreakerExecutor</tt> instance with the supplied values.
+   *
+   * @param taskId the label or description corresponding to the batch task
+   * @param batchTask the call to the backend with a batch of items
+   * @param maxBatchSize the number of items at which a batch is sealed
+   * @param maxDelay the time after its first item at which a batch is sealed
+   * @param executor runs the batch task
+   * @param config the settings that govern how the breaker trips and recovers
+   * @return a <tt>BatchingCircuitBreakerExecutor</tt> instance with the supplied values
+   * @throws NullPointerException if any of the arguments is <tt>null</tt>
+   * @throws IllegalArgumentException if the <tt>taskId</tt> is empty, the <tt>maxBatchSize</tt>
+   *     is < 1 or the <tt>maxDelay</tt> is not positive
+   */
+  public static <I, O> BatchingCircuitBreakerExecutor<I, O> create(
+      String taskId,
+      BatchTask<I, O> batchTask,
+      int maxBatchSize,
+      Duration maxDelay,
+      Executor executor,
+      CircuitBreakerConfig config) {
+    Objects.requireNonNull(taskId);
+    Objects.requireNonNull(batchTask);
+    Objects.requireNonNull(maxDelay);
+    Objects.requireNonNull(executor);
+    Objects.requireNonNull(config);
+    if (taskId.isEmpty()) {
+      throw new IllegalArgumentException("Task id must not be empty");
+    }
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("Max batch size must be >= 1");
+    }
+    if (maxDelay.isNegative() || maxDelay.isZero()) {
+      throw new IllegalArgumentException("Max delay must be > 0");
+    }
+    return new BatchingCircuitBreakerExecutor<>(
+        taskId, batchTask, maxBatchSize, maxDelay, executor, config);
+  }
+
+  /**
+   * Adds the supplied item to the current batch.
+   *
+   * @param item the item to call the backend with
+   * @return a stage that completes with the result of the item once its batch has been called, or
+   *     exceptionally with the exception of the batch task or a <tt>CallNotPermittedException</tt>
+   */
+  public CompletionStage<O> submit(I item) {
+    final CompletableFuture<O> result = new CompletableFuture<>();
+    for (; ; ) {
+      final Batch batch = current.get();
+      final int slot = batch.claimed.getAndIncrement();
+      if (slot >= maxBatchSize) {
+        // sealed; move on to a new batch unless another thread already has
+        advance(batch);
+        continue;
+      }
+      batch.items[slot] = item;
+      batch.results[slot] = result;
+      if (slot == 0 && maxBatchSize > 1) {
+        batch.timeout = HashedWheelTimer.shared().schedule(() -> seal(batch), maxDelayNanos);
+      }
+      if (slot == maxBatchSize - 1) {
+        advance(batch);
+        batch.size = maxBatchSize;
+      }
+      batch.written.incrementAndGet();
+      batch.dispatchIfComplete();
+      return result;
+    }
+  }
+
+  /**
+   * Adds the supplied item to the current batch and waits for its result.
+   *
+   * @param item the item to call the backend with
+   * @return the result of the item
+   * @throws Exception if the batch task throws an exception
+   * @throws CallNotPermittedException if the breaker rejected the batch
+   */
+  public O execute(I item) throws Exception {
+    try {
+      return submit(item).toCompletableFuture().get();
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw (Error) cause;
+    }
+  }
+
+  public CircuitState getState() {
+    return circuitBreaker.getState();
+  }
+
+  public String getTaskId() {
+    return taskId;
+  }
+
+  /** Seals the supplied batch with the items it holds, unless it is already full. */
+  private void seal(Batch batch) {
+    advance(batch);
+    final int claimed = batch.claimed.getAndSet(maxBatchSize);
+    if (claimed < maxBatchSize) {
+      batch.size = claimed;
+      batch.dispatchIfComplete();
+    }
+  }
+
+  /**
+   * Replaces the supplied batch as the current one, unless another thread already has; the batch
+   * allocated for a replacement that loses the race is kept for the next one.
+   */
+  private void advance(Batch batch) {
+    if (current.get() != batch) {
+      return;
+    }
+    final Batch kept = spare.getAndSet(null);
+    final Batch next = kept == null ? new Batch() : kept;
+    if (!current.compareAndSet(batch, next)) {
+      // never published, so as good as new
+      spare.set(next);
+    }
+  }
+
+  /** Calls the batch task with the items of a sealed batch and completes their results. */
+  @SuppressWarnings("unchecked")
+  private void call(Batch batch) {
+    final int size = batch.size;
+    if (!circuitBreaker.tryAcquirePermission()) {
+      batch.fail(callNotPermitted);
+      return;
+    }
+    final long startedAt = circuitBreaker.startTimer();
+    final Object[] outputs;
+    try {
+      final List<O> returned =
+          batchTask.call((List<I>) Arrays.asList(batch.items).subList(0, size));
+      // copied out before the outcome is recorded, so that a list that fails to give its elements
+      // up fails the batch like any other exception of the batch task
+      outputs = returned == null ? new Object[0] : returned.toArray();
+      if (outputs.length != size) {
+        throw new IllegalStateException(
+            taskId + " returned " + outputs.length + " results for " + size + " items");
+      }
+    } catch (Throwable t) {
+      if (exceptionClassifier.isErroneous(t)) {
+        circuitBreaker.onError(startedAt);
+      } else {
+        circuitBreaker.onIgnoredError(startedAt);
+      }
+      batch.fail(t);
+      return;
+    }
+    circuitBreaker.onPass(startedAt);
+    for (int i = 0; i < size; i++) {
+      batch.results[i].complete((O) outputs[i]);
+    }
+  }
+
+  /**
+   * The call to the backend with a batch of items.
+   *
+   * @param <I> the type of the items
+   * @param <O> the type of the results
+   */
+  @FunctionalInterface
+  public interface BatchTask<I, O> {
+
+    /**
+     * Calls the backend with the supplied items.
+     *
+     * @param items the items, in the order they were submitted
+     * @return one result per item, in the same order
+     * @throws Exception if the call fails; every item of the batch fails with it
+     */
+    List<O> call(List<I> items) throws Exception;
+  }
+
+  /** The items submitted together, and the results they are waiting for. */
+  private final class Batch {
+
+    /** the items, in slot order * */
+    private final Object[] items = new Object[maxBatchSize];
+
+    /** the results of the items, in slot order * */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final CompletableFuture<O>[] results = new CompletableFuture[maxBatchSize];
+
+    /** the number of slots claimed; at least <tt>maxBatchSize</tt> once sealed * */
+    private final AtomicInteger claimed = new AtomicInteger();
+
+    /** the number of claimed slots whose item and result have been written * */
+    private final AtomicInteger written = new AtomicInteger();
+
+    /** <tt>true</tt> once the batch has been handed to the executor * */
+    private final AtomicBoolean dispatched = new AtomicBoolean();
+
+    /** the number of items of the sealed batch, or <tt>-1</tt> while it is open * */
+    private volatile int size = -1;
+
+    /** the timeout that seals the batch, or <tt>null</tt> if not scheduled yet * */
+    private volatile HashedWheelTimer.Timeout timeout;
+
+    /** Hands the batch to the executor once it is sealed and all its items are written. */
+    private void dispatchIfComplete() {
+      final int sealedSize = size;
+      if (sealedSize < 0
+          || written.get() != sealedSize
+          || !dispatched.compareAndSet(false, true)) {
+        return;
+      }
+      final HashedWheelTimer.Timeout scheduled = timeout;
+      if (scheduled != null) {
+        scheduled.cancel();
+      }
+      try {
+        executor.execute(() -> call(this));
+      } catch (Throwable t) {
+        fail(t);
+      }
+    }
+
+    private void fail(Throwable t) {
+      for (int i = 0; i < size; i++) {
+        results[i].completeExceptionally(t);
+      }
+    }
+  }
+}
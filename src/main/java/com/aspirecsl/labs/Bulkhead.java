@@ -0,0 +1,139 @@
+package com.aspirecsl.labs;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the number of concurrent task executions of a <tt>CircuitBreakerExecutor</tt>.
+ *
+ * <p>The permits are a single <tt>AtomicInteger</tt> counting the executions in flight; acquiring
+ * one is a compare-and-set that fails as soon as the limit is reached, and releasing one is a
+ * decrement. Unlike a fair <tt>Semaphore</tt> there is no queue of waiters and no lock, so an
+ * uncontended call costs two atomic operations.
+ *
+ * <p>The limit is either fixed or an {@link AdaptiveLimit}, which is fed the round-trip time and
+ * outcome of every admitted call and raises or lowers the limit to shed load before the breaker
+ * has to trip.
+ *
+ * <p>A call that finds no permit may wait for a bounded time. It then polls the counter, parking
+ * for exponentially longer periods between attempts, rather than queueing: waiters are not served
+ * in order, but a release never has to wake anyone.
+ *
+ * @author anoopr
+ */
+final class Bulkhead {
+
+  /** the shortest time, in nanoseconds, a waiting call parks between attempts * */
+  private static final long MIN_PARK_NANOS = 1_000L;
+
+  /** the longest time, in nanoseconds, a waiting call parks between attempts * */
+  private static final long MAX_PARK_NANOS = 1_000_000L;
+
+  /** the maximum number of concurrent executions, unless the limit is adaptive * */
+  private final int maxConcurrentCalls;
+
+  /** the adaptive limit on concurrent executions, or <tt>null</tt> if it is fixed * */
+  private final AdaptiveLimit adaptiveLimit;
+
+  /** the monotonic clock, in nanoseconds, used to measure round-trip times * */
+  private final LongSupplier clock;
+
+  /** the time, in nanoseconds, a call waits for a permit before it is rejected * */
+  private final long maxWaitNanos;
+
+  /** the number of executions in flight * */
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  Bulkhead(int maxConcurrentCalls, long maxWaitNanos) {
+    this.maxConcurrentCalls = maxConcurrentCalls;
+    this.adaptiveLimit = null;
+    this.clock = null;
+    this.maxWaitNanos = maxWaitNanos;
+  }
+
+  Bulkhead(AdaptiveLimit adaptiveLimit, long maxWaitNanos, LongSupplier clock) {
+    this.maxConcurrentCalls = 0;
+    this.adaptiveLimit = adaptiveLimit;
+    this.clock = clock;
+    this.maxWaitNanos = maxWaitNanos;
+  }
+
+  /**
+   * Returns <tt>true</tt> if a permit was acquired, waiting up to the configured time for one.
+   *
+   * <p>A thread that is interrupted while waiting stops waiting and keeps its interrupt status.
+   *
+   * @return <tt>true</tt> if a permit was acquired; <tt>false</tt> otherwise
+   */
+  boolean tryAcquirePermission() {
+    if (tryAcquire()) {
+      return true;
+    }
+    if (maxWaitNanos == 0) {
+      return false;
+    }
+    final long deadline = System.nanoTime() + maxWaitNanos;
+    long parkNanos = MIN_PARK_NANOS;
+    for (; ; ) {
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+        return false;
+      }
+      LockSupport.parkNanos(this, Math.min(parkNanos, remaining));
+      if (tryAcquire()) {
+        return true;
+      }
+      parkNanos = Math.min(parkNanos << 1, MAX_PARK_NANOS);
+    }
+  }
+
+  /**
+   * Feeds the outcome of an admitted call to the adaptive limit, if there is one. Must be called
+   * before the permit of the call is released.
+   *
+   * @param startedAt the clock reading at which the call started
+   * @param dropped <tt>true</tt> if the call failed with an error or timed out
+   */
+  void onComplete(long startedAt, boolean dropped) {
+    if (adaptiveLimit != null) {
+      adaptiveLimit.onSample(clock.getAsLong() - startedAt, inFlight.get(), dropped);
+    }
+  }
+
+  /** Releases a permit acquired by {@link #tryAcquirePermission()}. */
+  void release() {
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * Returns the number of permits currently available.
+   *
+   * @return the number of permits currently available
+   */
+  int availablePermits() {
+    return Math.max(0, limit() - inFlight.get());
+  }
+
+  /**
+   * Returns the current limit on concurrent executions.
+   *
+   * @return the current limit on concurrent executions
+   */
+  int limit() {
+    return adaptiveLimit == null ? maxConcurrentCalls : adaptiveLimit.get();
+  }
+
+  private boolean tryAcquire() {
+    final int limit = limit();
+    for (; ; ) {
+      final int current = inFlight.get();
+      if (current >= limit) {
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+}
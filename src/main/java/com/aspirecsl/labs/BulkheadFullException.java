@@ -0,0 +1,38 @@
+package com.aspirecsl.labs;
+
+/**
+ * Thrown when a <tt>CircuitBreakerExecutor</tt> rejects a call because the maximum number of
+ * concurrent calls are already in flight and no permit was released within the configured wait.
+ *
+ * <p>Like {@link CallNotPermittedException} each executor creates a single instance up front, with
+ * neither a stack trace nor suppressed exceptions, and throws that same instance for every
+ * rejection.
+ *
+ * @author anoopr
+ */
+public class BulkheadFullException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  /** the label or description corresponding to the rejected task * */
+  private final String taskId;
+
+  /**
+   * Constructs an instance for the supplied task.
+   *
+   * @param taskId the label or description corresponding to the rejected task
+   */
+  BulkheadFullException(String taskId) {
+    super("Too many concurrent calls for task [" + taskId + "].", null, false, false);
+    this.taskId = taskId;
+  }
+
+  /**
+   * Returns the label or description corresponding to the rejected task.
+   *
+   * @return the label or description corresponding to the rejected task
+   */
+  public String getTaskId() {
+    return taskId;
+  }
+}
@@ -0,0 +1,38 @@
+package com.aspirecsl.labs;
+
+/**
+ * Thrown when a <tt>CircuitBreakerExecutor</tt> rejects a call because its circuit is
+ * <tt>OPEN</tt>, or <tt>HALF_OPEN</tt> with all the permitted probe calls already let through.
+ *
+ * <p>A rejection says nothing about where it was raised, and during an incident calls are rejected
+ * at a very high rate. So each executor creates a single instance up front, with neither a stack
+ * trace nor suppressed exceptions, and throws that same instance for every rejection.
+ *
+ * @author anoopr
+ */
+public class CallNotPermittedException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  /** the label or description corresponding to the rejected task * */
+  private final String taskId;
+
+  /**
+   * Constructs an instance for the supplied task.
+   *
+   * @param taskId the label or description corresponding to the rejected task
+   */
+  CallNotPermittedException(String taskId) {
+    super("Too many failures for task [" + taskId + "].", null, false, false);
+    this.taskId = taskId;
+  }
+
+  /**
+   * Returns the label or description corresponding to the rejected task.
+   *
+   * @return the label or description corresponding to the rejected task
+   */
+  public String getTaskId() {
+    return taskId;
+  }
+}
@@ -0,0 +1,92 @@
+package com.aspirecsl.labs;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounds a blocking task execution on the calling thread by interrupting that thread once the
+ * timeout elapses.
+ *
+ * <p>The timeout is scheduled on the shared {@link HashedWheelTimer} when the execution starts and
+ * {@linkplain #finish() finished} once it returns. The two race on a single state word: if the
+ * execution finishes first the timeout is cancelled; if the timeout fires first it interrupts the
+ * thread, and <tt>finish()</tt> waits for that interrupt to land before clearing it, so it can
+ * never leak into whatever the thread does next. An interrupt the thread already had when the
+ * timeout fired is not the timeout's: the timeout then leaves the thread alone and records as much
+ * in the state word, and <tt>finish()</tt> leaves the interrupt in place for the caller to see. An
+ * interrupt that arrives after the timeout's cannot be told apart from it and is cleared with it;
+ * the call fails with the timeout either way. The timeout is therefore best-effort: a task that
+ * ignores interrupts, or is blocked in a call that does not respond to them, still runs to
+ * completion and holds the thread until then, but its outcome is reported as a timeout.
+ *
+ * @author anoopr
+ */
+final class CallTimeout extends AtomicInteger implements Runnable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int RUNNING = 0;
+
+  private static final int FINISHED = 1;
+
+  private static final int INTERRUPTING = 2;
+
+  /** the timeout fired and interrupted the thread * */
+  private static final int TIMED_OUT = 3;
+
+  /** the timeout fired while the thread was already interrupted, and left it alone * */
+  private static final int TIMED_OUT_UNINTERRUPTED = 4;
+
+  /** the thread executing the task * */
+  private final transient Thread thread;
+
+  /** the handle to cancel the scheduled timeout with * */
+  private final transient HashedWheelTimer.Timeout timeout;
+
+  /**
+   * Starts timing an execution on the current thread.
+   *
+   * @param timer the timer to schedule the timeout on
+   * @param timeoutNanos the time, in nanoseconds, after which the execution times out
+   */
+  CallTimeout(HashedWheelTimer timer, long timeoutNanos) {
+    thread = Thread.currentThread();
+    timeout = timer.schedule(this, timeoutNanos);
+  }
+
+  /**
+   * Interrupts the executing thread, unless the execution has already finished or the thread is
+   * already interrupted.
+   */
+  @Override
+  public void run() {
+    if (compareAndSet(RUNNING, INTERRUPTING)) {
+      if (thread.isInterrupted()) {
+        set(TIMED_OUT_UNINTERRUPTED);
+      } else {
+        thread.interrupt();
+        set(TIMED_OUT);
+      }
+    }
+  }
+
+  /**
+   * Stops timing the execution; must be called on the executing thread.
+   *
+   * @return <tt>true</tt> if the execution timed out, in which case the interrupt raised by the
+   *     timeout, if it raised one, has been cleared
+   */
+  boolean finish() {
+    if (compareAndSet(RUNNING, FINISHED)) {
+      timeout.cancel();
+      return false;
+    }
+    int state;
+    while ((state = get()) == INTERRUPTING) {
+      Thread.yield();
+    }
+    if (state == TIMED_OUT) {
+      Thread.interrupted();
+    }
+    return true;
+  }
+}
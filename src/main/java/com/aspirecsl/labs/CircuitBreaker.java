@@ -0,0 +1,250 @@
+package com.aspirecsl.labs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * The state machine behind a <tt>CircuitBreakerExecutor</tt>.
+ *
+ * <p>The state, the error or probe count and the time the breaker last opened are packed into a
+ * single {@link StateWord} held in an <tt>AtomicLong</tt>. Every transition is a single
+ * compare-and-set on that word, so concurrent errors can never overshoot the <em>error tolerance
+ * factor</em> and no locks are taken.
+ *
+ * <p>When a {@link SlidingWindow} is configured the <tt>CLOSED</tt> breaker records every outcome
+ * in it and trips when the window reports that the error rate, or the slow call rate, has reached
+ * its threshold; the count in the state word then stays at zero.
+ *
+ * <p>Every state transition is reported to the configured {@link CircuitBreakerListener} by the
+ * thread whose compare-and-set made it. Whatever the listener throws is logged and ignored: the
+ * thread may hold a permit it has yet to record an outcome for.
+ *
+ * @author anoopr
+ */
+final class CircuitBreaker {
+
+  /** the maximum number of errors that will <em>trip</em> this breaker * */
+  private final int errorToleranceFactor;
+
+  /** the time, in milliseconds, this breaker stays <tt>OPEN</tt> before probing the task * */
+  private final long waitDurationInOpenStateMillis;
+
+  /** the number of probe calls let through in the <tt>HALF_OPEN</tt> state * */
+  private final int permittedCallsInHalfOpenState;
+
+  /** the monotonic clock, in nanoseconds, used to measure the time spent <tt>OPEN</tt> * */
+  private final LongSupplier clock;
+
+  /** the clock reading at which this breaker was created * */
+  private final long epoch;
+
+  /** the time, in nanoseconds, above which a call is deemed slow * */
+  private final long slowCallDurationThresholdNanos;
+
+  /** <tt>true</tt> if calls are timed to detect slow ones * */
+  private final boolean slowCallDetection;
+
+  /** <tt>true</tt> if calls are timed, to detect slow ones or to adapt the concurrency limit * */
+  private final boolean timed;
+
+  /** the outcomes of recent executions, or <tt>null</tt> to trip on consecutive errors * */
+  private final SlidingWindow slidingWindow;
+
+  /** the packed state of this breaker * */
+  private final AtomicLong state;
+
+  /** the label or description corresponding to the task, to report transitions with * */
+  private final String taskId;
+
+  /** the listener to report state transitions to * */
+  private final CircuitBreakerListener listener;
+
+  CircuitBreaker(CircuitBreakerConfig config) {
+    this(null, config);
+  }
+
+  CircuitBreaker(String taskId, CircuitBreakerConfig config) {
+    this.taskId = taskId;
+    listener = GuardedListener.of(config.getListener());
+    errorToleranceFactor = config.getErrorToleranceFactor();
+    waitDurationInOpenStateMillis =
+        TimeUnit.NANOSECONDS.toMillis(config.waitDurationInOpenStateNanos() + 999_999);
+    permittedCallsInHalfOpenState = config.getPermittedCallsInHalfOpenState();
+    clock = config.clock();
+    epoch = clock.getAsLong();
+    slowCallDurationThresholdNanos = config.slowCallDurationThresholdNanos();
+    slowCallDetection = slowCallDurationThresholdNanos != Long.MAX_VALUE;
+    timed = slowCallDetection || config.hasAdaptiveConcurrencyLimit();
+    slidingWindow = config.newSlidingWindow();
+    state = new AtomicLong(StateWord.CLOSED);
+  }
+
+  /**
+   * Returns the current state of this breaker.
+   *
+   * @return the current state of this breaker
+   */
+  CircuitState getState() {
+    return StateWord.state(state.get());
+  }
+
+  /**
+   * Returns <tt>true</tt> if the task may be executed now.
+   *
+   * <p>An <tt>OPEN</tt> breaker whose wait duration has elapsed is moved to <tt>HALF_OPEN</tt>
+   * here, and each probe call it lets through is counted against the permitted number.
+   *
+   * @return <tt>true</tt> if the task may be executed now; <tt>false</tt> otherwise
+   */
+  boolean tryAcquirePermission() {
+    for (; ; ) {
+      final long word = state.get();
+      switch (StateWord.state(word)) {
+        case CLOSED:
+          return true;
+        case OPEN:
+          if (now() - StateWord.stamp(word) < waitDurationInOpenStateMillis) {
+            return false;
+          }
+          if (state.compareAndSet(word, StateWord.halfOpen(1, 0))) {
+            listener.onStateTransition(taskId, CircuitState.OPEN, CircuitState.HALF_OPEN);
+            return true;
+          }
+          break;
+        default:
+          if (StateWord.count(word) >= permittedCallsInHalfOpenState) {
+            return false;
+          }
+          if (state.compareAndSet(word, word + StateWord.COUNT_UNIT)) {
+            return true;
+          }
+          break;
+      }
+    }
+  }
+
+  /**
+   * Returns the clock reading to pass back to {@link #onPass}, {@link #onError} or {@link
+   * #onIgnoredError} once the task execution completes, or <tt>0</tt> if calls are not timed.
+   *
+   * @return the clock reading at which the task execution starts
+   */
+  long startTimer() {
+    return timed ? clock.getAsLong() : 0L;
+  }
+
+  /**
+   * Records a task execution that passed.
+   *
+   * <p>A healthy breaker is <tt>CLOSED</tt> with no errors recorded, so this is by far the most
+   * frequent call. In that state it only reads the state word: writing it back unchanged would
+   * still take the cache line exclusive and bounce it between cores on every call.
+   *
+   * @param startedAt the value returned by {@link #startTimer()} when the execution started
+   */
+  void onPass(long startedAt) {
+    record(false, isSlow(startedAt));
+  }
+
+  /**
+   * Records a task execution that failed with an exception deemed as erroneous.
+   *
+   * @param startedAt the value returned by {@link #startTimer()} when the execution started
+   */
+  void onError(long startedAt) {
+    record(true, isSlow(startedAt));
+  }
+
+  /**
+   * Records a task execution that failed with an exception not deemed as erroneous.
+   *
+   * <p>Such an execution leaves a <tt>CLOSED</tt> breaker untouched, but counts as a probe that
+   * answered when <tt>HALF_OPEN</tt>.
+   *
+   * @param startedAt the value returned by {@link #startTimer()} when the execution started
+   */
+  void onIgnoredError(long startedAt) {
+    if (StateWord.state(state.get()) == CircuitState.HALF_OPEN) {
+      record(false, isSlow(startedAt));
+    }
+  }
+
+  /**
+   * Records the outcome of a task execution.
+   *
+   * <p>A <tt>HALF_OPEN</tt> breaker re-opens on a probe that failed or was slow, and closes once
+   * all the permitted probes have passed.
+   */
+  private void record(boolean error, boolean slow) {
+    for (; ; ) {
+      final long word = state.get();
+      final long next;
+      switch (StateWord.state(word)) {
+        case CLOSED:
+          if (slidingWindow != null) {
+            if (slidingWindow.record(error, slow)) {
+              tripIfClosed();
+            }
+            return;
+          }
+          if (error) {
+            next =
+                StateWord.count(word) + 1 >= errorToleranceFactor
+                    ? StateWord.open(now())
+                    : word + StateWord.COUNT_UNIT;
+          } else if (word == StateWord.CLOSED) {
+            return;
+          } else {
+            next = StateWord.CLOSED;
+          }
+          break;
+        case HALF_OPEN:
+          if (error || slow) {
+            next = StateWord.open(now());
+          } else if (StateWord.stamp(word) + 1 >= permittedCallsInHalfOpenState) {
+            if (state.compareAndSet(word, StateWord.CLOSED)) {
+              if (slidingWindow != null) {
+                slidingWindow.reset();
+              }
+              listener.onStateTransition(taskId, CircuitState.HALF_OPEN, CircuitState.CLOSED);
+              return;
+            }
+            continue;
+          } else {
+            next = word + 1;
+          }
+          break;
+        default:
+          return;
+      }
+      if (state.compareAndSet(word, next)) {
+        if (StateWord.state(next) == CircuitState.OPEN) {
+          listener.onStateTransition(taskId, StateWord.state(word), CircuitState.OPEN);
+        }
+        return;
+      }
+    }
+  }
+
+  /** Returns <tt>true</tt> if calls are timed and the one started at <tt>startedAt</tt> is slow. */
+  private boolean isSlow(long startedAt) {
+    return slowCallDetection && clock.getAsLong() - startedAt > slowCallDurationThresholdNanos;
+  }
+
+  /**
+   * Opens this breaker if it is still <tt>CLOSED</tt>; used when a sliding window reports a trip.
+   * The state word of a <tt>CLOSED</tt> breaker with a sliding window never changes, so a failed
+   * compare-and-set means another thread has already moved it on.
+   */
+  private void tripIfClosed() {
+    if (state.compareAndSet(StateWord.CLOSED, StateWord.open(now()))) {
+      listener.onStateTransition(taskId, CircuitState.CLOSED, CircuitState.OPEN);
+    }
+  }
+
+  /** Returns the time, in milliseconds, elapsed since this breaker was created. */
+  private long now() {
+    return TimeUnit.NANOSECONDS.toMillis(clock.getAsLong() - epoch);
+  }
+}
@@ -0,0 +1,781 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * An immutable set of settings that govern how a <tt>CircuitBreakerExecutor</tt> trips and
+ * recovers.
+ *
+ * <p>By default the breaker trips after <em>error tolerance factor</em> consecutive errors. Once a
+ * sliding window is configured it instead trips when the rate of errors within the window reaches
+ * the <em>failure rate threshold</em>, and the error tolerance factor is not used. A sliding window
+ * can also trip the breaker on the rate of <em>slow</em> calls, i.e. calls that take longer than
+ * the <em>slow call duration threshold</em>, whether they pass or fail.
+ *
+ * <p>Instances are obtained from a {@link Builder}:
+ *
+ * <pre>
+ *   CircuitBreakerConfig config =
+ *       CircuitBreakerConfig.builder()
+ *           .errorToleranceFactor(5)
+ *           .waitDurationInOpenState(Duration.ofSeconds(30))
+ *           .permittedCallsInHalfOpenState(3)
+ *           .build();
+ * </pre>
+ *
+ * @author anoopr
+ */
+public final class CircuitBreakerConfig {
+
+  /** the default maximum number of errors that will <em>trip</em> the breaker * */
+  public static final int DEFAULT_ERROR_TOLERANCE_FACTOR = 5;
+
+  /** the default time the breaker stays <tt>OPEN</tt> before probing the task again * */
+  public static final Duration DEFAULT_WAIT_DURATION_IN_OPEN_STATE = Duration.ofSeconds(60);
+
+  /** the default number of probe calls let through in the <tt>HALF_OPEN</tt> state * */
+  public static final int DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE = 1;
+
+  /** the default error rate, as a percentage, at or above which a sliding window trips * */
+  public static final float DEFAULT_FAILURE_RATE_THRESHOLD = 50f;
+
+  /** the default number of calls a sliding window must hold before its error rate is used * */
+  public static final int DEFAULT_MINIMUM_NUMBER_OF_CALLS = 10;
+
+  /** the default slow call rate, as a percentage, at or above which a sliding window trips * */
+  public static final float DEFAULT_SLOW_CALL_RATE_THRESHOLD = 100f;
+
+  /** the maximum number of errors that will <em>trip</em> the breaker * */
+  private final int errorToleranceFactor;
+
+  /**
+   * A list of exceptions (including <em>checked</em>) which when thrown by the task will cause it
+   * to be deemed as erroneous. Their subclasses are deemed erroneous as well.
+   *
+   * <p>If this list is empty then any <tt>RuntimeException</tt> thrown by the task will cause it to
+   * be deemed as erroneous.
+   */
+  private final List<Class<? extends Exception>> failOnExceptions;
+
+  /** the classifier of exceptions against the <tt>failOnExceptions</tt> * */
+  private final ExceptionClassifier exceptionClassifier;
+
+  /** the time, in nanoseconds, the breaker stays <tt>OPEN</tt> before probing the task again * */
+  private final long waitDurationInOpenStateNanos;
+
+  /** the number of probe calls let through in the <tt>HALF_OPEN</tt> state * */
+  private final int permittedCallsInHalfOpenState;
+
+  /** the monotonic clock, in nanoseconds, used to measure the time spent in a state * */
+  private final LongSupplier clock;
+
+  /** the kind of sliding window the breaker trips on * */
+  private final SlidingWindowType slidingWindowType;
+
+  /** the number of calls held by a count based, or buckets of a time based, sliding window * */
+  private final int slidingWindowSize;
+
+  /** the time, in nanoseconds, covered by a time based sliding window * */
+  private final long slidingWindowDurationNanos;
+
+  /** the error rate, as a percentage, at or above which a sliding window trips * */
+  private final float failureRateThreshold;
+
+  /** the number of calls a sliding window must hold before its error rate is used * */
+  private final int minimumNumberOfCalls;
+
+  /** the time, in nanoseconds, above which a call is deemed slow; never if Long.MAX_VALUE * */
+  private final long slowCallDurationThresholdNanos;
+
+  /** the slow call rate, as a percentage, at or above which a sliding window trips * */
+  private final float slowCallRateThreshold;
+
+  /** the time, in nanoseconds, after which a call times out; never if 0 * */
+  private final long timeoutDurationNanos;
+
+  /** the maximum number of concurrent calls; unbounded if 0 * */
+  private final int maxConcurrentCalls;
+
+  /** the time, in nanoseconds, a call waits for one of the concurrent calls to finish * */
+  private final long maxWaitDurationNanos;
+
+  /** the kind of adaptive concurrency limit * */
+  private final ConcurrencyLimitType concurrencyLimitType;
+
+  /** the lowest an adaptive concurrency limit may drop to * */
+  private final int minConcurrencyLimit;
+
+  /** the highest an adaptive concurrency limit may grow to * */
+  private final int maxConcurrencyLimit;
+
+  /** the listener to the events of every executor built with this config * */
+  private final CircuitBreakerListener listener;
+
+  /** <tt>true</tt> if concurrent calls share one execution of the task * */
+  private final boolean coalescingConcurrentCalls;
+
+  /** the time, in nanoseconds, for which a result may be served while open; never if 0 * */
+  private final long maxStalenessNanos;
+
+  private CircuitBreakerConfig(Builder builder) {
+    errorToleranceFactor = builder.errorToleranceFactor;
+    failOnExceptions = builder.failOnExceptions;
+    exceptionClassifier = new ExceptionClassifier(failOnExceptions);
+    waitDurationInOpenStateNanos = builder.waitDurationInOpenState.toNanos();
+    permittedCallsInHalfOpenState = builder.permittedCallsInHalfOpenState;
+    clock = builder.clock;
+    slidingWindowType = builder.slidingWindowType;
+    slidingWindowSize = builder.slidingWindowSize;
+    slidingWindowDurationNanos = builder.slidingWindowDuration.toNanos();
+    failureRateThreshold = builder.failureRateThreshold;
+    minimumNumberOfCalls = builder.minimumNumberOfCalls;
+    slowCallDurationThresholdNanos =
+        builder.slowCallDurationThreshold == null
+            ? Long.MAX_VALUE
+            : builder.slowCallDurationThreshold.toNanos();
+    slowCallRateThreshold = builder.slowCallRateThreshold;
+    timeoutDurationNanos = builder.timeoutDuration.toNanos();
+    maxConcurrentCalls = builder.maxConcurrentCalls;
+    maxWaitDurationNanos = builder.maxWaitDuration.toNanos();
+    concurrencyLimitType = builder.concurrencyLimitType;
+    minConcurrencyLimit = builder.minConcurrencyLimit;
+    maxConcurrencyLimit = builder.maxConcurrencyLimit;
+    listener = builder.listener;
+    coalescingConcurrentCalls = builder.coalescingConcurrentCalls;
+    maxStalenessNanos = builder.maxStaleness.toNanos();
+  }
+
+  /**
+   * Returns a new <tt>Builder</tt> initialised with the default settings.
+   *
+   * @return a new <tt>Builder</tt> initialised with the default settings
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns a <tt>CircuitBreakerConfig</tt> instance with the default settings.
+   *
+   * @return a <tt>CircuitBreakerConfig</tt> instance with the default settings
+   */
+  public static CircuitBreakerConfig ofDefaults() {
+    return builder().build();
+  }
+
+  public int getErrorToleranceFactor() {
+    return errorToleranceFactor;
+  }
+
+  public List<Class<? extends Exception>> getFailOnExceptions() {
+    return failOnExceptions;
+  }
+
+  public Duration getWaitDurationInOpenState() {
+    return Duration.ofNanos(waitDurationInOpenStateNanos);
+  }
+
+  public int getPermittedCallsInHalfOpenState() {
+    return permittedCallsInHalfOpenState;
+  }
+
+  public float getFailureRateThreshold() {
+    return failureRateThreshold;
+  }
+
+  public int getMinimumNumberOfCalls() {
+    return minimumNumberOfCalls;
+  }
+
+  public float getSlowCallRateThreshold() {
+    return slowCallRateThreshold;
+  }
+
+  /**
+   * Returns the time after which a call times out.
+   *
+   * @return the time after which a call times out, or <tt>Duration.ZERO</tt> if calls never time
+   *     out
+   */
+  public Duration getTimeoutDuration() {
+    return Duration.ofNanos(timeoutDurationNanos);
+  }
+
+  /**
+   * Returns the maximum number of concurrent calls.
+   *
+   * @return the maximum number of concurrent calls, or <tt>0</tt> if they are not bounded
+   */
+  public int getMaxConcurrentCalls() {
+    return maxConcurrentCalls;
+  }
+
+  public Duration getMaxWaitDuration() {
+    return Duration.ofNanos(maxWaitDurationNanos);
+  }
+
+  public CircuitBreakerListener getListener() {
+    return listener;
+  }
+
+  public boolean isCoalescingConcurrentCalls() {
+    return coalescingConcurrentCalls;
+  }
+
+  /**
+   * Returns the time for which the last result of the task may be served while the circuit is
+   * open.
+   *
+   * @return the max staleness of a result served while the circuit is open, or
+   *     <tt>Duration.ZERO</tt> if calls are rejected instead
+   */
+  public Duration getMaxStaleness() {
+    return Duration.ofNanos(maxStalenessNanos);
+  }
+
+  /**
+   * Returns a new, empty <tt>SlidingWindow</tt> as configured, or <tt>null</tt> if the breaker
+   * trips on consecutive errors.
+   */
+  SlidingWindow newSlidingWindow() {
+    switch (slidingWindowType) {
+      case COUNT_BASED:
+        return new CountBasedSlidingWindow(
+            slidingWindowSize, minimumNumberOfCalls, failureRateThreshold, slowCallRateThreshold);
+      case TIME_BASED:
+        return new TimeBasedSlidingWindow(
+            slidingWindowDurationNanos,
+            slidingWindowSize,
+            minimumNumberOfCalls,
+            failureRateThreshold,
+            slowCallRateThreshold,
+            clock);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns a new <tt>Bulkhead</tt> as configured, or <tt>null</tt> if calls are not bounded.
+   *
+   * @param taskId the label or description corresponding to the task, to report limit changes with
+   */
+  Bulkhead newBulkhead(String taskId) {
+    switch (concurrencyLimitType) {
+      case AIMD:
+        return new Bulkhead(
+            new AimdLimit(minConcurrencyLimit, maxConcurrencyLimit, taskId, listener),
+            maxWaitDurationNanos,
+            clock);
+      case GRADIENT:
+        return new Bulkhead(
+            new GradientLimit(minConcurrencyLimit, maxConcurrencyLimit, taskId, listener),
+            maxWaitDurationNanos,
+            clock);
+      default:
+        return maxConcurrentCalls == 0
+            ? null
+            : new Bulkhead(maxConcurrentCalls, maxWaitDurationNanos);
+    }
+  }
+
+  /** Returns <tt>true</tt> if the concurrency limit adapts to the round-trip time of calls. */
+  boolean hasAdaptiveConcurrencyLimit() {
+    return concurrencyLimitType != ConcurrencyLimitType.NONE;
+  }
+
+  ExceptionClassifier exceptionClassifier() {
+    return exceptionClassifier;
+  }
+
+  long maxStalenessNanos() {
+    return maxStalenessNanos;
+  }
+
+  long timeoutDurationNanos() {
+    return timeoutDurationNanos;
+  }
+
+  long slowCallDurationThresholdNanos() {
+    return slowCallDurationThresholdNanos;
+  }
+
+  long waitDurationInOpenStateNanos() {
+    return waitDurationInOpenStateNanos;
+  }
+
+  LongSupplier clock() {
+    return clock;
+  }
+
+  /**
+   * A builder of <tt>CircuitBreakerConfig</tt> instances.
+   *
+   * <p>Every setting is validated as it is supplied, so an invalid value fails at the call site
+   * rather than when the breaker is first used.
+   */
+  public static final class Builder {
+
+    private int errorToleranceFactor = DEFAULT_ERROR_TOLERANCE_FACTOR;
+
+    private List<Class<? extends Exception>> failOnExceptions = Collections.emptyList();
+
+    private Duration waitDurationInOpenState = DEFAULT_WAIT_DURATION_IN_OPEN_STATE;
+
+    private int permittedCallsInHalfOpenState = DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE;
+
+    private LongSupplier clock = System::nanoTime;
+
+    private SlidingWindowType slidingWindowType = SlidingWindowType.NONE;
+
+    private int slidingWindowSize;
+
+    private Duration slidingWindowDuration = Duration.ZERO;
+
+    private float failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+
+    private int minimumNumberOfCalls = DEFAULT_MINIMUM_NUMBER_OF_CALLS;
+
+    private Duration slowCallDurationThreshold;
+
+    private float slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+
+    private Duration timeoutDuration = Duration.ZERO;
+
+    private int maxConcurrentCalls;
+
+    private Duration maxWaitDuration = Duration.ZERO;
+
+    private ConcurrencyLimitType concurrencyLimitType = ConcurrencyLimitType.NONE;
+
+    private int minConcurrencyLimit;
+
+    private int maxConcurrencyLimit;
+
+    private CircuitBreakerListener listener = CircuitBreakerListener.NO_OP;
+
+    private boolean coalescingConcurrentCalls;
+
+    private Duration maxStaleness = Duration.ZERO;
+
+    private Builder() {}
+
+    /**
+     * Sets the maximum number of errors that will <em>trip</em> the breaker.
+     *
+     * @param errorToleranceFactor the maximum number of errors that will <em>trip</em> the breaker
+     * @return this builder
+     * @throws IllegalArgumentException if the <tt>errorToleranceFactor</tt> is <= 0 or greater
+     *     than 4,194,303
+     */
+    public Builder errorToleranceFactor(int errorToleranceFactor) {
+      if (errorToleranceFactor <= 0) {
+        throw new IllegalArgumentException("Error tolerance factor must be > 0");
+      }
+      if (errorToleranceFactor > StateWord.MAX_COUNT) {
+        throw new IllegalArgumentException(
+            "Error tolerance factor must be <= " + StateWord.MAX_COUNT);
+      }
+      this.errorToleranceFactor = errorToleranceFactor;
+      return this;
+    }
+
+    /**
+     * Sets the exceptions (including <em>checked</em>) which when thrown by the task will cause it
+     * to be deemed as erroneous, along with their subclasses. If <tt>empty</tt> then any
+     * <tt>RuntimeException</tt> thrown by the task will cause it to be deemed as erroneous.
+     *
+     * @param failOnExceptions list of exceptions which when thrown by the task will cause it to be
+     *     deemed as erroneous
+     * @return this builder
+     * @throws NullPointerException if the <tt>failOnExceptions</tt> is <tt>null</tt>
+     */
+    public Builder failOnExceptions(List<Class<? extends Exception>> failOnExceptions) {
+      this.failOnExceptions =
+          Collections.unmodifiableList(new ArrayList<>(Objects.requireNonNull(failOnExceptions)));
+      return this;
+    }
+
+    /**
+     * Sets the time the breaker stays <tt>OPEN</tt> before letting probe calls through.
+     *
+     * @param waitDurationInOpenState the time the breaker stays <tt>OPEN</tt>
+     * @return this builder
+     * @throws NullPointerException if the <tt>waitDurationInOpenState</tt> is <tt>null</tt>
+     * @throws IllegalArgumentException if the <tt>waitDurationInOpenState</tt> is negative
+     */
+    public Builder waitDurationInOpenState(Duration waitDurationInOpenState) {
+      Objects.requireNonNull(waitDurationInOpenState);
+      if (waitDurationInOpenState.isNegative()) {
+        throw new IllegalArgumentException("Wait duration in open state must not be negative");
+      }
+      this.waitDurationInOpenState = waitDurationInOpenState;
+      return this;
+    }
+
+    /**
+     * Sets the number of probe calls let through in the <tt>HALF_OPEN</tt> state. The breaker
+     * closes once all of them pass and re-opens as soon as any of them fails.
+     *
+     * @param permittedCallsInHalfOpenState the number of probe calls let through in the
+     *     <tt>HALF_OPEN</tt> state
+     * @return this builder
+     * @throws IllegalArgumentException if the <tt>permittedCallsInHalfOpenState</tt> is <= 0 or
+     *     greater than 4,194,303
+     */
+    public Builder permittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+      if (permittedCallsInHalfOpenState <= 0) {
+        throw new IllegalArgumentException("Permitted calls in half open state must be > 0");
+      }
+      if (permittedCallsInHalfOpenState > StateWord.MAX_COUNT) {
+        throw new IllegalArgumentException(
+            "Permitted calls in half open state must be <= " + StateWord.MAX_COUNT);
+      }
+      this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+      return this;
+    }
+
+    /**
+     * Makes the breaker trip on the rate of errors among the last <tt>size</tt> calls instead of
+     * on consecutive errors.
+     *
+     * <p>The error rate is not evaluated until the window holds the <em>minimum number of
+     * calls</em>, or is full if it is smaller than that.
+     *
+     * @param size the number of calls held by the sliding window
+     * @return this builder
+     * @throws IllegalArgumentException if the <tt>size</tt> is <= 0
+     */
+    public Builder countBasedSlidingWindow(int size) {
+      if (size <= 0) {
+        throw new IllegalArgumentException("Sliding window size must be > 0");
+      }
+      this.slidingWindowType = SlidingWindowType.COUNT_BASED;
+      this.slidingWindowSize = size;
+      return this;
+    }
+
+    /**
+     * Makes the breaker trip on the rate of errors among the calls of the last <tt>duration</tt>
+     * instead of on consecutive errors.
+     *
+     * <p>The window is split into <tt>bucketCount</tt> buckets that expire one at a time, e.g. a
+     * ten second window of ten buckets forgets one second's worth of calls every second. The error
+     * rate is not evaluated until the window holds the <em>minimum number of calls</em>.
+     *
+     * @param duration the time covered by the sliding window
+     * @param bucketCount the number of buckets the window is split into
+     * @return this builder
+     * @throws NullPointerException if the <tt>duration</tt> is <tt>null</tt>
+     * @throws IllegalArgumentException if the <tt>bucketCount</tt> is <= 0 or the
+     *     <tt>duration</tt> is shorter than one nanosecond per bucket
+     */
+    public Builder timeBasedSlidingWindow(Duration duration, int bucketCount) {
+      Objects.requireNonNull(duration);
+      if (bucketCount <= 0) {
+        throw new IllegalArgumentException("Sliding window bucket count must be > 0");
+      }
+      if (duration.toNanos() < bucketCount) {
+        throw new IllegalArgumentException(
+            "Sliding window duration must be at least one nanosecond per bucket");
+      }
+      this.slidingWindowType = SlidingWindowType.TIME_BASED;
+      this.slidingWindowSize = bucketCount;
+      this.slidingWindowDuration = duration;
+      return this;
+    }
+
+    /**
+     * Sets the error rate, as a percentage, at or above which a sliding window trips the breaker.
+     *
+     * @param failureRateThreshold the error rate, as a percentage, that trips the breaker
+     * @return this builder
+     * @throws IllegalArgumentException if the <tt>failureRateThreshold</tt> is not in the range
+     *     <tt>(0, 100]</tt>
+     */
+    public Builder failureRateThreshold(float failureRateThreshold) {
+      if (!(failureRateThreshold > 0 && failureRateThreshold <= 100)) {
+        throw new IllegalArgumentException("Failure rate threshold must be in (0, 100]");
+      }
+      this.failureRateThreshold = failureRateThreshold;
+      return this;
+    }
+
+    /**
+     * Sets the number of calls a sliding window must hold before its error rate is used.
+     *
+     * @param minimumNumberOfCalls the number of calls a sliding window must hold before its error
+     *     rate is used
+     * @return this builder
+     * @throws IllegalArgumentException if the <tt>minimumNumberOfCalls</tt> is <= 0
+     */
+    public Builder minimumNumberOfCalls(int minimumNumberOfCalls) {
+      if (minimumNumberOfCalls <= 0) {
+        throw new IllegalArgumentException("Minimum number of calls must be > 0");
+      }
+      this.minimumNumberOfCalls = minimumNumberOfCalls;
+      return this;
+    }
+
+    /**
+     * Sets the time above which a call is deemed slow. Slow calls are recorded in the sliding
+     * window alongside errors, and a slow probe call re-opens a <tt>HALF_OPEN</tt> breaker.
+     *
+     * <p>Calls are only timed once this is set, and it requires a sliding window to be configured.
+     *
+     * @param slowCallDurationThreshold the time above which a call is deemed slow
+     * @return this builder
+     * @throws NullPointerException if the <tt>slowCallDurationThreshold</tt> is <tt>null</tt>
+     * @throws IllegalArgumentException if the <tt>slowCallDurationThreshold</tt> is negative
+     */
+    public Builder slowCallDurationThreshold(Duration slowCallDurationThreshold) {
+      Objects.requireNonNull(slowCallDurationThreshold);
+      if (slowCallDurationThreshold.isNegative()) {
+        throw new IllegalArgumentException("Slow call duration threshold must not be negative");
+      }
+      this.slowCallDurationThreshold = slowCallDurationThreshold;
+      return this;
+    }
+
+    /**
+     * Sets the slow call rate, as a percentage, at or above which a sliding window trips the
+     * breaker, independently of the error rate.
+     *
+     * @param slowCallRateThreshold the slow call rate, as a percentage, that trips the breaker
+     * @return this builder
+     * @throws IllegalArgumentException if the <tt>slowCallRateThreshold</tt> is not in the range
+     *     <tt>(0, 100]</tt>
+     */
+    public Builder slowCallRateThreshold(float slowCallRateThreshold) {
+      if (!(slowCallRateThreshold > 0 && slowCallRateThreshold <= 100)) {
+        throw new IllegalArgumentException("Slow call rate threshold must be in (0, 100]");
+      }
+      this.slowCallRateThreshold = slowCallRateThreshold;
+      return this;
+    }
+
+    /**
+     * Sets the time after which a call times out. A call that times out fails with a
+     * <tt>TimeoutException</tt> and is always recorded as an error, whatever the
+     * <tt>failOnExceptions</tt>.
+     *
+     * <p>Timeouts are scheduled on a single timer thread shared by every breaker and fire up to a
+     * millisecond late. An asynchronous call is timed out by failing the stage returned to the
+     * caller. A blocking call is timed out by interrupting the calling thread, which runs the task,
+     * so for blocking calls the timeout is <b>best-effort</b>: a task blocked in a call that does
+     * not respond to interrupts, such as a read from a classic <tt>java.net.Socket</tt>, keeps the
+     * calling thread until it returns, and only then fails with a timeout. Bound such reads at the
+     * source as well, e.g. with a socket timeout, or run the task on a thread of its own with a
+     * {@link VirtualThreadTask}.
+     *
+     * @param timeoutDuration the time after which a call times out
+     * @return this builder
+     * @throws NullPointerException if the <tt>timeoutDuration</tt> is <tt>null</tt>
+     * @throws IllegalArgumentException if the <tt>timeoutDuration</tt> is not positive
+     */
+    public Builder timeoutDuration(Duration timeoutDuration) {
+      Objects.requireNonNull(timeoutDuration);
+      if (timeoutDuration.isNegative() || timeoutDuration.isZero()) {
+        throw new IllegalArgumentException("Timeout duration must be > 0");
+      }
+      this.timeoutDuration = timeoutDuration;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of calls that may execute the task concurrently. Further calls are
+     * rejected with a {@link BulkheadFullException}, before the state of the breaker is checked,
+     * unless one of the calls in flight finishes within the <em>max wait duration</em>.
+     *
+     * @param maxConcurrentCalls the maximum number of concurrent calls
+     * @return this builder
+     * @throws IllegalArgumentException if the <tt>maxConcurrentCalls</tt> is < 1
+     */
+    public Builder maxConcurrentCalls(int maxConcurrentCalls) {
+      if (maxConcurrentCalls < 1) {
+        throw new IllegalArgumentException("Max concurrent calls must be >= 1");
+      }
+      this.maxConcurrentCalls = maxConcurrentCalls;
+      return this;
+    }
+
+    /**
+     * Sets the time a call waits for one of the concurrent calls to finish before it is rejected;
+     * defaults to <tt>Duration.ZERO</tt>, i.e. calls are rejected immediately.
+     *
+     * @param maxWaitDuration the time a call waits for one of the concurrent calls to finish
+     * @return this builder
+     * @throws NullPointerException if the <tt>maxWaitDuration</tt> is <tt>null</tt>
+     * @throws IllegalArgumentException if the <tt>maxWaitDuration</tt> is negative
+     */
+    public Builder maxWaitDuration(Duration maxWaitDuration) {
+      Objects.requireNonNull(maxWaitDuration);
+      if (maxWaitDuration.isNegative()) {
+        throw new IllegalArgumentException("Max wait duration must be >= 0");
+      }
+      this.maxWaitDuration = maxWaitDuration;
+      return this;
+    }
+
+    /**
+     * Bounds the number of concurrent calls by a limit that grows by one for each call that passes
+     * while at least half the limit is in use, and drops by a tenth for each call that fails with
+     * an error or times out. The limit starts at 20, or the nearest bound, and further calls are
+     * rejected with a {@link BulkheadFullException} as with {@link #maxConcurrentCalls}.
+     *
+     * @param minLimit the lowest the limit may drop to
+     * @param maxLimit the highest the limit may grow to
+     * @return this builder
+     * @throws IllegalArgumentException if the <tt>minLimit</tt> is < 1 or greater than the
+     *     <tt>maxLimit</tt>
+     */
+    public Builder aimdConcurrencyLimit(int minLimit, int maxLimit) {
+      return concurrencyLimit(ConcurrencyLimitType.AIMD, minLimit, maxLimit);
+    }
+
+    /**
+     * Bounds the number of concurrent calls by a limit that follows the ratio of the long term to
+     * the short term average round-trip time of the calls: it grows while the two agree and drops,
+     * by up to a half per call, as calls start to queue and the short term average rises. A call
+     * that fails with an error or times out drops the limit by the most. The limit starts at 20,
+     * or the nearest bound, and further calls are rejected with a {@link BulkheadFullException} as
+     * with {@link #maxConcurrentCalls}.
+     *
+     * @param minLimit the lowest the limit may drop to
+     * @param maxLimit the highest the limit may grow to
+     * @return this builder
+     * @throws IllegalArgumentException if the <tt>minLimit</tt> is < 1 or greater than the
+     *     <tt>maxLimit</tt>
+     */
+    public Builder gradientConcurrencyLimit(int minLimit, int maxLimit) {
+      return concurrencyLimit(ConcurrencyLimitType.GRADIENT, minLimit, maxLimit);
+    }
+
+    private Builder concurrencyLimit(ConcurrencyLimitType type, int minLimit, int maxLimit) {
+      if (minLimit < 1 || minLimit > maxLimit) {
+        throw new IllegalArgumentException("Concurrency limits must be 1 <= min <= max");
+      }
+      this.concurrencyLimitType = type;
+      this.minConcurrencyLimit = minLimit;
+      this.maxConcurrencyLimit = maxLimit;
+      return this;
+    }
+
+    /**
+     * Sets the listener to the state transitions and concurrency limit changes of every executor
+     * built with the config.
+     *
+     * @param listener the listener to the events of every executor built with the config
+     * @return this builder
+     * @throws NullPointerException if the <tt>listener</tt> is <tt>null</tt>
+     */
+    public Builder listener(CircuitBreakerListener listener) {
+      this.listener = Objects.requireNonNull(listener);
+      return this;
+    }
+
+    /**
+     * Sets whether concurrent calls share one execution of the task; <tt>false</tt> by default.
+     *
+     * <p>When <tt>true</tt>, a call made while another is in flight does not execute the task but
+     * waits for the call in flight and receives its outcome: the same value, the same exception
+     * instance, or the same rejection. Only the call in flight passes through the bulkhead and the
+     * breaker, so the breaker records one outcome however many calls share it. Meant for tasks
+     * whose result does not depend on who asks, such as reloading a hot cache entry; it applies
+     * to {@link CircuitBreakerExecutor#execute()} and {@link CircuitBreakerExecutor#tryExecute()}
+     * but not to asynchronous calls.
+     *
+     * @param coalescingConcurrentCalls <tt>true</tt> if concurrent calls share one execution
+     * @return this builder
+     */
+    public Builder coalesceConcurrentCalls(boolean coalescingConcurrentCalls) {
+      this.coalescingConcurrentCalls = coalescingConcurrentCalls;
+      return this;
+    }
+
+    /**
+     * Serves the last value returned by the task to calls rejected by the circuit, instead of a
+     * {@link CallNotPermittedException}, as long as that value is no older than the supplied max
+     * staleness. {@link CircuitBreakerExecutor#tryExecute()} reports such calls as
+     * <tt>STALE</tt>. Calls rejected by a full bulkhead are still rejected.
+     *
+     * <p>Every passing call replaces the last value with two ordered writes and no allocation; the
+     * value is aged from the start of the call that returned it, whose clock reading is reused.
+     *
+     * @param maxStaleness the age beyond which the last value is no longer served
+     * @return this builder
+     * @throws NullPointerException if the <tt>maxStaleness</tt> is <tt>null</tt>
+     * @throws IllegalArgumentException if the <tt>maxStaleness</tt> is not positive
+     */
+    public Builder staleResultFallback(Duration maxStaleness) {
+      Objects.requireNonNull(maxStaleness);
+      if (maxStaleness.isNegative() || maxStaleness.isZero()) {
+        throw new IllegalArgumentException("Max staleness must be > 0");
+      }
+      this.maxStaleness = maxStaleness;
+      return this;
+    }
+
+    /**
+     * Sets the monotonic clock, in nanoseconds, used to measure the time spent in a state.
+     *
+     * <p>Intended for tests; defaults to {@link System#nanoTime()}.
+     */
+    Builder clock(LongSupplier clock) {
+      this.clock = Objects.requireNonNull(clock);
+      return this;
+    }
+
+    /**
+     * Returns a <tt>CircuitBreakerConfig</tt> instance with the settings of this builder.
+     *
+     * @return a <tt>CircuitBreakerConfig</tt> instance with the settings of this builder
+     * @throws IllegalStateException if a slow call duration threshold is set without a sliding
+     *     window, a max wait duration without a concurrency limit, or both max concurrent calls
+     *     and an adaptive concurrency limit
+     */
+    public CircuitBreakerConfig build() {
+      if (slowCallDurationThreshold != null && slidingWindowType == SlidingWindowType.NONE) {
+        throw new IllegalStateException("Slow call detection requires a sliding window");
+      }
+      final boolean adaptive = concurrencyLimitType != ConcurrencyLimitType.NONE;
+      if (adaptive && maxConcurrentCalls != 0) {
+        throw new IllegalStateException(
+            "Max concurrent calls and an adaptive concurrency limit are exclusive");
+      }
+      if (!maxWaitDuration.isZero() && !adaptive && maxConcurrentCalls == 0) {
+        throw new IllegalStateException("Max wait duration requires a concurrency limit");
+      }
+      return new CircuitBreakerConfig(this);
+    }
+  }
+
+  /** The kinds of sliding window a breaker can trip on. */
+  private enum SlidingWindowType {
+    /** no sliding window; the breaker trips on consecutive errors * */
+    NONE,
+
+    /** the breaker trips on the rate of errors among the last <tt>N</tt> calls * */
+    COUNT_BASED,
+
+    /** the breaker trips on the rate of errors among the calls of a trailing period of time * */
+    TIME_BASED
+  }
+
+  /** The kinds of adaptive concurrency limit. */
+  private enum ConcurrencyLimitType {
+    /** no adaptive limit; concurrent calls are unbounded or bounded by a fixed number * */
+    NONE,
+
+    /** additive increase, multiplicative decrease on errors and timeouts * */
+    AIMD,
+
+    /** follows the gradient of the long to the short term average round-trip time * */
+    GRADIENT
+  }
+}
@@ -4,14 +4,31 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.Callable;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 /**
  * Provides a <tt>circuit breaker</tt> interface to execute complex and/or time consuming tasks.
  *
  * <p>This executor will not execute the task again if it had failed a preset number of times with
- * any of the specified <tt>exceptions</tt>, or any <tt>RuntimeException</tt> <em>(if no exceptions
- * were specified)</em>.
+ * any of the specified <tt>exceptions</tt> or their subclasses, or any <tt>RuntimeException</tt>
+ * <em>(if no exceptions were specified)</em>. An <tt>Error</tt> thrown by the task always counts
+ * as a failure.
+ *
+ * <p>Once <em>tripped</em> the executor stays {@link CircuitState#OPEN OPEN} for the configured
+ * <em>wait duration in open state</em>, measured on a monotonic clock. It then moves to {@link
+ * CircuitState#HALF_OPEN HALF_OPEN} and lets a limited number of probe calls through. The executor
+ * closes again once all the probes pass and re-opens as soon as any of them fails.
+ *
+ * <p>If a <em>max staleness</em> is configured, calls rejected by the circuit are instead served
+ * the last value the task returned, as long as it is no older than the max staleness.
  *
  * @author anoopr
  */
@@ -23,20 +40,51 @@ public class CircuitBreakerExecutor<T> {
   /** the complex and/or time consuming task to execute * */
   private final Callable<T> task;
 
-  /** the maximum number of errors that will <em>trip</em> this execution wrapper * */
-  private final int errorToleranceFactor;
+  /** the state machine that decides whether the task may be executed * */
+  private final CircuitBreaker circuitBreaker;
+
+  /** the exception thrown, every time, when a call is rejected * */
+  private final CallNotPermittedException callNotPermitted;
+
+  /** the time, in nanoseconds, after which a call times out; never if 0 * */
+  private final long timeoutDurationNanos;
+
+  /** the limit on concurrent calls, or <tt>null</tt> if they are not bounded * */
+  private final Bulkhead bulkhead;
+
+  /** the exception thrown, every time, when a call is rejected by the bulkhead * */
+  private final BulkheadFullException bulkheadFull;
+
+  /** the call that concurrent calls join, or <tt>null</tt> if calls are not coalesced * */
+  private final AtomicReference<CompletableFuture<ExecutionResult<T>>> inFlight;
 
-  /** a running counter of the errors occurred while executing the task * */
-  private final AtomicInteger errorCounter;
+  /** marks that the task has not passed yet, in place of the time its last result was stored * */
+  private static final long NO_RESULT = Long.MIN_VALUE;
+
+  /** the last result of the task, or <tt>null</tt> if stale results are not served * */
+  private final AtomicReference<T> lastResult;
+
+  /** the clock reading at which the call that returned the last result started * */
+  private final AtomicLong lastResultAt = new AtomicLong(NO_RESULT);
+
+  /** the time, in nanoseconds, for which the last result of the task may be served * */
+  private final long maxStalenessNanos;
+
+  /** the monotonic clock, in nanoseconds, used to stamp and age the last result * */
+  private final LongSupplier clock;
 
   /**
-   * A list of exceptions (including <em>checked</em>) which when thrown by the task will cause it
-   * to be deemed as erroneous.
-   *
-   * <p>If this list is empty then any <tt>RuntimeException</tt> thrown by the task will cause it to
-   * be deemed as erroneous.
+   * Decides whether an exception thrown by the task deems it erroneous; that is whether the
+   * exception is one of the <tt>failOnExceptions</tt>, or a subclass of one, or any
+   * <tt>RuntimeException</tt> if no exceptions were specified.
    */
-  private final List<Class<? extends Exception>> failOnExceptions;
+  private final ExceptionClassifier exceptionClassifier;
+
+  /**
+   * <tt>true</tt> if this executor was called since a registry holding it last checked, so that it
+   * is not evicted while held onto; read on every call but written at most once per check
+   */
+  private volatile boolean used;
 
   /**
    * Constructs an instance with the supplied values if they are valid.
@@ -64,15 +112,51 @@ public class CircuitBreakerExecutor<T> {
       Callable<T> task,
       int errorToleranceFactor,
       List<Class<? extends Exception>> failOnExceptions) {
+    this(taskId, task, configOf(errorToleranceFactor, failOnExceptions));
+  }
+
+  /**
+   * Constructs an instance with the supplied values if they are valid.
+   *
+   * @param taskId the label or description corresponding to the task
+   * @param task the complex and/or time consuming task to execute
+   * @param config the settings that govern how this executor trips and recovers
+   */
+  private CircuitBreakerExecutor(String taskId, Callable<T> task, CircuitBreakerConfig config) {
 
-    validate(taskId, task, errorToleranceFactor, failOnExceptions);
+    Objects.requireNonNull(config);
+    validate(taskId, task, config.getErrorToleranceFactor(), config.getFailOnExceptions());
 
     this.task = task;
     this.taskId = taskId;
-    this.failOnExceptions = failOnExceptions;
-    this.errorToleranceFactor = errorToleranceFactor;
+    this.exceptionClassifier = config.exceptionClassifier();
 
-    errorCounter = new AtomicInteger(0);
+    circuitBreaker = new CircuitBreaker(taskId, config);
+    callNotPermitted = new CallNotPermittedException(taskId);
+    timeoutDurationNanos = config.timeoutDurationNanos();
+    bulkhead = config.newBulkhead(taskId);
+    bulkheadFull = new BulkheadFullException(taskId);
+    inFlight = config.isCoalescingConcurrentCalls() ? new AtomicReference<>() : null;
+    maxStalenessNanos = config.maxStalenessNanos();
+    lastResult = maxStalenessNanos == 0 ? null : new AtomicReference<>();
+    clock = config.clock();
+  }
+
+  /**
+   * Returns a <tt>CircuitBreakerConfig</tt> with the supplied values and defaults for the rest.
+   *
+   * @param errorToleranceFactor the maximum number of errors that will <em>trip</em> this execution
+   *     wrapper
+   * @param failOnExceptions list of exceptions (including <em>checked</em>) which when thrown by
+   *     the task will cause it to be deemed as erroneous
+   * @return a <tt>CircuitBreakerConfig</tt> with the supplied values
+   */
+  private static CircuitBreakerConfig configOf(
+      int errorToleranceFactor, List<Class<? extends Exception>> failOnExceptions) {
+    return CircuitBreakerConfig.builder()
+        .errorToleranceFactor(errorToleranceFactor)
+        .failOnExceptions(failOnExceptions)
+        .build();
   }
 
   /**
@@ -194,29 +278,483 @@ public class CircuitBreakerExecutor<T> {
     return new CircuitBreakerExecutor<>(taskId, callable, errorToleranceFactor, failOnExceptions);
   }
 
+  /**
+   * Returns a <tt>CircuitBreakerExecutor</tt> instance with the supplied values.
+   *
+   * @param taskId the label or description corresponding to the task
+   * @param task the complex and/or time consuming <tt>Callable</tt> task to execute
+   * @param config the settings that govern how the executor trips and recovers
+   * @return a <tt>CircuitBreakerExecutor</tt> instance with the supplied values
+   */
+  public static <T> CircuitBreakerExecutor<T> create(
+      String taskId, Callable<T> task, CircuitBreakerConfig config) {
+    return new CircuitBreakerExecutor<>(taskId, task, config);
+  }
+
+  /**
+   * Returns a <tt>CircuitBreakerExecutor</tt> instance with the supplied values.
+   *
+   * @param taskId the label or description corresponding to the task
+   * @param task the complex and/or time consuming <tt>Runnable</tt> task to execute
+   * @param config the settings that govern how the executor trips and recovers
+   * @return a <tt>CircuitBreakerExecutor</tt> instance with the supplied values
+   */
+  public static CircuitBreakerExecutor<Void> create(
+      String taskId, Runnable task, CircuitBreakerConfig config) {
+    final Callable<Void> callable =
+        () -> {
+          task.run();
+          return null;
+        };
+    return new CircuitBreakerExecutor<>(taskId, callable, config);
+  }
+
+  /**
+   * Returns the current state of this <tt>CircuitBreakerExecutor</tt> instance.
+   *
+   * <p>An <tt>OPEN</tt> executor whose wait duration has elapsed is reported as <tt>OPEN</tt> until
+   * the next call to {@link #execute()} moves it to <tt>HALF_OPEN</tt>.
+   *
+   * @return the current state of this <tt>CircuitBreakerExecutor</tt> instance
+   */
+  public CircuitState getState() {
+    return circuitBreaker.getState();
+  }
+
   /**
    * Executes the <tt>task</tt> in this <tt>CircuitBreakerExecutor</tt> instance
    *
    * @return the result obtained by executing the <tt>task</tt>
    * @throws Exception if the <tt>task</tt> throws an exception
-   * @throws RuntimeException if this <tt>CircuitBreakerExecutor</tt> instance has already
-   *     <em>tripped</em>, meaning the running <tt>errorCounter</tt> is equal to the
-   *     <tt>errorToleranceFactor</tt>
+   * @throws TimeoutException if a timeout is configured and the <tt>task</tt> exceeds it
+   * @throws BulkheadFullException if the maximum number of concurrent calls are already in flight
+   * @throws CallNotPermittedException if this <tt>CircuitBreakerExecutor</tt> instance is
+   *     <tt>OPEN</tt>, or is <tt>HALF_OPEN</tt> and has already let all the permitted probe calls
+   *     through
+   * @throws InterruptedException if concurrent calls are coalesced and the thread is interrupted
+   *     while waiting for the call in flight
    */
   public T execute() throws Exception {
-    if (errorCounter.get() == errorToleranceFactor) {
-      throw new RuntimeException("Too many failures for task [" + taskId + "].");
+    markUsed();
+    if (inFlight != null) {
+      return valueOf(coalesce());
+    }
+    if (bulkhead == null) {
+      return executePermitted();
+    }
+    if (!bulkhead.tryAcquirePermission()) {
+      throw bulkheadFull;
+    }
+    try {
+      return executePermitted();
+    } finally {
+      bulkhead.release();
+    }
+  }
+
+  /**
+   * Executes the <tt>task</tt> in this <tt>CircuitBreakerExecutor</tt> instance without throwing.
+   *
+   * <p>Unlike {@link #execute()} the outcome of the call, including its rejection by an open
+   * circuit or a full bulkhead, is returned rather than thrown. Rejections return a shared
+   * instance and allocate nothing.
+   *
+   * @return the value returned by the <tt>task</tt>, the exception it threw, or the rejection of
+   *     the call if the maximum number of concurrent calls are already in flight or if this
+   *     <tt>CircuitBreakerExecutor</tt> instance is <tt>OPEN</tt>, or is <tt>HALF_OPEN</tt> and
+   *     has already let all the permitted probe calls through
+   */
+  public ExecutionResult<T> tryExecute() {
+    markUsed();
+    if (inFlight != null) {
+      try {
+        return coalesce();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return ExecutionResult.failure(e);
+      }
+    }
+    return tryExecuteAlone();
+  }
+
+  /**
+   * Executes the <tt>task</tt> without joining a call in flight, and without throwing.
+   *
+   * @return the value returned by the <tt>task</tt>, the exception it threw, or the rejection of
+   *     the call
+   */
+  private ExecutionResult<T> tryExecuteAlone() {
+    if (bulkhead == null) {
+      return tryExecutePermitted();
+    }
+    if (!bulkhead.tryAcquirePermission()) {
+      return ExecutionResult.bulkheadFull();
+    }
+    try {
+      return tryExecutePermitted();
+    } finally {
+      bulkhead.release();
+    }
+  }
+
+  /**
+   * Joins the call in flight, if there is one, or else executes the <tt>task</tt> and shares the
+   * outcome with every call that joins it meanwhile.
+   *
+   * @return the outcome of the call in flight, or of this call
+   * @throws InterruptedException if the thread is interrupted while waiting for the call in flight
+   */
+  private ExecutionResult<T> coalesce() throws InterruptedException {
+    final CompletableFuture<ExecutionResult<T>> call = new CompletableFuture<>();
+    for (; ; ) {
+      final CompletableFuture<ExecutionResult<T>> current = inFlight.get();
+      if (current != null) {
+        return join(current);
+      }
+      if (inFlight.compareAndSet(null, call)) {
+        break;
+      }
+    }
+    final ExecutionResult<T> result;
+    try {
+      result = tryExecuteAlone();
+    } catch (Throwable t) {
+      inFlight.set(null);
+      call.completeExceptionally(t);
+      throw t;
+    }
+    // calls that arrive from now on start a new call rather than receive this, older, outcome
+    inFlight.set(null);
+    call.complete(result);
+    return result;
+  }
+
+  /** Waits for the outcome of a call in flight, rethrowing whatever escaped its execution. */
+  private static <T> ExecutionResult<T> join(CompletableFuture<ExecutionResult<T>> call)
+      throws InterruptedException {
+    try {
+      return call.get();
+    } catch (ExecutionException e) {
+      // tryExecuteAlone() only lets unchecked exceptions escape
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw (RuntimeException) e.getCause();
+    }
+  }
+
+  /** Returns the value of a call, or throws its exception or rejection. */
+  private T valueOf(ExecutionResult<T> result) throws Exception {
+    switch (result.getStatus()) {
+      case SUCCESS:
+      case STALE:
+        return result.getValue();
+      case FAILURE:
+        throw result.getFailure();
+      case REJECTED:
+        throw callNotPermitted;
+      default:
+        throw bulkheadFull;
+    }
+  }
+
+  /** Executes the <tt>task</tt>, once admitted by the bulkhead, if the breaker permits it. */
+  private T executePermitted() throws Exception {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      if (hasServableResult()) {
+        return lastResult.get();
+      }
+      throw callNotPermitted;
+    }
+    return call();
+  }
+
+  /** Executes the <tt>task</tt>, once admitted by the bulkhead, if the breaker permits it. */
+  private ExecutionResult<T> tryExecutePermitted() {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      return hasServableResult()
+          ? ExecutionResult.stale(lastResult.get())
+          : ExecutionResult.rejected();
     }
     try {
-      final T result = task.call();
-      errorCounter.set(0);
-      return result;
+      return ExecutionResult.success(call());
     } catch (Exception e) {
-      if ((failOnExceptions.isEmpty() && RuntimeException.class.isAssignableFrom(e.getClass()))
-          || failOnExceptions.contains(e.getClass())) {
-        errorCounter.incrementAndGet();
+      return ExecutionResult.failure(e);
+    }
+  }
+
+  /**
+   * Calls the <tt>task</tt>, once permitted, and records the outcome.
+   *
+   * @return the result obtained by executing the <tt>task</tt>
+   * @throws Exception if the <tt>task</tt> throws an exception
+   * @throws TimeoutException if a timeout is configured and the <tt>task</tt> exceeds it
+   */
+  private T call() throws Exception {
+    final long startedAt = startTimer();
+    if (timeoutDurationNanos == 0) {
+      try {
+        final T result = task.call();
+        onPass(startedAt);
+        remember(result, startedAt);
+        return result;
+      } catch (Throwable t) {
+        onException(t, startedAt);
+        throw t;
+      }
+    }
+
+    final CallTimeout callTimeout =
+        new CallTimeout(HashedWheelTimer.shared(), timeoutDurationNanos);
+    final T result;
+    try {
+      result = task.call();
+    } catch (Throwable t) {
+      if (callTimeout.finish()) {
+        throw timedOut(startedAt, t);
+      }
+      onException(t, startedAt);
+      throw t;
+    }
+    if (callTimeout.finish()) {
+      throw timedOut(startedAt, null);
+    }
+    onPass(startedAt);
+    remember(result, startedAt);
+    return result;
+  }
+
+  /**
+   * Records a task execution that timed out and returns the exception to fail the call with.
+   *
+   * @param startedAt the clock reading at which the task execution started
+   * @param cause the exception the task threw after it timed out, or <tt>null</tt> if it returned
+   * @return the exception to fail the call with
+   */
+  private TimeoutException timedOut(long startedAt, Throwable cause) {
+    onError(startedAt);
+    final TimeoutException timeout = timeoutException();
+    if (cause != null) {
+      timeout.initCause(cause);
+    }
+    return timeout;
+  }
+
+  /**
+   * Executes an asynchronous variant of the <tt>task</tt> under the circuit of this
+   * <tt>CircuitBreakerExecutor</tt> instance.
+   *
+   * <p>If the call is permitted the <tt>stageSupplier</tt> is invoked on the calling thread and
+   * the outcome is recorded when the stage it returns completes, on whichever thread completes it.
+   * Nothing blocks, other than for the configured max wait duration of a full bulkhead, and no
+   * threads are created. A stage that completes exceptionally is classified exactly like an
+   * exception thrown by {@link #execute()}, after unwrapping any <tt>CompletionException</tt>.
+   *
+   * <p>If a timeout is configured and the stage has not completed in time, the returned stage fails
+   * with a <tt>TimeoutException</tt>; the stage returned by the <tt>stageSupplier</tt> is left to
+   * complete on its own, and holds its bulkhead permit until it does.
+   *
+   * @param stageSupplier starts the asynchronous task and returns the stage that completes with
+   *     its result
+   * @return a stage that completes with the result of the stage returned by the
+   *     <tt>stageSupplier</tt>, exceptionally with a {@link BulkheadFullException} if the maximum
+   *     number of concurrent calls are already in flight, or exceptionally with a {@link
+   *     CallNotPermittedException} if this <tt>CircuitBreakerExecutor</tt> instance is
+   *     <tt>OPEN</tt>, or is <tt>HALF_OPEN</tt> and has already let all the permitted probe calls
+   *     through
+   * @throws NullPointerException if the <tt>stageSupplier</tt> is <tt>null</tt>
+   */
+  public CompletionStage<T> executeAsync(Supplier<? extends CompletionStage<T>> stageSupplier) {
+    Objects.requireNonNull(stageSupplier);
+    markUsed();
+    if (bulkhead != null && !bulkhead.tryAcquirePermission()) {
+      return failedStage(bulkheadFull);
+    }
+    if (!circuitBreaker.tryAcquirePermission()) {
+      releaseBulkhead();
+      return hasServableResult()
+          ? CompletableFuture.completedFuture(lastResult.get())
+          : failedStage(callNotPermitted);
+    }
+    final long startedAt = startTimer();
+    final CompletionStage<T> stage;
+    try {
+      stage = Objects.requireNonNull(stageSupplier.get(), "stageSupplier returned null");
+    } catch (Throwable t) {
+      onException(t, startedAt);
+      releaseBulkhead();
+      return failedStage(t);
+    }
+    if (timeoutDurationNanos == 0) {
+      return stage.whenComplete(
+          (result, failure) -> {
+            onCompletion(result, failure, startedAt);
+            releaseBulkhead();
+          });
+    }
+
+    final CompletableFuture<T> timed = new CompletableFuture<>();
+    final HashedWheelTimer.Timeout timeout =
+        HashedWheelTimer.shared()
+            .schedule(
+                () -> {
+                  onError(startedAt);
+                  timed.completeExceptionally(timeoutException());
+                },
+                timeoutDurationNanos);
+    // the timeout either fires or is cancelled, never both, so the outcome is recorded once; the
+    // bulkhead permit is held until the task itself completes, even if the caller has timed out
+    stage.whenComplete(
+        (result, failure) -> {
+          if (timeout.cancel()) {
+            onCompletion(result, failure, startedAt);
+            if (failure == null) {
+              timed.complete(result);
+            } else {
+              timed.completeExceptionally(failure);
+            }
+          }
+          releaseBulkhead();
+        });
+    return timed;
+  }
+
+  /**
+   * Records the completion of an asynchronous task execution.
+   *
+   * @param result the value the stage completed with, if it passed
+   * @param failure the exception the stage completed with, or <tt>null</tt> if it passed
+   * @param startedAt the clock reading at which the task execution started
+   */
+  private void onCompletion(T result, Throwable failure, long startedAt) {
+    if (failure == null) {
+      onPass(startedAt);
+      remember(result, startedAt);
+    } else {
+      onException(
+          failure instanceof CompletionException && failure.getCause() != null
+              ? failure.getCause()
+              : failure,
+          startedAt);
+    }
+  }
+
+  /** Flags this executor as called, unless it already is. */
+  private void markUsed() {
+    if (!used) {
+      used = true;
+    }
+  }
+
+  /**
+   * Clears the flag set by calls to this executor.
+   *
+   * @return <tt>true</tt> if this executor was called since the flag was last cleared
+   */
+  boolean clearUsed() {
+    if (!used) {
+      return false;
+    }
+    used = false;
+    return true;
+  }
+
+  /**
+   * Returns the clock reading to time a call from: the breaker's, which only reads the clock if it
+   * times calls, or, if stale results are served, a reading that also stamps the call's result.
+   */
+  private long startTimer() {
+    return lastResult == null ? circuitBreaker.startTimer() : clock.getAsLong();
+  }
+
+  /**
+   * Keeps the supplied value as the last result of the task, if stale results are served. This is
+   * two ordered writes, with no allocation and no fence on the success path: the value is written
+   * before its time, so a reader that reads the time first never reads an older value with it.
+   *
+   * @param value the value returned by the task
+   * @param startedAt the clock reading at which the call that returned it started
+   */
+  private void remember(T value, long startedAt) {
+    if (lastResult != null) {
+      lastResult.lazySet(value);
+      lastResultAt.lazySet(startedAt);
+    }
+  }
+
+  /**
+   * Returns <tt>true</tt> if stale results are served and the last result of the task is within the
+   * max staleness. The result is aged from the start of the call that returned it, so it is never
+   * served older than the max staleness.
+   */
+  private boolean hasServableResult() {
+    if (lastResult == null) {
+      return false;
+    }
+    final long storedAt = lastResultAt.get();
+    return storedAt != NO_RESULT && clock.getAsLong() - storedAt <= maxStalenessNanos;
+  }
+
+  /** Releases the permit acquired from the bulkhead, if one is configured. */
+  private void releaseBulkhead() {
+    if (bulkhead != null) {
+      bulkhead.release();
+    }
+  }
+
+  /** Returns a new exception to fail a call that exceeded the configured timeout with. */
+  private TimeoutException timeoutException() {
+    return new TimeoutException(
+        "Task [" + taskId + "] timed out after " + timeoutDurationNanos + " ns.");
+  }
+
+  /** Returns a new stage that is already completed exceptionally with the supplied exception. */
+  private static <T> CompletionStage<T> failedStage(Throwable failure) {
+    final CompletableFuture<T> stage = new CompletableFuture<>();
+    stage.completeExceptionally(failure);
+    return stage;
+  }
+
+  /**
+   * Records a task execution that failed with the supplied exception, as an error if the exception
+   * is deemed as erroneous.
+   *
+   * @param e the exception thrown by the task
+   * @param startedAt the clock reading at which the task execution started
+   */
+  private void onException(Throwable e, long startedAt) {
+    if (exceptionClassifier.isErroneous(e)) {
+      onError(startedAt);
+    } else {
+      circuitBreaker.onIgnoredError(startedAt);
+      if (bulkhead != null) {
+        bulkhead.onComplete(startedAt, false);
       }
-      throw e;
+    }
+  }
+
+  /**
+   * Records a task execution that passed, with the breaker and with the bulkhead.
+   *
+   * @param startedAt the clock reading at which the task execution started
+   */
+  private void onPass(long startedAt) {
+    circuitBreaker.onPass(startedAt);
+    if (bulkhead != null) {
+      bulkhead.onComplete(startedAt, false);
+    }
+  }
+
+  /**
+   * Records a task execution that failed with an error or timed out, with the breaker and with the
+   * bulkhead.
+   *
+   * @param startedAt the clock reading at which the task execution started
+   */
+  private void onError(long startedAt) {
+    circuitBreaker.onError(startedAt);
+    if (bulkhead != null) {
+      bulkhead.onComplete(startedAt, true);
     }
   }
 }
@@ -0,0 +1,38 @@
+package com.aspirecsl.labs;
+
+/**
+ * Receives the events of the <tt>CircuitBreakerExecutor</tt> instances built with a
+ * <tt>CircuitBreakerConfig</tt>.
+ *
+ * <p>Breaker trips and changes to an adaptive concurrency limit are delivered to the same listener,
+ * keyed by the same task id, so a load shedding limit drop can be read alongside the trip it did,
+ * or did not, prevent. Events are delivered synchronously on the thread that caused them, which is
+ * often a caller of <tt>execute()</tt>; implementations must be thread safe and should return
+ * quickly. An exception thrown by a listener is logged and otherwise ignored, so that it can
+ * never leave a breaker half way through a transition.
+ *
+ * @author anoopr
+ */
+public interface CircuitBreakerListener {
+
+  /** the listener used when none is configured; ignores every event * */
+  CircuitBreakerListener NO_OP = new CircuitBreakerListener() {};
+
+  /**
+   * Called when the breaker of a task moves from one state to another.
+   *
+   * @param taskId the label or description corresponding to the task
+   * @param from the state the breaker left
+   * @param to the state the breaker entered
+   */
+  default void onStateTransition(String taskId, CircuitState from, CircuitState to) {}
+
+  /**
+   * Called when the adaptive concurrency limit of a task changes.
+   *
+   * @param taskId the label or description corresponding to the task
+   * @param from the previous limit
+   * @param to the new limit
+   */
+  default void onLimitChanged(String taskId, int from, int to) {}
+}
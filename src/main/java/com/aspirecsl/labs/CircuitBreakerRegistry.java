@@ -0,0 +1,275 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds one <tt>CircuitBreakerExecutor</tt> per <tt>taskId</tt>, e.g. per downstream host, created
+ * on first use with a shared default <tt>CircuitBreakerConfig</tt>.
+ *
+ * <pre>
+ *   CircuitBreakerRegistry registry =
+ *       CircuitBreakerRegistry.create(config, Duration.ofMinutes(10));
+ *   ...
+ *   registry.executor(host, () -> fetch(host)).execute();
+ * </pre>
+ *
+ * <p>An executor that has been neither looked up nor called for the <em>idle eviction timeout</em>
+ * and is <tt>CLOSED</tt> is evicted, so the registry only holds the executors of the tasks in
+ * recent use, or of those still failing. An executor held onto and called without being looked up
+ * again is therefore kept: it flags its own calls, and the registry reads and clears the flag as it
+ * sweeps. An executor left <tt>OPEN</tt> by a task that is no longer called is kept until
+ * {@linkplain #remove(String) removed}.
+ *
+ * <p>Sweeps start at most once per half the timeout and are spread over the lookups that follow,
+ * each checking at most four executors, so no lookup walks the whole registry; {@link
+ * #evictIdleExecutors()} sweeps it all at once. An idle executor is therefore evicted some time
+ * after the timeout, depending on how often the registry is looked up, but never before it.
+ *
+ * <p>Lookups of an existing executor read the map without locking and record their time at most
+ * once per second per executor, and calls only write their flag once per sweep, so that a busy
+ * executor is not written to on every call.
+ *
+ * @author anoopr
+ */
+public final class CircuitBreakerRegistry {
+
+  /** the default time after which an executor that is not looked up is evicted, if closed * */
+  public static final Duration DEFAULT_IDLE_EVICTION_TIMEOUT = Duration.ofMinutes(10);
+
+  /** the number of executors a lookup checks while a sweep is under way * */
+  private static final int SWEEP_STEPS = 4;
+
+  /** the longest time, in nanoseconds, between two records of a lookup of an executor * */
+  private static final long MAX_TOUCH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /** the settings of the executors created without their own config * */
+  private final CircuitBreakerConfig defaultConfig;
+
+  /** the time, in nanoseconds, after which an executor that is not looked up is evicted * */
+  private final long idleEvictionTimeoutNanos;
+
+  /** the time, in nanoseconds, between two records of a lookup of an executor * */
+  private final long touchIntervalNanos;
+
+  /** the monotonic clock, in nanoseconds, used to measure idle times * */
+  private final LongSupplier clock;
+
+  /** the executors, keyed by task id * */
+  private final Map<String, Entry> executors = new ConcurrentHashMap<>();
+
+  /** held by the thread sweeping the executors * */
+  private final ReentrantLock sweepLock = new ReentrantLock();
+
+  /** the clock reading at which the last sweep started; written under <tt>sweepLock</tt> * */
+  private volatile long lastSweep;
+
+  /** the sweep under way, or <tt>null</tt> if there is none; written under <tt>sweepLock</tt> * */
+  private volatile Iterator<Map.Entry<String, Entry>> sweep;
+
+  CircuitBreakerRegistry(
+      CircuitBreakerConfig defaultConfig, Duration idleEvictionTimeout, LongSupplier clock) {
+    this.defaultConfig = Objects.requireNonNull(defaultConfig);
+    Objects.requireNonNull(idleEvictionTimeout);
+    if (idleEvictionTimeout.isNegative() || idleEvictionTimeout.isZero()) {
+      throw new IllegalArgumentException("Idle eviction timeout must be > 0");
+    }
+    this.idleEvictionTimeoutNanos = idleEvictionTimeout.toNanos();
+    this.touchIntervalNanos = Math.min(MAX_TOUCH_INTERVAL_NANOS, idleEvictionTimeoutNanos / 4);
+    this.clock = Objects.requireNonNull(clock);
+    this.lastSweep = clock.getAsLong();
+  }
+
+  /**
+   * Returns a <tt>CircuitBreakerRegistry</tt> instance with the supplied values.
+   *
+   * @param defaultConfig the settings of the executors created without their own config
+   * @param idleEvictionTimeout the time after which an executor that is neither looked up nor
+   *     called, and is <tt>CLOSED</tt>, is evicted
+   * @return a <tt>CircuitBreakerRegistry</tt> instance with the supplied values
+   * @throws NullPointerException if any of the specified values is <tt>null</tt>
+   * @throws IllegalArgumentException if the <tt>idleEvictionTimeout</tt> is not positive
+   */
+  public static CircuitBreakerRegistry create(
+      CircuitBreakerConfig defaultConfig, Duration idleEvictionTimeout) {
+    return new CircuitBreakerRegistry(defaultConfig, idleEvictionTimeout, System::nanoTime);
+  }
+
+  /**
+   * Returns a <tt>CircuitBreakerRegistry</tt> instance with the default config and idle eviction
+   * timeout.
+   *
+   * @return a <tt>CircuitBreakerRegistry</tt> instance with the default settings
+   */
+  public static CircuitBreakerRegistry ofDefaults() {
+    return create(CircuitBreakerConfig.ofDefaults(), DEFAULT_IDLE_EVICTION_TIMEOUT);
+  }
+
+  /**
+   * Returns the executor of the supplied task, creating it with the default config if there is
+   * none.
+   *
+   * <p>The <tt>task</tt> is only used if the executor is created; a registered executor keeps the
+   * task it was created with. Looking up one <tt>taskId</tt> with tasks of different result types
+   * fails with a <tt>ClassCastException</tt> where the result is used.
+   *
+   * @param taskId the label or description corresponding to the task
+   * @param task the complex and/or time consuming task to execute
+   * @return the executor of the supplied task
+   */
+  public <T> CircuitBreakerExecutor<T> executor(String taskId, Callable<T> task) {
+    return executor(taskId, task, defaultConfig);
+  }
+
+  /**
+   * Returns the executor of the supplied task, creating it with the supplied config if there is
+   * none.
+   *
+   * <p>The <tt>task</tt> and <tt>config</tt> are only used if the executor is created.
+   *
+   * @param taskId the label or description corresponding to the task
+   * @param task the complex and/or time consuming task to execute
+   * @param config the settings that govern how the executor trips and recovers, if created
+   * @return the executor of the supplied task
+   */
+  @SuppressWarnings("unchecked")
+  public <T> CircuitBreakerExecutor<T> executor(
+      String taskId, Callable<T> task, CircuitBreakerConfig config) {
+    final long now = clock.getAsLong();
+    Entry entry = executors.get(taskId);
+    if (entry == null) {
+      entry =
+          executors.computeIfAbsent(
+              taskId, id -> new Entry(CircuitBreakerExecutor.create(id, task, config), now));
+    } else if (now - entry.lastAccess >= touchIntervalNanos) {
+      entry.lastAccess = now;
+    }
+    if (sweep != null || now - lastSweep >= idleEvictionTimeoutNanos / 2) {
+      sweepSome(now);
+    }
+    return (CircuitBreakerExecutor<T>) entry.executor;
+  }
+
+  /**
+   * Returns the executor of the supplied task, if there is one, without creating it or recording
+   * the lookup.
+   *
+   * @param taskId the label or description corresponding to the task
+   * @return the executor of the supplied task, if there is one
+   */
+  public Optional<CircuitBreakerExecutor<?>> find(String taskId) {
+    final Entry entry = executors.get(taskId);
+    return entry == null ? Optional.empty() : Optional.of(entry.executor);
+  }
+
+  /**
+   * Removes the executor of the supplied task, whatever its state.
+   *
+   * @param taskId the label or description corresponding to the task
+   * @return <tt>true</tt> if there was an executor of the supplied task
+   */
+  public boolean remove(String taskId) {
+    return executors.remove(taskId) != null;
+  }
+
+  /**
+   * Returns the number of executors held.
+   *
+   * @return the number of executors held
+   */
+  public int size() {
+    return executors.size();
+  }
+
+  /**
+   * Evicts every executor that has been neither looked up nor called for the idle eviction timeout
+   * and is <tt>CLOSED</tt>.
+   *
+   * <p>Lookups already do this periodically; a registry that may stop being looked up altogether
+   * can call this from a scheduled task instead.
+   */
+  public void evictIdleExecutors() {
+    sweepLock.lock();
+    try {
+      final long now = clock.getAsLong();
+      lastSweep = now;
+      sweep = null;
+      for (Map.Entry<String, Entry> mapping : executors.entrySet()) {
+        evictIfIdle(mapping.getKey(), mapping.getValue(), now);
+      }
+    } finally {
+      sweepLock.unlock();
+    }
+  }
+
+  /**
+   * Checks the next few executors of the sweep under way, starting one if it is due, unless
+   * another thread is sweeping.
+   */
+  private void sweepSome(long now) {
+    if (!sweepLock.tryLock()) {
+      return;
+    }
+    try {
+      Iterator<Map.Entry<String, Entry>> remaining = sweep;
+      if (remaining == null) {
+        if (now - lastSweep < idleEvictionTimeoutNanos / 2) {
+          return;
+        }
+        lastSweep = now;
+        remaining = executors.entrySet().iterator();
+      }
+      for (int i = 0; i < SWEEP_STEPS && remaining.hasNext(); i++) {
+        final Map.Entry<String, Entry> mapping = remaining.next();
+        evictIfIdle(mapping.getKey(), mapping.getValue(), now);
+      }
+      sweep = remaining.hasNext() ? remaining : null;
+    } finally {
+      sweepLock.unlock();
+    }
+  }
+
+  private void evictIfIdle(String taskId, Entry entry, long now) {
+    // removed only if still mapped, so a concurrent creation is never evicted; an executor called
+    // while being evicted is put back, unless its task id has been taken meanwhile
+    if (entry.isEvictable(now, idleEvictionTimeoutNanos)
+        && executors.remove(taskId, entry)
+        && entry.executor.clearUsed()) {
+      executors.putIfAbsent(taskId, entry);
+    }
+  }
+
+  /** An executor held by the registry and the time it was last known to be in use. */
+  private static final class Entry {
+
+    private final CircuitBreakerExecutor<?> executor;
+
+    /**
+     * the clock reading at which the executor was last looked up, to a touch interval, or last
+     * found to have been called since the sweep before
+     */
+    private volatile long lastAccess;
+
+    private Entry(CircuitBreakerExecutor<?> executor, long lastAccess) {
+      this.executor = executor;
+      this.lastAccess = lastAccess;
+    }
+
+    private boolean isEvictable(long now, long idleEvictionTimeoutNanos) {
+      if (executor.clearUsed()) {
+        lastAccess = now;
+        return false;
+      }
+      return now - lastAccess >= idleEvictionTimeoutNanos
+          && executor.getState() == CircuitState.CLOSED;
+    }
+  }
+}
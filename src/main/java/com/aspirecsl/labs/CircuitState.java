@@ -0,0 +1,24 @@
+package com.aspirecsl.labs;
+
+/**
+ * The states of a <tt>circuit breaker</tt>.
+ *
+ * <p>A breaker starts <tt>CLOSED</tt> and lets every call through. Once the task has failed too
+ * many times the breaker <em>trips</em> to <tt>OPEN</tt> and rejects every call. After the
+ * configured <em>wait duration in open state</em> the breaker moves to <tt>HALF_OPEN</tt> and lets
+ * a limited number of probe calls through; their outcome decides whether the breaker closes again
+ * or re-opens.
+ *
+ * @author anoopr
+ */
+public enum CircuitState {
+
+  /** the task is executed normally * */
+  CLOSED,
+
+  /** the task is not executed; every call is rejected * */
+  OPEN,
+
+  /** a limited number of probe calls are let through to test whether the task has recovered * */
+  HALF_OPEN
+}
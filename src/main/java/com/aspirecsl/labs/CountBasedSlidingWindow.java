@@ -0,0 +1,113 @@
+package com.aspirecsl.labs;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A <tt>SlidingWindow</tt> over the last <tt>N</tt> task executions.
+ *
+ * <p>The outcomes are held in two rings of bits, one bit per execution in each, with running counts
+ * of the errors and slow calls among them. Recording an outcome evicts the oldest one and adjusts
+ * the counts, so both recording and evaluating the rates take constant time and allocate nothing.
+ *
+ * <p>The rings are guarded by a <tt>ReentrantLock</tt> rather than a monitor: a virtual thread
+ * blocked entering a monitor pins its carrier thread, one waiting on a lock does not.
+ *
+ * @author anoopr
+ */
+final class CountBasedSlidingWindow implements SlidingWindow {
+
+  /** the number of executions this window holds * */
+  private final int size;
+
+  /** the minimum number of executions recorded before the error rate is evaluated * */
+  private final int minimumNumberOfCalls;
+
+  /** the error rate, as a percentage, at or above which the window reports a trip * */
+  private final float failureRateThreshold;
+
+  /** the slow call rate, as a percentage, at or above which the window reports a trip * */
+  private final float slowCallRateThreshold;
+
+  /** one bit per execution, set if the execution failed * */
+  private final long[] errors;
+
+  /** one bit per execution, set if the execution was slow * */
+  private final long[] slowCalls;
+
+  /** guards the rings and the counts * */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** the position in the ring the next outcome is written to * */
+  private int head;
+
+  /** the number of executions recorded, up to the <tt>size</tt> of this window * */
+  private int recorded;
+
+  /** the number of set bits in <tt>errors</tt> * */
+  private int errorCount;
+
+  /** the number of set bits in <tt>slowCalls</tt> * */
+  private int slowCallCount;
+
+  CountBasedSlidingWindow(
+      int size, int minimumNumberOfCalls, float failureRateThreshold, float slowCallRateThreshold) {
+    this.size = size;
+    this.minimumNumberOfCalls = Math.min(minimumNumberOfCalls, size);
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallRateThreshold = slowCallRateThreshold;
+    this.errors = new long[(size + 63) >>> 6];
+    this.slowCalls = new long[(size + 63) >>> 6];
+  }
+
+  @Override
+  public boolean record(boolean error, boolean slow) {
+    lock.lock();
+    try {
+      final int word = head >>> 6;
+      final long bit = 1L << head;
+      if ((errors[word] & bit) != 0) {
+        errorCount--;
+      }
+      if ((slowCalls[word] & bit) != 0) {
+        slowCallCount--;
+      }
+      if (error) {
+        errors[word] |= bit;
+        errorCount++;
+      } else {
+        errors[word] &= ~bit;
+      }
+      if (slow) {
+        slowCalls[word] |= bit;
+        slowCallCount++;
+      } else {
+        slowCalls[word] &= ~bit;
+      }
+      head = head + 1 == size ? 0 : head + 1;
+      if (recorded < size) {
+        recorded++;
+      }
+      return recorded >= minimumNumberOfCalls
+          && (errorCount * 100f >= failureRateThreshold * recorded
+              || slowCallCount * 100f >= slowCallRateThreshold * recorded);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void reset() {
+    lock.lock();
+    try {
+      Arrays.fill(errors, 0L);
+      Arrays.fill(slowCalls, 0L);
+      head = 0;
+      recorded = 0;
+      errorCount = 0;
+      slowCallCount = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
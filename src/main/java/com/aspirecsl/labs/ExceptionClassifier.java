@@ -0,0 +1,58 @@
+package com.aspirecsl.labs;
+
+import java.util.List;
+
+/**
+ * Decides whether an exception thrown by a task deems the task execution erroneous.
+ *
+ * <p>An exception is erroneous if its class is, or is a subclass or implementation of, any of the
+ * <tt>failOnExceptions</tt>; or, if there are none, if it is a <tt>RuntimeException</tt>. An
+ * <tt>Error</tt> is always erroneous. The answer is computed once per exception class, walking its
+ * hierarchy, and cached in a <tt>ClassValue</tt>, so each later classification is a single lookup.
+ *
+ * @author anoopr
+ */
+final class ExceptionClassifier {
+
+  /** whether exceptions of a class are erroneous, computed on first use * */
+  private final ClassValue<Boolean> erroneous;
+
+  /**
+   * Constructs an instance that classifies exceptions against the supplied classes.
+   *
+   * @param failOnExceptions list of exceptions (including <em>checked</em>) which when thrown by
+   *     the task will cause it to be deemed as erroneous. If <tt>empty</tt> then any
+   *     <tt>RuntimeException</tt> thrown by the task will cause it to be deemed as erroneous.
+   */
+  ExceptionClassifier(List<Class<? extends Exception>> failOnExceptions) {
+    final Class<?>[] failOn =
+        failOnExceptions.isEmpty()
+            ? new Class<?>[] {RuntimeException.class}
+            : failOnExceptions.toArray(new Class<?>[0]);
+    erroneous =
+        new ClassValue<Boolean>() {
+          @Override
+          protected Boolean computeValue(Class<?> type) {
+            if (Error.class.isAssignableFrom(type)) {
+              return Boolean.TRUE;
+            }
+            for (Class<?> candidate : failOn) {
+              if (candidate.isAssignableFrom(type)) {
+                return Boolean.TRUE;
+              }
+            }
+            return Boolean.FALSE;
+          }
+        };
+  }
+
+  /**
+   * Returns <tt>true</tt> if the supplied exception deems the task execution erroneous.
+   *
+   * @param e the exception thrown by the task
+   * @return <tt>true</tt> if the supplied exception deems the task execution erroneous
+   */
+  boolean isErroneous(Throwable e) {
+    return erroneous.get(e.getClass());
+  }
+}
@@ -0,0 +1,137 @@
+package com.aspirecsl.labs;
+
+/**
+ * The outcome of a call to {@link CircuitBreakerExecutor#tryExecute()}: the value returned by the
+ * task, the exception thrown by the task, the rejection of the call by an open circuit or a full
+ * bulkhead, or a stale value served in place of the rejection.
+ *
+ * <p>Rejections are by far the most frequent outcome during an incident, so each kind of rejection
+ * is represented by one shared instance and allocates nothing.
+ *
+ * @author anoopr
+ */
+public final class ExecutionResult<T> {
+
+  /** The kinds of outcome of a call. */
+  public enum Status {
+
+    /** the task was executed and returned a value * */
+    SUCCESS,
+
+    /** the task was executed and threw an exception * */
+    FAILURE,
+
+    /** the task was not executed because the circuit is open * */
+    REJECTED,
+
+    /** the task was not executed because too many calls were already in flight * */
+    BULKHEAD_FULL,
+
+    /** the task was not executed because the circuit is open; an earlier value was served * */
+    STALE
+  }
+
+  /** the outcome shared by every rejected call * */
+  private static final ExecutionResult<?> REJECTED =
+      new ExecutionResult<>(Status.REJECTED, null, null);
+
+  /** the outcome shared by every call rejected by a full bulkhead * */
+  private static final ExecutionResult<?> BULKHEAD_FULL =
+      new ExecutionResult<>(Status.BULKHEAD_FULL, null, null);
+
+  /** the kind of outcome * */
+  private final Status status;
+
+  /** the value returned by the task, if it succeeded * */
+  private final T value;
+
+  /** the exception thrown by the task, if it failed * */
+  private final Exception failure;
+
+  private ExecutionResult(Status status, T value, Exception failure) {
+    this.status = status;
+    this.value = value;
+    this.failure = failure;
+  }
+
+  static <T> ExecutionResult<T> success(T value) {
+    return new ExecutionResult<>(Status.SUCCESS, value, null);
+  }
+
+  static <T> ExecutionResult<T> stale(T value) {
+    return new ExecutionResult<>(Status.STALE, value, null);
+  }
+
+  static <T> ExecutionResult<T> failure(Exception failure) {
+    return new ExecutionResult<>(Status.FAILURE, null, failure);
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> ExecutionResult<T> rejected() {
+    return (ExecutionResult<T>) REJECTED;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> ExecutionResult<T> bulkheadFull() {
+    return (ExecutionResult<T>) BULKHEAD_FULL;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public boolean isSuccess() {
+    return status == Status.SUCCESS;
+  }
+
+  public boolean isFailure() {
+    return status == Status.FAILURE;
+  }
+
+  public boolean isRejected() {
+    return status == Status.REJECTED;
+  }
+
+  public boolean isBulkheadFull() {
+    return status == Status.BULKHEAD_FULL;
+  }
+
+  public boolean isStale() {
+    return status == Status.STALE;
+  }
+
+  /**
+   * Returns the value returned by the task.
+   *
+   * @return the value returned by the task, or served in place of a rejection, or <tt>null</tt> if
+   *     the call neither succeeded nor was served a stale value
+   */
+  public T getValue() {
+    return value;
+  }
+
+  /**
+   * Returns the exception thrown by the task.
+   *
+   * @return the exception thrown by the task, or <tt>null</tt> if the call did not fail
+   */
+  public Exception getFailure() {
+    return failure;
+  }
+
+  @Override
+  public String toString() {
+    switch (status) {
+      case SUCCESS:
+        return "ExecutionResult[SUCCESS: " + value + "]";
+      case FAILURE:
+        return "ExecutionResult[FAILURE: " + failure + "]";
+      case REJECTED:
+        return "ExecutionResult[REJECTED]";
+      case STALE:
+        return "ExecutionResult[STALE: " + value + "]";
+      default:
+        return "ExecutionResult[BULKHEAD_FULL]";
+    }
+  }
+}
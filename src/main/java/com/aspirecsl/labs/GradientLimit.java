@@ -0,0 +1,121 @@
+package com.aspirecsl.labs;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An <tt>AdaptiveLimit</tt> that tracks the ratio of the long term to the short term round-trip
+ * time, i.e. the <em>gradient</em>, of the calls it admits.
+ *
+ * <p>While the task keeps up the two averages agree, the gradient is one and the limit grows by a
+ * queue allowance of its square root. Once calls start to queue, in the task or anywhere
+ * downstream, the short term average rises above the long term one and the limit shrinks in
+ * proportion, down to half per sample. A call that fails with an error or times out counts as the
+ * steepest gradient. The new limit is blended into the current one so that a single outlier
+ * cannot swing it.
+ *
+ * <p>The averages are exponentially weighted and updated by one thread at a time; a sample that
+ * arrives while another is being applied is skipped rather than waited for, so no caller ever
+ * blocks here. A drop is not skipped though: it is counted, and applied by the thread applying the
+ * sample, so a burst of failures always shrinks the limit. The long term average is pulled down
+ * when it drifts far above the short term one, so the limit recovers quickly once a period of high
+ * latency ends. Round-trip times are counted as at least a nanosecond, so the gradient is always
+ * defined.
+ *
+ * @author anoopr
+ */
+final class GradientLimit extends AdaptiveLimit {
+
+  /** the weight of a sample in the short term average round-trip time * */
+  private static final double SHORT_TERM_WEIGHT = 1.0 / 10;
+
+  /** the weight of a sample in the long term average round-trip time * */
+  private static final double LONG_TERM_WEIGHT = 1.0 / 600;
+
+  /** the weight of a newly estimated limit in the current limit * */
+  private static final double SMOOTHING = 0.2;
+
+  /** the lowest gradient applied to the limit * */
+  private static final double MIN_GRADIENT = 0.5;
+
+  /** <tt>true</tt> while a thread applies a sample * */
+  private final AtomicBoolean sampling = new AtomicBoolean();
+
+  /** the number of drops that arrived while another sample was being applied * */
+  private final AtomicInteger pendingDrops = new AtomicInteger();
+
+  /** the short term average round-trip time, in nanoseconds; guarded by <tt>sampling</tt> * */
+  private double shortRtt;
+
+  /** the long term average round-trip time, in nanoseconds; guarded by <tt>sampling</tt> * */
+  private double longRtt;
+
+  /** the fractional limit the integer one is rounded from; guarded by <tt>sampling</tt> * */
+  private double estimatedLimit;
+
+  GradientLimit(int minLimit, int maxLimit, String taskId, CircuitBreakerListener listener) {
+    super(minLimit, maxLimit, taskId, listener);
+    estimatedLimit = get();
+  }
+
+  @Override
+  void onSample(long rttNanos, int inFlight, boolean dropped) {
+    if (!sampling.compareAndSet(false, true)) {
+      if (dropped) {
+        pendingDrops.incrementAndGet();
+      }
+      return;
+    }
+    try {
+      applyPendingDrops();
+      sample(Math.max(1, rttNanos), inFlight, dropped);
+    } finally {
+      sampling.set(false);
+    }
+    // a drop counted after the pending ones were applied, but before the flag was cleared
+    while (pendingDrops.get() != 0 && sampling.compareAndSet(false, true)) {
+      try {
+        applyPendingDrops();
+      } finally {
+        sampling.set(false);
+      }
+    }
+  }
+
+  /** Applies a sample to the averages and the limit; called under the <tt>sampling</tt> flag. */
+  private void sample(long rttNanos, int inFlight, boolean dropped) {
+    if (longRtt == 0) {
+      shortRtt = rttNanos;
+      longRtt = rttNanos;
+    } else {
+      shortRtt += (rttNanos - shortRtt) * SHORT_TERM_WEIGHT;
+      longRtt += (rttNanos - longRtt) * LONG_TERM_WEIGHT;
+      if (longRtt > shortRtt * 2) {
+        longRtt *= 0.95;
+      }
+    }
+
+    // an underused limit says nothing about how far it could safely grow
+    if (!dropped && inFlight * 2 < estimatedLimit) {
+      return;
+    }
+    apply(dropped ? MIN_GRADIENT : Math.max(MIN_GRADIENT, Math.min(1.0, longRtt / shortRtt)));
+  }
+
+  /** Applies the drops counted meanwhile to the limit; called under the <tt>sampling</tt> flag. */
+  private void applyPendingDrops() {
+    for (int drops = pendingDrops.getAndSet(0); drops > 0; drops--) {
+      apply(MIN_GRADIENT);
+    }
+  }
+
+  /** Blends the limit the supplied gradient calls for into the current one. */
+  private void apply(double gradient) {
+    final double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+    estimatedLimit =
+        Math.max(
+            minLimit, Math.min(maxLimit, estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    // the limit is only ever set here, under the sampling flag, so this cannot fail
+    compareAndSet(get(), (int) estimatedLimit);
+  }
+}
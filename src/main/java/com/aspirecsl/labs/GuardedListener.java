@@ -0,0 +1,63 @@
+package com.aspirecsl.labs;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers events to a {@link CircuitBreakerListener}, logging and otherwise ignoring whatever it
+ * throws.
+ *
+ * <p>Events are delivered right after the compare-and-set that caused them, often while the caller
+ * holds a permit it has yet to record an outcome for. A listener that threw there would leave the
+ * breaker half way through, e.g. <tt>HALF_OPEN</tt> with its only probe permit taken and never
+ * answered, so no exception thrown by a listener is let through.
+ *
+ * @author anoopr
+ */
+final class GuardedListener implements CircuitBreakerListener {
+
+  private static final Logger LOGGER = Logger.getLogger(CircuitBreakerListener.class.getName());
+
+  /** the listener to deliver events to * */
+  private final CircuitBreakerListener listener;
+
+  private GuardedListener(CircuitBreakerListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Returns a listener that delivers events to the supplied one, logging whatever it throws.
+   *
+   * @param listener the listener to deliver events to
+   * @return a listener that delivers events to the supplied one, logging whatever it throws
+   */
+  static CircuitBreakerListener of(CircuitBreakerListener listener) {
+    return listener == NO_OP || listener instanceof GuardedListener
+        ? listener
+        : new GuardedListener(listener);
+  }
+
+  @Override
+  public void onStateTransition(String taskId, CircuitState from, CircuitState to) {
+    try {
+      listener.onStateTransition(taskId, from, to);
+    } catch (Throwable t) {
+      LOGGER.log(
+          Level.WARNING,
+          "Listener failed on " + from + " -> " + to + " of task [" + taskId + "]",
+          t);
+    }
+  }
+
+  @Override
+  public void onLimitChanged(String taskId, int from, int to) {
+    try {
+      listener.onLimitChanged(taskId, from, to);
+    } catch (Throwable t) {
+      LOGGER.log(
+          Level.WARNING,
+          "Listener failed on limit " + from + " -> " + to + " of task [" + taskId + "]",
+          t);
+    }
+  }
+}
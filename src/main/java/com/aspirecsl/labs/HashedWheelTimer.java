@@ -0,0 +1,240 @@
+package com.aspirecsl.labs;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A timer that runs short tasks after a delay, on a single daemon thread shared by every user.
+ *
+ * <p>Timeouts are kept in a wheel of buckets, each covering one <em>tick</em> of time. Scheduling
+ * hands the timeout to the worker thread through a lock-free queue and cancelling flips its state,
+ * so both take constant time however many timeouts are pending. The worker wakes once per tick,
+ * moves newly scheduled timeouts into their buckets and expires those of the current bucket whose
+ * round has come. A cancelled timeout is dropped when the worker next visits its bucket, i.e.
+ * within one turn of the wheel.
+ *
+ * <p>Timeouts expire up to one tick late, never early. The worker parks while there is nothing to
+ * time out. Tasks run on the worker thread, so they must be short and must not block.
+ *
+ * @author anoopr
+ */
+final class HashedWheelTimer {
+
+  /** the default duration of one tick of the wheel * */
+  static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /** the default number of buckets in the wheel * */
+  static final int DEFAULT_WHEEL_SIZE = 512;
+
+  /** the duration, in nanoseconds, of one tick of the wheel * */
+  private final long tickNanos;
+
+  /** the buckets of the wheel; only accessed by the worker thread * */
+  private final Bucket[] wheel;
+
+  /** <tt>wheel.length - 1</tt>, to map a tick to its bucket * */
+  private final int mask;
+
+  /** the timeouts scheduled since the worker last ticked * */
+  private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+
+  /** the thread that expires the timeouts * */
+  private final Thread worker;
+
+  /** the clock reading at which this timer was created * */
+  private final long startTime;
+
+  /** <tt>true</tt> while the worker is parked waiting for a timeout to be scheduled * */
+  private volatile boolean idle;
+
+  HashedWheelTimer(String name, long tickNanos, int wheelSize) {
+    if (tickNanos <= 0) {
+      throw new IllegalArgumentException("Tick duration must be > 0");
+    }
+    if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+      throw new IllegalArgumentException("Wheel size must be a power of two");
+    }
+    this.tickNanos = tickNanos;
+    this.wheel = new Bucket[wheelSize];
+    for (int i = 0; i < wheelSize; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = wheelSize - 1;
+    this.startTime = System.nanoTime();
+    this.worker = new Thread(this::work, name);
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /**
+   * Returns the timer shared by every <tt>circuit breaker</tt>, starting it on first use.
+   *
+   * @return the timer shared by every <tt>circuit breaker</tt>
+   */
+  static HashedWheelTimer shared() {
+    return Shared.TIMER;
+  }
+
+  /**
+   * Schedules the supplied task to run once the delay has elapsed.
+   *
+   * @param task the short, non-blocking task to run
+   * @param delayNanos the delay, in nanoseconds
+   * @return a handle to cancel the timeout with
+   */
+  Timeout schedule(Runnable task, long delayNanos) {
+    final Timeout timeout = new Timeout(task, System.nanoTime() - startTime + delayNanos);
+    scheduled.add(timeout);
+    if (idle) {
+      LockSupport.unpark(worker);
+    }
+    return timeout;
+  }
+
+  private void work() {
+    long tick = 0;
+    int pending = 0;
+    for (; ; ) {
+      if (pending == 0 && scheduled.isEmpty()) {
+        idle = true;
+        // re-check after publishing idle, so a concurrent schedule() either sees idle or is seen
+        while (scheduled.isEmpty()) {
+          LockSupport.park(this);
+        }
+        idle = false;
+        tick = (System.nanoTime() - startTime) / tickNanos;
+      }
+      // the bucket of a tick is only expired once the tick is over, so nothing expires early
+      final long tickEnd = (tick + 1) * tickNanos;
+      for (long now = System.nanoTime() - startTime; now < tickEnd; ) {
+        LockSupport.parkNanos(this, tickEnd - now);
+        now = System.nanoTime() - startTime;
+      }
+      pending += transferScheduled(tick);
+      pending -= wheel[(int) (tick & mask)].expire(tick);
+      tick++;
+    }
+  }
+
+  /** Moves the newly scheduled timeouts into their buckets; returns how many were moved. */
+  private int transferScheduled(long tick) {
+    int transferred = 0;
+    for (Timeout timeout; (timeout = scheduled.poll()) != null; ) {
+      if (timeout.isCancelled()) {
+        continue;
+      }
+      final long expiryTick = Math.max(timeout.deadline / tickNanos, tick);
+      timeout.expiryTick = expiryTick;
+      wheel[(int) (expiryTick & mask)].add(timeout);
+      transferred++;
+    }
+    return transferred;
+  }
+
+  /** A task scheduled to run once a delay has elapsed. */
+  static final class Timeout extends AtomicInteger {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int PENDING = 0;
+
+    private static final int CANCELLED = 1;
+
+    private static final int EXPIRED = 2;
+
+    /** the task to run on expiry * */
+    private final Runnable task;
+
+    /** the time, in nanoseconds since the timer started, at which the task is due * */
+    private final long deadline;
+
+    /** the tick at which the task is due; only accessed by the worker thread * */
+    private long expiryTick;
+
+    /** the neighbours in the bucket; only accessed by the worker thread * */
+    private Timeout previous;
+
+    private Timeout next;
+
+    private Timeout(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Cancels this timeout unless it has already expired.
+     *
+     * @return <tt>true</tt> if the timeout was cancelled; <tt>false</tt> if its task has run, or
+     *     is running
+     */
+    boolean cancel() {
+      return compareAndSet(PENDING, CANCELLED);
+    }
+
+    boolean isCancelled() {
+      return get() == CANCELLED;
+    }
+  }
+
+  /** The timeouts due during one tick of each turn of the wheel; only used by the worker. */
+  private static final class Bucket {
+
+    private Timeout head;
+
+    void add(Timeout timeout) {
+      timeout.previous = null;
+      timeout.next = head;
+      if (head != null) {
+        head.previous = timeout;
+      }
+      head = timeout;
+    }
+
+    /** Runs the timeouts due at <tt>tick</tt>; returns how many timeouts left the bucket. */
+    int expire(long tick) {
+      int removed = 0;
+      for (Timeout timeout = head; timeout != null; ) {
+        final Timeout next = timeout.next;
+        if (timeout.isCancelled()) {
+          remove(timeout);
+          removed++;
+        } else if (timeout.expiryTick <= tick) {
+          remove(timeout);
+          removed++;
+          if (timeout.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+            try {
+              timeout.task.run();
+            } catch (RuntimeException | Error ignore) {
+              // a failing task must not stop the timer for everybody else
+            }
+          }
+        }
+        timeout = next;
+      }
+      return removed;
+    }
+
+    private void remove(Timeout timeout) {
+      if (timeout.previous != null) {
+        timeout.previous.next = timeout.next;
+      } else {
+        head = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.previous = timeout.previous;
+      }
+      timeout.previous = null;
+      timeout.next = null;
+    }
+  }
+
+  /** Holds the shared timer, so that its thread only starts once it is first needed. */
+  private static final class Shared {
+
+    private static final HashedWheelTimer TIMER =
+        new HashedWheelTimer("circuit-breaker-timer", DEFAULT_TICK_NANOS, DEFAULT_WHEEL_SIZE);
+  }
+}
@@ -0,0 +1,325 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A task that hedges calls to an idempotent task against tail latency: if an attempt has not
+ * completed within a percentile of recently observed latencies, a second attempt is launched and
+ * whichever succeeds first wins.
+ *
+ * <pre>
+ *   Callable&lt;Quote&gt; hedged = HedgedTask.create(readQuote, pool, 95, 0.05);
+ *   CircuitBreakerExecutor&lt;Quote&gt; executor =
+ *       CircuitBreakerExecutor.create("READ_QUOTE", hedged, config);
+ * </pre>
+ *
+ * <p>Executed by a <tt>CircuitBreakerExecutor</tt>, both attempts of a call take one permission
+ * and record one outcome with the breaker: the logical call passes if either attempt succeeded
+ * and fails, with the exception of the first attempt to fail, if both failed. Once calls can be
+ * hedged, both attempts run on the supplied <tt>Executor</tt> and the calling thread only waits
+ * for the first result, so a hedge that wins is returned at once even if the first attempt is
+ * blocked in I/O that ignores interrupts. The hedge is launched from the shared {@link
+ * HashedWheelTimer} once the hedge delay has elapsed, up to a tick late. Once the call completes,
+ * the attempt still running is cancelled, with an interrupt. If the calling thread is interrupted
+ * while it waits, e.g. by a call timeout, the call fails and both attempts are cancelled. Calls
+ * made before enough latencies have been recorded cannot be hedged, and run on the calling thread.
+ *
+ * <p>The hedge delay is the <tt>percentile</tt> of the latencies of the attempts that succeeded
+ * over the last one to two minutes, estimated by a {@link LatencyHistogram} to within 25%, and
+ * refreshed at most once a second. No call is hedged until 100 latencies have been recorded.
+ *
+ * <p>Hedges are capped by a {@link TokenBucket}: every call deposits <tt>hedgeRatio</tt> of a
+ * token and every hedge withdraws one, so over time at most that fraction of calls is hedged,
+ * plus a burst of ten. The cap matters most when the backend slows down as a whole: every call
+ * then exceeds the hedge delay, and hedging them all would double the load.
+ *
+ * @author anoopr
+ */
+public final class HedgedTask<T> implements Callable<T> {
+
+  /** the number of recent latencies below which no call is hedged * */
+  private static final long MINIMUM_NUMBER_OF_LATENCIES = 100;
+
+  /** the time, in nanoseconds, a generation of the latency histogram lasts * */
+  private static final long GENERATION_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  /** the time, in nanoseconds, between refreshes of the hedge delay * */
+  private static final long REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /** the number of hedges the cap allows in a burst * */
+  private static final int MAX_BURST = 10;
+
+  /** the idempotent task to hedge * */
+  private final Callable<T> task;
+
+  /** runs the attempts * */
+  private final Executor executor;
+
+  /** the percentile of recent latencies after which an attempt is hedged * */
+  private final double percentile;
+
+  /** the monotonic clock, in nanoseconds, used to time the attempts * */
+  private final LongSupplier clock;
+
+  /** the latencies of recent attempts that succeeded * */
+  private final LatencyHistogram latencies;
+
+  /** caps the hedges at a fraction of the calls * */
+  private final TokenBucket budget;
+
+  /** the number of hedges launched * */
+  private final LongAdder hedges = new LongAdder();
+
+  /** the number of hedges not launched because the cap did not allow them * */
+  private final LongAdder budgetExhausted = new LongAdder();
+
+  /** the time, in nanoseconds, after which an attempt is hedged * */
+  private volatile long hedgeDelayNanos = Long.MAX_VALUE;
+
+  /** the clock reading after which the hedge delay is refreshed * */
+  private volatile long refreshAt;
+
+  HedgedTask(
+      Callable<T> task,
+      Executor executor,
+      double percentile,
+      double hedgeRatio,
+      LongSupplier clock) {
+    this.task = Objects.requireNonNull(task);
+    this.executor = Objects.requireNonNull(executor);
+    if (!(percentile > 0 && percentile < 100)) {
+      throw new IllegalArgumentException("Percentile must be in (0, 100)");
+    }
+    if (!(hedgeRatio >= TokenBucket.MIN_RATIO && hedgeRatio <= 1)) {
+      throw new IllegalArgumentException("Hedge ratio must be in [0.000001, 1]");
+    }
+    this.percentile = percentile;
+    this.clock = clock;
+    this.latencies = new LatencyHistogram(GENERATION_NANOS, clock);
+    this.budget = new TokenBucket(hedgeRatio, MAX_BURST);
+    this.refreshAt = clock.getAsLong();
+  }
+
+  /**
+   * Returns a <tt>HedgedTask</tt> instance with the supplied values.
+   *
+   * @param task the idempotent task to hedge
+   * @param executor runs the attempts, up to two per call in flight; it is called from the shared
+   *     timer thread to launch hedges, so it should hand them over to another thread without
+   *     queueing them behind other work
+   * @param percentile the percentile of recent latencies after which an attempt is hedged, e.g.
+   *     <tt>95</tt>
+   * @param hedgeRatio the largest fraction of calls that are hedged over time, e.g. <tt>0.05</tt>
+   * @return a <tt>HedgedTask</tt> instance with the supplied values
+   * @throws NullPointerException if the <tt>task</tt> or <tt>executor</tt> is <tt>null</tt>
+   * @throws IllegalArgumentException if the <tt>percentile</tt> is not in <tt>(0, 100)</tt> or the
+   *     <tt>hedgeRatio</tt> is not in <tt>[0.000001, 1]</tt>
+   */
+  public static <T> HedgedTask<T> create(
+      Callable<T> task, Executor executor, double percentile, double hedgeRatio) {
+    return new HedgedTask<>(task, executor, percentile, hedgeRatio, System::nanoTime);
+  }
+
+  /**
+   * Calls the task, hedging the call if it has not completed within the hedge delay.
+   *
+   * @return the result of the first attempt to succeed
+   * @throws Exception the exception of the first attempt to fail, if every attempt failed
+   * @throws InterruptedException if the calling thread is interrupted while it waits
+   */
+  @Override
+  public T call() throws Exception {
+    final long delay = hedgeDelayNanos();
+    budget.deposit();
+    if (delay == Long.MAX_VALUE) {
+      final long startedAt = clock.getAsLong();
+      final T result = task.call();
+      latencies.record(clock.getAsLong() - startedAt);
+      return result;
+    }
+    final Race race = new Race();
+    executor.execute(race.launchFirst());
+    final HashedWheelTimer.Timeout timeout =
+        HashedWheelTimer.shared().schedule(() -> tryHedge(race), delay);
+    try {
+      return race.await();
+    } finally {
+      timeout.cancel();
+      race.cancelAttempts();
+    }
+  }
+
+  /**
+   * Returns the number of hedges launched.
+   *
+   * @return the number of hedges launched
+   */
+  public long getHedgeCount() {
+    return hedges.sum();
+  }
+
+  /**
+   * Returns the number of attempts not hedged because the cap on hedges was reached.
+   *
+   * @return the number of hedges not launched for want of budget
+   */
+  public long getBudgetExhaustedCount() {
+    return budgetExhausted.sum();
+  }
+
+  /**
+   * Returns the time after which an attempt is currently hedged.
+   *
+   * @return the time after which an attempt is currently hedged, or <tt>empty</tt> if too few
+   *     latencies have been recorded recently
+   */
+  public Optional<Duration> getHedgeDelay() {
+    final long delay = hedgeDelayNanos();
+    return delay == Long.MAX_VALUE ? Optional.empty() : Optional.of(Duration.ofNanos(delay));
+  }
+
+  /**
+   * Launches a second attempt of the race, unless it is over or the cap does not allow one; runs on
+   * the timer thread, so whatever the executor throws is the failure of the hedge.
+   */
+  private void tryHedge(Race race) {
+    if (!race.tryEnter()) {
+      return;
+    }
+    if (!budget.tryWithdraw()) {
+      budgetExhausted.increment();
+      race.fail(null);
+      return;
+    }
+    final FutureTask<Void> hedge = race.attempt();
+    // counted before it runs, so that the count includes it once the call has returned
+    hedges.increment();
+    try {
+      executor.execute(hedge);
+    } catch (Throwable t) {
+      hedges.decrement();
+      race.fail(t);
+      return;
+    }
+    race.launched(hedge);
+  }
+
+  /** Returns the hedge delay, refreshing it from the histogram if it is due. */
+  private long hedgeDelayNanos() {
+    final long now = clock.getAsLong();
+    if (now - refreshAt >= 0) {
+      refreshAt = now + REFRESH_INTERVAL_NANOS;
+      hedgeDelayNanos = latencies.percentile(percentile, MINIMUM_NUMBER_OF_LATENCIES);
+    }
+    return hedgeDelayNanos;
+  }
+
+  /** The attempts of one call, racing to complete it. */
+  private final class Race {
+
+    /** completed by the first attempt to succeed, or once every attempt has failed * */
+    private final CompletableFuture<T> outcome = new CompletableFuture<>();
+
+    /** the number of attempts that have not failed yet * */
+    private final AtomicInteger running = new AtomicInteger(1);
+
+    /** the exception of the first attempt to fail * */
+    private volatile Throwable failure;
+
+    /** the first attempt * */
+    private volatile FutureTask<Void> first;
+
+    /** the hedge, once launched * */
+    private volatile FutureTask<Void> hedge;
+
+    /** set once the call has completed, so that a hedge launched late is cancelled * */
+    private volatile boolean over;
+
+    /** Returns the first attempt, to be handed to the executor. */
+    private FutureTask<Void> launchFirst() {
+      first = attempt();
+      return first;
+    }
+
+    /** Returns a new attempt; the caller must have entered it in the race. */
+    private FutureTask<Void> attempt() {
+      return new FutureTask<>(
+          () -> {
+            final long startedAt = clock.getAsLong();
+            try {
+              final T result = task.call();
+              latencies.record(clock.getAsLong() - startedAt);
+              outcome.complete(result);
+            } catch (Exception | Error e) {
+              fail(e);
+            }
+            return null;
+          });
+    }
+
+    /** Records the hedge as launched, cancelling it if the call has completed meanwhile. */
+    private void launched(FutureTask<Void> hedge) {
+      this.hedge = hedge;
+      if (over) {
+        hedge.cancel(true);
+      }
+    }
+
+    /** Cancels the attempts still running, or not yet started; the call has completed. */
+    private void cancelAttempts() {
+      over = true;
+      first.cancel(true);
+      final FutureTask<Void> launched = hedge;
+      if (launched != null) {
+        launched.cancel(true);
+      }
+    }
+
+    /** Enters another attempt, unless the race is over; returns <tt>false</tt> if it is. */
+    private boolean tryEnter() {
+      for (; ; ) {
+        final int current = running.get();
+        if (current == 0 || outcome.isDone()) {
+          return false;
+        }
+        if (running.compareAndSet(current, current + 1)) {
+          return true;
+        }
+      }
+    }
+
+    /** Records a failed attempt, or an entered one that was never launched if <tt>null</tt>. */
+    private void fail(Throwable e) {
+      if (failure == null && e != null) {
+        failure = e;
+      }
+      if (running.decrementAndGet() == 0) {
+        outcome.completeExceptionally(failure);
+      }
+    }
+
+    /** Waits for the outcome, unwrapping the failure of the attempts. */
+    private T await() throws Exception {
+      try {
+        return outcome.get();
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof Exception) {
+          throw (Exception) cause;
+        }
+        throw (Error) cause;
+      }
+    }
+  }
+}
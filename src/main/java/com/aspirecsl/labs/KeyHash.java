@@ -0,0 +1,35 @@
+package com.aspirecsl.labs;
+
+/**
+ * Hashes the keys of the keyed executors to 64 bits.
+ *
+ * @author anoopr
+ */
+final class KeyHash {
+
+  private KeyHash() {}
+
+  /**
+   * Returns the hash of a <tt>long</tt> key: a bijective mix of its bits, so distinct keys have
+   * distinct hashes, and zero hashes to zero.
+   */
+  static long of(long key) {
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /** Returns the hash of a <tt>CharSequence</tt> key: its 64-bit FNV-1a hash, mixed. */
+  static long of(CharSequence key) {
+    long h = 0xCBF29CE484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      h ^= key.charAt(i);
+      h *= 0x100000001B3L;
+    }
+    return of(h);
+  }
+}
@@ -0,0 +1,511 @@
+package com.aspirecsl.labs;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Provides a separate <tt>circuit breaker</tt> for each of a very large number of keys, e.g. one
+ * per customer or per shard, without an object per key.
+ *
+ * <p>The breakers live in a single open addressing table of <tt>long</tt>s: each slot is a pair of
+ * the key's 64-bit fingerprint and its {@link StateWord}, i.e. 16 bytes, and its state is updated
+ * with compare-and-set like the state of a {@link CircuitBreaker}. The table is allocated up front
+ * and never resized, so the breakers produce no garbage and add nothing for the collector to trace.
+ * A key held takes its 16 bytes; open addressing needs spare slots on top, so the table has a third
+ * more slots than its capacity, i.e. takes 21&#8531; bytes per key of capacity, as fuller tables
+ * make the probe sequences of keys that are not held, i.e. of every healthy call, much longer.
+ *
+ * <p>A key only takes a slot when one of its calls fails with an erroneous exception, and gives it
+ * back as soon as its breaker is <tt>CLOSED</tt> again with no errors counted; keys in that state
+ * are <tt>CLOSED</tt> without being stored. The capacity therefore bounds the number of keys that
+ * are failing, or recovering, at the same time. Once it is reached, keys without a slot are not
+ * tracked and their calls are always permitted: the table fails open rather than rejecting calls it
+ * knows nothing about. A key also fails open if none of the {@value #MAX_PROBES} slots from its
+ * home slot is free, which is rare below capacity.
+ *
+ * <p>Slots are claimed and given back with compare-and-set, without locks. A key claims a free slot
+ * by swapping its fingerprint into it, and a slot is given back by marking its state word before
+ * swapping a tombstone in for the fingerprint, so no call records its outcome on a slot while it
+ * changes hands. Two threads claiming a slot for the same key at once may each claim one; each then
+ * looks for the other, and the slot later in the probe sequence is given back.
+ *
+ * <p>Each breaker trips on <em>error tolerance factor</em> consecutive errors and recovers through
+ * <tt>HALF_OPEN</tt> probes as configured; sliding windows, slow call detection, timeouts and
+ * bulkheads are not supported per key and are ignored. Keys are identified by their fingerprint
+ * alone: distinct <tt>long</tt> keys never share a breaker, except for the two keys whose hashes
+ * are reserved to mark free slots and which share one with another key each, while a
+ * <tt>CharSequence</tt> key shares one with another of <tt>n</tt> keys with a probability of about
+ * <tt>n / 2<sup>64</sup></tt>.
+ *
+ * @author anoopr
+ */
+public final class KeyedCircuitBreakerExecutor {
+
+  /** the fingerprint marking an empty slot * */
+  private static final long EMPTY = 0L;
+
+  /** the fingerprint marking a slot given back in the middle of a probe sequence * */
+  private static final long TOMBSTONE = -1L;
+
+  /** the fingerprint used in place of {@link #EMPTY} for the key that hashes to it * */
+  private static final long ZERO_FINGERPRINT = 0x9E3779B97F4A7C15L;
+
+  /** the fingerprint used in place of {@link #TOMBSTONE} for the key that hashes to it * */
+  private static final long TOMBSTONE_FINGERPRINT = 0xC2B2AE3D27D4EB4FL;
+
+  /**
+   * the state word of a slot while it is given back, or claimed over a slot still being given back;
+   * it holds no valid state, and is also returned for a key that holds no slot
+   */
+  private static final long RELEASED = -1L;
+
+  /** the number of slots, from its home slot on, a key may take * */
+  static final int MAX_PROBES = 32;
+
+  /** the label or description corresponding to the keyed tasks * */
+  private final String name;
+
+  /** the maximum number of errors that will <em>trip</em> the breaker of a key * */
+  private final int errorToleranceFactor;
+
+  /** the time, in milliseconds, a breaker stays <tt>OPEN</tt> before probing the task * */
+  private final long waitDurationInOpenStateMillis;
+
+  /** the number of probe calls let through in the <tt>HALF_OPEN</tt> state * */
+  private final int permittedCallsInHalfOpenState;
+
+  /** the monotonic clock, in nanoseconds, used to measure the time spent <tt>OPEN</tt> * */
+  private final LongSupplier clock;
+
+  /** the clock reading at which this executor was created * */
+  private final long epoch;
+
+  /** decides whether an exception thrown by a task deems it erroneous * */
+  private final ExceptionClassifier exceptionClassifier;
+
+  /** the exception thrown, every time, when a call is rejected * */
+  private final CallNotPermittedException callNotPermitted;
+
+  /** the maximum number of keys held * */
+  private final int capacity;
+
+  /** the number of slots a key can start probing at * */
+  private final long homes;
+
+  /** the slots, as pairs of a fingerprint and a state word * */
+  private final AtomicLongArray table;
+
+  /** the number of keys held * */
+  private final AtomicInteger size = new AtomicInteger();
+
+  private KeyedCircuitBreakerExecutor(String name, int capacity, CircuitBreakerConfig config) {
+    this.name = name;
+    this.errorToleranceFactor = config.getErrorToleranceFactor();
+    this.waitDurationInOpenStateMillis =
+        TimeUnit.NANOSECONDS.toMillis(config.waitDurationInOpenStateNanos() + 999_999);
+    this.permittedCallsInHalfOpenState = config.getPermittedCallsInHalfOpenState();
+    this.clock = config.clock();
+    this.epoch = clock.getAsLong();
+    this.exceptionClassifier = config.exceptionClassifier();
+    this.callNotPermitted = new CallNotPermittedException(name);
+    this.capacity = capacity;
+    // keep the table at most three quarters full so that probe sequences stay short; the probe
+    // sequences of the last homes run on into extra slots rather than wrap around
+    this.homes = capacity * 4L / 3 + 1;
+    this.table = new AtomicLongArray((int) (homes + MAX_PROBES - 1) * 2);
+  }
+
+  /**
+   * Returns a <tt>KeyedCircuitBreakerExecutor</tt> instance with the supplied values.
+   *
+   * <p>The table takes 16 bytes per slot, with 4/3 slots per key of capacity; e.g. a capacity of
+   * three million keys allocates a 61 MiB table, i.e. 21&#8531; bytes per key.
+   *
+   * @param name the label or description corresponding to the keyed tasks
+   * @param capacity the maximum number of keys to hold the breaker of
+   * @param config the settings that govern how the breaker of each key trips and recovers
+   * @return a <tt>KeyedCircuitBreakerExecutor</tt> instance with the supplied values
+   * @throws NullPointerException if the <tt>name</tt> or <tt>config</tt> is <tt>null</tt>
+   * @throws IllegalArgumentException if the <tt>name</tt> is empty or the <tt>capacity</tt> is not
+   *     in <tt>[1, 2<sup>28</sup>]</tt>
+   */
+  public static KeyedCircuitBreakerExecutor create(
+      String name, int capacity, CircuitBreakerConfig config) {
+    Objects.requireNonNull(name);
+    Objects.requireNonNull(config);
+    if (name.trim().isEmpty()) {
+      throw new IllegalArgumentException("name cannot be empty");
+    }
+    if (capacity < 1 || capacity > 1 << 28) {
+      throw new IllegalArgumentException("Capacity must be in [1, 2^28]");
+    }
+    return new KeyedCircuitBreakerExecutor(name, capacity, config);
+  }
+
+  /**
+   * Executes the <tt>task</tt> under the breaker of the supplied key.
+   *
+   * @param key the key whose breaker the <tt>task</tt> is executed under
+   * @param task the complex and/or time consuming task to execute
+   * @return the result obtained by executing the <tt>task</tt>
+   * @throws Exception if the <tt>task</tt> throws an exception
+   * @throws CallNotPermittedException if the breaker of the key is <tt>OPEN</tt>, or is
+   *     <tt>HALF_OPEN</tt> and has already let all the permitted probe calls through
+   */
+  public <T> T execute(long key, Callable<T> task) throws Exception {
+    return executeFingerprinted(fingerprint(KeyHash.of(key)), task);
+  }
+
+  /**
+   * Executes the <tt>task</tt> under the breaker of the supplied key.
+   *
+   * @param key the key whose breaker the <tt>task</tt> is executed under
+   * @param task the complex and/or time consuming task to execute
+   * @return the result obtained by executing the <tt>task</tt>
+   * @throws Exception if the <tt>task</tt> throws an exception
+   * @throws CallNotPermittedException if the breaker of the key is <tt>OPEN</tt>, or is
+   *     <tt>HALF_OPEN</tt> and has already let all the permitted probe calls through
+   */
+  public <T> T execute(CharSequence key, Callable<T> task) throws Exception {
+    return executeFingerprinted(fingerprint(KeyHash.of(key)), task);
+  }
+
+  /**
+   * Returns the current state of the breaker of the supplied key.
+   *
+   * @param key the key whose breaker to return the state of
+   * @return the current state of the breaker of the supplied key
+   */
+  public CircuitState getState(long key) {
+    return stateOf(fingerprint(KeyHash.of(key)));
+  }
+
+  /**
+   * Returns the current state of the breaker of the supplied key.
+   *
+   * @param key the key whose breaker to return the state of
+   * @return the current state of the breaker of the supplied key
+   */
+  public CircuitState getState(CharSequence key) {
+    return stateOf(fingerprint(KeyHash.of(key)));
+  }
+
+  /**
+   * Returns the number of keys held, i.e. of keys whose breaker is <tt>OPEN</tt>,
+   * <tt>HALF_OPEN</tt>, or <tt>CLOSED</tt> with errors counted.
+   *
+   * @return the number of keys held
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * Returns <tt>true</tt> if the table holds as many keys as it can; until some of them recover,
+   * keys without a slot are not tracked and their calls are always permitted.
+   *
+   * @return <tt>true</tt> if the table holds as many keys as it can
+   */
+  public boolean isSaturated() {
+    return size.get() == capacity;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  private <T> T executeFingerprinted(long fingerprint, Callable<T> task) throws Exception {
+    final int slot = find(fingerprint);
+    if (slot >= 0 && !tryAcquirePermission(slot, fingerprint)) {
+      throw callNotPermitted;
+    }
+    final T result;
+    try {
+      result = task.call();
+    } catch (Throwable t) {
+      if (exceptionClassifier.isErroneous(t)) {
+        onError(slot, fingerprint);
+      } else if (slot >= 0) {
+        onIgnoredError(slot, fingerprint);
+      }
+      throw t;
+    }
+    if (slot >= 0) {
+      onPass(slot, fingerprint);
+    }
+    return result;
+  }
+
+  private CircuitState stateOf(long fingerprint) {
+    final int slot = find(fingerprint);
+    final long word = slot < 0 ? RELEASED : word(slot, fingerprint);
+    return word == RELEASED ? CircuitState.CLOSED : StateWord.state(word);
+  }
+
+  /**
+   * Returns the index of the state word of the supplied fingerprint, or <tt>-1</tt> if it has no
+   * slot.
+   */
+  private int find(long fingerprint) {
+    final int home = home(fingerprint);
+    for (int i = home; i < home + MAX_PROBES; i++) {
+      final long current = table.get(i * 2);
+      if (current == fingerprint) {
+        return i * 2 + 1;
+      }
+      if (current == EMPTY) {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the state word at the supplied index, or {@link #RELEASED} if the slot is no longer
+   * held by the supplied fingerprint, i.e. was given back since the fingerprint was looked up.
+   */
+  private long word(int slot, long fingerprint) {
+    // a slot is given back by marking its state word before its fingerprint, and claimed by writing
+    // the fingerprint over a fresh state word, so reading them in the opposite order never pairs
+    // the fingerprint with the state word of another key; only a slot given back and claimed again
+    // between this read and the compare-and-set that follows it can still take the outcome of a
+    // call of the key that held it
+    final long word = table.get(slot);
+    return table.get(slot - 1) == fingerprint ? word : RELEASED;
+  }
+
+  /**
+   * Returns the index of the state word of the supplied fingerprint, claiming a slot for it if it
+   * has none, or <tt>-1</tt> if it has none and the table is at capacity or has no free slot in its
+   * probe sequence.
+   */
+  private int claim(long fingerprint) {
+    final int home = home(fingerprint);
+    for (; ; ) {
+      int free = -1;
+      long freeFingerprint = EMPTY;
+      boolean busy = false;
+      for (int i = home; i < home + MAX_PROBES; i++) {
+        final long current = table.get(i * 2);
+        if (current == fingerprint) {
+          if (table.get(i * 2 + 1) != RELEASED) {
+            return i * 2 + 1;
+          }
+          // changing hands: wait for the thread moving it, which is one write away from done
+          busy = true;
+          break;
+        }
+        if (current == TOMBSTONE && free < 0) {
+          free = i;
+          freeFingerprint = TOMBSTONE;
+        }
+        if (current == EMPTY) {
+          if (free < 0) {
+            free = i;
+          }
+          break;
+        }
+      }
+      if (busy) {
+        Thread.yield();
+        continue;
+      }
+      if (free < 0 || !reserve()) {
+        return -1;
+      }
+      if (!table.compareAndSet(free * 2, freeFingerprint, fingerprint)) {
+        size.decrementAndGet();
+        continue;
+      }
+      // a tombstone may still carry the mark of the key that gave it back
+      table.compareAndSet(free * 2 + 1, RELEASED, StateWord.CLOSED);
+      return dedupe(fingerprint, home, free);
+    }
+  }
+
+  /** Takes one of the keys the table can hold; returns <tt>false</tt> if it is at capacity. */
+  private boolean reserve() {
+    for (; ; ) {
+      final int current = size.get();
+      if (current == capacity) {
+        return false;
+      }
+      if (size.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Gives back every other slot claimed for the supplied fingerprint by a thread racing the one
+   * that claimed <tt>claimed</tt>, keeping the first in the probe sequence; returns the index of
+   * the state word of the slot kept.
+   */
+  private int dedupe(long fingerprint, int home, int claimed) {
+    for (int i = home; i < home + MAX_PROBES; i++) {
+      final long current = table.get(i * 2);
+      if (current == EMPTY) {
+        break;
+      }
+      if (i == claimed || current != fingerprint) {
+        continue;
+      }
+      if (i < claimed) {
+        release(claimed * 2 + 1, fingerprint, false);
+        return i * 2 + 1;
+      }
+      release(i * 2 + 1, fingerprint, false);
+    }
+    return claimed * 2 + 1;
+  }
+
+  /**
+   * Gives back the slot of the supplied fingerprint, if it still holds it and, when
+   * <tt>onlyIfClosed</tt>, its breaker is still <tt>CLOSED</tt> with no errors counted.
+   */
+  private void release(int slot, long fingerprint, boolean onlyIfClosed) {
+    for (; ; ) {
+      final long word = word(slot, fingerprint);
+      if (word == RELEASED || (onlyIfClosed && word != StateWord.CLOSED)) {
+        return;
+      }
+      if (table.compareAndSet(slot, word, RELEASED)) {
+        break;
+      }
+    }
+    // the mark keeps every other thread off the slot until it is free again
+    table.set(slot - 1, TOMBSTONE);
+    table.compareAndSet(slot, RELEASED, StateWord.CLOSED);
+    size.decrementAndGet();
+  }
+
+  /** Returns <tt>true</tt> if the key of the supplied state word may be executed now. */
+  private boolean tryAcquirePermission(int slot, long fingerprint) {
+    for (; ; ) {
+      final long word = word(slot, fingerprint);
+      if (word == RELEASED) {
+        return true;
+      }
+      switch (StateWord.state(word)) {
+        case CLOSED:
+          return true;
+        case OPEN:
+          if (now() - StateWord.stamp(word) < waitDurationInOpenStateMillis) {
+            return false;
+          }
+          if (table.compareAndSet(slot, word, StateWord.halfOpen(1, 0))) {
+            return true;
+          }
+          break;
+        default:
+          if (StateWord.count(word) >= permittedCallsInHalfOpenState) {
+            return false;
+          }
+          if (table.compareAndSet(slot, word, word + StateWord.COUNT_UNIT)) {
+            return true;
+          }
+          break;
+      }
+    }
+  }
+
+  /**
+   * Records a call that passed, or failed with an exception not deemed as erroneous, giving back
+   * the slot once the breaker is <tt>CLOSED</tt> with no errors counted.
+   */
+  private void onPass(int slot, long fingerprint) {
+    for (; ; ) {
+      final long word = word(slot, fingerprint);
+      final long next;
+      if (word == RELEASED) {
+        return;
+      }
+      switch (StateWord.state(word)) {
+        case CLOSED:
+          next = StateWord.CLOSED;
+          break;
+        case HALF_OPEN:
+          next =
+              StateWord.stamp(word) + 1 >= permittedCallsInHalfOpenState
+                  ? StateWord.CLOSED
+                  : word + 1;
+          break;
+        default:
+          return;
+      }
+      if (word == next || table.compareAndSet(slot, word, next)) {
+        if (next == StateWord.CLOSED) {
+          release(slot, fingerprint, true);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Records a call that failed with an exception deemed as erroneous, claiming a slot for the key
+   * if it has none.
+   */
+  private void onError(int slot, long fingerprint) {
+    for (; ; ) {
+      final long word = slot < 0 ? RELEASED : word(slot, fingerprint);
+      if (word == RELEASED) {
+        slot = claim(fingerprint);
+        if (slot < 0) {
+          return;
+        }
+        continue;
+      }
+      final long next;
+      switch (StateWord.state(word)) {
+        case CLOSED:
+          next =
+              StateWord.count(word) + 1 >= errorToleranceFactor
+                  ? StateWord.open(now())
+                  : word + StateWord.COUNT_UNIT;
+          break;
+        case HALF_OPEN:
+          next = StateWord.open(now());
+          break;
+        default:
+          return;
+      }
+      if (table.compareAndSet(slot, word, next)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Records a call that failed with an exception not deemed as erroneous: it leaves a
+   * <tt>CLOSED</tt> breaker untouched, but counts as a probe that answered when <tt>HALF_OPEN</tt>.
+   */
+  private void onIgnoredError(int slot, long fingerprint) {
+    final long word = word(slot, fingerprint);
+    if (word != RELEASED && StateWord.state(word) == CircuitState.HALF_OPEN) {
+      onPass(slot, fingerprint);
+    }
+  }
+
+  /** Returns the time, in milliseconds, elapsed since this executor was created. */
+  private long now() {
+    return TimeUnit.NANOSECONDS.toMillis(clock.getAsLong() - epoch);
+  }
+
+  /** Returns the slot the probe sequence of the supplied fingerprint starts at. */
+  private int home(long fingerprint) {
+    return (int) (((fingerprint >>> 32) * homes) >>> 32);
+  }
+
+  /** Returns the fingerprint of a key hash, i.e. the hash with the reserved values replaced. */
+  private static long fingerprint(long hash) {
+    if (hash == EMPTY) {
+      return ZERO_FINGERPRINT;
+    }
+    return hash == TOMBSTONE ? TOMBSTONE_FINGERPRINT : hash;
+  }
+}
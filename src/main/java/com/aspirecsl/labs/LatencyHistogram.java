@@ -0,0 +1,134 @@
+package com.aspirecsl.labs;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * A lock-free histogram of recent latencies, to estimate a percentile of them.
+ *
+ * <p>Latencies are counted in log-linear buckets: each power of two is split into four buckets, so
+ * a bucket's upper bound overstates any latency in it by at most 25%. Recording a latency is one
+ * atomic increment. Like the sketch of the {@link ApproximateKeyedCircuitBreakerExecutor} the
+ * counts decay by generations: latencies are counted in the current generation, a percentile is
+ * estimated over the current and the previous one, and every <em>generation duration</em> the
+ * previous generation is dropped. Latencies recorded concurrently with the clearing may be lost.
+ *
+ * @author anoopr
+ */
+final class LatencyHistogram {
+
+  /** the number of buckets per generation * */
+  private static final int BUCKETS = 248;
+
+  /** the time, in nanoseconds, a generation lasts * */
+  private final long generationNanos;
+
+  /** the monotonic clock, in nanoseconds, used to age the generations * */
+  private final LongSupplier clock;
+
+  /** the clock reading at which this histogram was created * */
+  private final long epoch;
+
+  /** the counts of both generations, the even one first and the odd one next * */
+  private final AtomicLongArray counts = new AtomicLongArray(2 * BUCKETS);
+
+  /** the number of generations since this histogram was created * */
+  private final AtomicLong generation = new AtomicLong();
+
+  LatencyHistogram(long generationNanos, LongSupplier clock) {
+    this.generationNanos = generationNanos;
+    this.clock = clock;
+    this.epoch = clock.getAsLong();
+  }
+
+  /**
+   * Records a latency.
+   *
+   * @param nanos the latency, in nanoseconds
+   */
+  void record(long nanos) {
+    counts.incrementAndGet(offset(currentGeneration()) + bucket(Math.max(0, nanos)));
+  }
+
+  /**
+   * Returns the estimated percentile of the recent latencies, rounded up to a bucket bound.
+   *
+   * @param percentile the percentile, in <tt>(0, 100)</tt>
+   * @param minimumCount the number of recent latencies below which no estimate is made
+   * @return the estimated percentile, in nanoseconds, or <tt>Long.MAX_VALUE</tt> if fewer than
+   *     <tt>minimumCount</tt> latencies were recorded recently
+   */
+  long percentile(double percentile, long minimumCount) {
+    currentGeneration();
+    final long[] merged = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      merged[i] = counts.get(i) + counts.get(BUCKETS + i);
+      total += merged[i];
+    }
+    if (total < minimumCount || total == 0) {
+      return Long.MAX_VALUE;
+    }
+    final long rank = (long) Math.ceil(percentile / 100 * total);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += merged[i];
+      if (seen >= rank) {
+        return upperBound(i);
+      }
+    }
+    return upperBound(BUCKETS - 1);
+  }
+
+  /** Returns the bucket of a latency: exact below eight, then four per power of two. */
+  static int bucket(long nanos) {
+    if (nanos < 8) {
+      return (int) nanos;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    final int quarter = (int) (nanos >>> (exponent - 2)) & 3;
+    return 8 + (exponent - 3) * 4 + quarter;
+  }
+
+  /** Returns the least latency above every latency of the supplied bucket. */
+  static long upperBound(int bucket) {
+    if (bucket == BUCKETS - 1) {
+      return Long.MAX_VALUE;
+    }
+    if (bucket < 8) {
+      return bucket + 1;
+    }
+    final int exponent = (bucket - 8) / 4 + 3;
+    final long quarter = (bucket - 8) % 4;
+    final long lower = (4 + quarter) << (exponent - 2);
+    return lower + (1L << (exponent - 2));
+  }
+
+  /**
+   * Returns the current generation, first clearing the generations that have expired since the
+   * last call if this thread is the first to notice.
+   */
+  private long currentGeneration() {
+    final long now = (clock.getAsLong() - epoch) / generationNanos;
+    final long last = generation.get();
+    if (now != last && generation.compareAndSet(last, now)) {
+      clear(offset(now));
+      if (now - last > 1) {
+        clear(offset(now + 1));
+      }
+    }
+    return now;
+  }
+
+  private void clear(int offset) {
+    for (int i = offset; i < offset + BUCKETS; i++) {
+      counts.lazySet(i, 0);
+    }
+  }
+
+  /** Returns the offset of the counts of the supplied generation. */
+  private static int offset(long generation) {
+    return (int) (generation & 1) * BUCKETS;
+  }
+}
@@ -0,0 +1,243 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the results of idempotent calls, by key, for a fixed time in front of a
+ * <tt>CircuitBreakerExecutor</tt>.
+ *
+ * <pre>
+ *   ResultCache&lt;String, Profile&gt; cache = ResultCache.create(10_000, Duration.ofSeconds(30));
+ *   ...
+ *   Profile profile = cache.get(userId, () -&gt; keyed.execute(userId, () -&gt; fetch(userId)));
+ * </pre>
+ *
+ * <p>Tasks take no arguments, so the key of a call is supplied by the caller along with the call
+ * to make on a miss, typically the <tt>execute()</tt> of an executor. A hit returns the cached
+ * value without making the call: the task is not executed and no outcome is recorded with the
+ * breaker, the bulkhead or an adaptive limit. Only values are cached; a call that throws is not.
+ *
+ * <p>Entries expire a <em>time to live</em> after they were loaded. Once the cache holds its
+ * maximum size, each new entry replaces one chosen by the <em>CLOCK</em> algorithm, which
+ * approximates least recently used eviction: entries are held in a ring swept by a hand, a hit
+ * marks its entry as referenced, and the hand evicts the first entry that is expired or was not
+ * referenced since the last sweep, clearing the marks it passes. Hits do not lock and only write
+ * the mark if it is not already set; loads take a lock to update the ring, once the call has
+ * returned. Concurrent misses of one key each make the call and the last to return wins.
+ *
+ * <p>Hits and misses are counted in <tt>LongAdder</tt>s and exposed as metrics.
+ *
+ * @author anoopr
+ */
+public final class ResultCache<K, V> {
+
+  /** the entries, by key * */
+  private final ConcurrentHashMap<K, Entry<K, V>> entries;
+
+  /** the ring of entries swept by the CLOCK hand; guarded by <tt>lock</tt> * */
+  private final Entry<?, ?>[] ring;
+
+  /** the time, in nanoseconds, after which an entry expires * */
+  private final long timeToLiveNanos;
+
+  /** the monotonic clock, in nanoseconds, used to expire entries * */
+  private final LongSupplier clock;
+
+  /** the number of calls served from the cache * */
+  private final LongAdder hits = new LongAdder();
+
+  /** the number of calls not served from the cache * */
+  private final LongAdder misses = new LongAdder();
+
+  /** guards the ring; a lock rather than a monitor, so as not to pin virtual threads * */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** the index of the next slot of the ring the CLOCK hand looks at; guarded by <tt>lock</tt> * */
+  private int hand;
+
+  /** the number of slots of the ring in use; guarded by <tt>lock</tt> * */
+  private int used;
+
+  ResultCache(int maximumSize, Duration timeToLive, LongSupplier clock) {
+    if (maximumSize < 1) {
+      throw new IllegalArgumentException("Maximum size must be >= 1");
+    }
+    Objects.requireNonNull(timeToLive);
+    if (timeToLive.isNegative() || timeToLive.isZero()) {
+      throw new IllegalArgumentException("Time to live must be > 0");
+    }
+    this.entries = new ConcurrentHashMap<>(maximumSize * 4 / 3 + 1);
+    this.ring = new Entry<?, ?>[maximumSize];
+    this.timeToLiveNanos = timeToLive.toNanos();
+    this.clock = Objects.requireNonNull(clock);
+  }
+
+  /**
+   * Returns a <tt>ResultCache</tt> instance with the supplied values.
+   *
+   * @param maximumSize the maximum number of entries held
+   * @param timeToLive the time after which an entry expires
+   * @return a <tt>ResultCache</tt> instance with the supplied values
+   * @throws NullPointerException if the <tt>timeToLive</tt> is <tt>null</tt>
+   * @throws IllegalArgumentException if the <tt>maximumSize</tt> is < 1 or the <tt>timeToLive</tt>
+   *     is not positive
+   */
+  public static <K, V> ResultCache<K, V> create(int maximumSize, Duration timeToLive) {
+    return new ResultCache<>(maximumSize, timeToLive, System::nanoTime);
+  }
+
+  /**
+   * Returns the cached value of the supplied key or, if there is none or it has expired, makes
+   * the supplied call and caches the value it returns.
+   *
+   * @param key the key of the call
+   * @param call the call to make on a miss, e.g. <tt>executor::execute</tt>
+   * @return the cached value of the supplied key, or the value returned by the call
+   * @throws Exception if the call is made and throws an exception; nothing is cached then
+   * @throws NullPointerException if the <tt>key</tt> is <tt>null</tt>, or the call is made and
+   *     returns <tt>null</tt>
+   */
+  public V get(K key, Callable<? extends V> call) throws Exception {
+    final long now = clock.getAsLong();
+    final Entry<K, V> entry = entries.get(key);
+    if (entry != null && now - entry.loadedAt < timeToLiveNanos) {
+      if (!entry.referenced) {
+        entry.referenced = true;
+      }
+      hits.increment();
+      return entry.value;
+    }
+    misses.increment();
+    final V value = Objects.requireNonNull(call.call(), "call returned null");
+    put(new Entry<>(key, value, clock.getAsLong()));
+    return value;
+  }
+
+  /**
+   * Returns the cached value of the supplied key or, if there is none or it has expired, executes
+   * the task of the supplied executor and caches the value it returns.
+   *
+   * @param key the key of the call
+   * @param executor the executor of the task to execute on a miss
+   * @return the cached value of the supplied key, or the value returned by the task
+   * @throws Exception if the task is executed and throws an exception, or the call is rejected
+   */
+  public V get(K key, CircuitBreakerExecutor<? extends V> executor) throws Exception {
+    return get(key, executor::execute);
+  }
+
+  /**
+   * Removes the cached value of the supplied key, if there is one.
+   *
+   * @param key the key whose cached value to remove
+   */
+  public void invalidate(K key) {
+    // the slot of the entry is reclaimed by the CLOCK hand, which skips entries no longer mapped
+    entries.remove(key);
+  }
+
+  /**
+   * Returns the number of calls served from this cache.
+   *
+   * @return the number of calls served from this cache
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * Returns the number of calls not served from this cache.
+   *
+   * @return the number of calls not served from this cache
+   */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * Returns the fraction of calls served from this cache.
+   *
+   * @return the fraction of calls served from this cache, or <tt>0</tt> if there were none
+   */
+  public double getHitRate() {
+    final long hitCount = hits.sum();
+    final long total = hitCount + misses.sum();
+    return total == 0 ? 0 : (double) hitCount / total;
+  }
+
+  /**
+   * Returns the number of entries held, including expired entries not yet evicted.
+   *
+   * @return the number of entries held
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /** Maps and places a newly loaded entry, in the slot of the entry it replaces if any. */
+  private void put(Entry<K, V> entry) {
+    lock.lock();
+    try {
+      final Entry<K, V> replaced = entries.put(entry.key, entry);
+      if (replaced != null && ring[replaced.slot] == replaced) {
+        entry.slot = replaced.slot;
+      } else if (used < ring.length) {
+        entry.slot = used++;
+      } else {
+        entry.slot = evict();
+      }
+      ring[entry.slot] = entry;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Sweeps the CLOCK hand to a slot whose entry may be replaced, unmapping the entry there. */
+  @SuppressWarnings("unchecked")
+  private int evict() {
+    final long now = clock.getAsLong();
+    for (; ; ) {
+      final int slot = hand;
+      hand = (hand + 1) % ring.length;
+      final Entry<K, V> candidate = (Entry<K, V>) ring[slot];
+      if (entries.get(candidate.key) != candidate) {
+        return slot;
+      }
+      if (candidate.referenced && now - candidate.loadedAt < timeToLiveNanos) {
+        candidate.referenced = false;
+        continue;
+      }
+      entries.remove(candidate.key, candidate);
+      return slot;
+    }
+  }
+
+  /** A cached value, its key and where it sits in the ring. */
+  private static final class Entry<K, V> {
+
+    private final K key;
+
+    private final V value;
+
+    /** the clock reading at which the value was loaded * */
+    private final long loadedAt;
+
+    /** <tt>true</tt> if the entry was hit since the CLOCK hand last passed it * */
+    private volatile boolean referenced;
+
+    /** the slot of the ring holding the entry; guarded by the cache * */
+    private int slot;
+
+    private Entry(K key, V value, long loadedAt) {
+      this.key = key;
+      this.value = value;
+      this.loadedAt = loadedAt;
+    }
+  }
+}
@@ -0,0 +1,318 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Retries failed calls, typically the <tt>execute()</tt> of a <tt>CircuitBreakerExecutor</tt>,
+ * with exponential backoff and jitter, within a retry budget.
+ *
+ * <pre>
+ *   Retry retry = Retry.builder().maxAttempts(3).retryBudget(0.1, 10).build();
+ *   ...
+ *   Quote quote = retry.execute(circuitBreakerExecutor);
+ * </pre>
+ *
+ * <p>A call is retried if it failed with an exception deemed retryable, by default any
+ * <tt>RuntimeException</tt>, and has been made fewer than <em>max attempts</em> times. It is never
+ * retried if it was rejected with a {@link CallNotPermittedException} or a {@link
+ * BulkheadFullException}, nor, when retrying an executor, if the failure left its breaker
+ * <tt>OPEN</tt>: the failure is then thrown as is. Before the <tt>n</tt>th retry the calling thread
+ * sleeps for a random time between zero and <tt>initialBackoff * 2<sup>n - 1</sup></tt>, capped at
+ * the <tt>maxBackoff</tt> ("full jitter"), so that callers that failed together do not retry
+ * together.
+ *
+ * <p><b>Retry budget.</b> Retries are paid for from a token bucket shared by every call made
+ * through this instance; share one instance across the callers of a backend to budget them
+ * together. Each successful call deposits <em>budget ratio</em> of a token, up to <em>max
+ * tokens</em>, and each retry withdraws a whole token; a failed call is not retried while the
+ * bucket holds less than a token. So in the long run retries are at most the budget ratio of
+ * successful calls, plus a burst of max tokens, however long an outage lasts.
+ *
+ * @author anoopr
+ */
+public final class Retry {
+
+  /** the default number of times a call is made, including the first * */
+  public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+  /** the default ceiling of the time slept before the first retry * */
+  public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(100);
+
+  /** the default ceiling of the time slept before any retry * */
+  public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(10);
+
+  /** the default fraction of a token deposited by each successful call * */
+  public static final double DEFAULT_BUDGET_RATIO = 0.1;
+
+  /** the default number of tokens the retry budget holds at most * */
+  public static final int DEFAULT_MAX_TOKENS = 10;
+
+  /** the number of times a call is made, including the first * */
+  private final int maxAttempts;
+
+  /** the ceiling, in nanoseconds, of the time slept before the first retry * */
+  private final long initialBackoffNanos;
+
+  /** the ceiling, in nanoseconds, of the time slept before any retry * */
+  private final long maxBackoffNanos;
+
+  /** the classifier of exceptions against the <tt>retryOnExceptions</tt> * */
+  private final ExceptionClassifier exceptionClassifier;
+
+  /** sleeps the calling thread between attempts * */
+  private final Sleeper sleeper;
+
+  /** the retry budget; starts full * */
+  private final TokenBucket budget;
+
+  /** the number of retries made * */
+  private final LongAdder retries = new LongAdder();
+
+  /** the number of retries not made for want of budget * */
+  private final LongAdder budgetExhausted = new LongAdder();
+
+  private Retry(Builder builder) {
+    maxAttempts = builder.maxAttempts;
+    initialBackoffNanos = builder.initialBackoff.toNanos();
+    maxBackoffNanos = builder.maxBackoff.toNanos();
+    exceptionClassifier = new ExceptionClassifier(builder.retryOnExceptions);
+    sleeper = builder.sleeper;
+    budget = new TokenBucket(builder.budgetRatio, builder.maxTokens);
+  }
+
+  /**
+   * Returns a new <tt>Builder</tt> with the default settings.
+   *
+   * @return a new <tt>Builder</tt> with the default settings
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns a <tt>Retry</tt> instance with the default settings.
+   *
+   * @return a <tt>Retry</tt> instance with the default settings
+   */
+  public static Retry ofDefaults() {
+    return builder().build();
+  }
+
+  /**
+   * Executes the task of the supplied executor, retrying it if it fails with a retryable
+   * exception, the breaker is not <tt>OPEN</tt> and the budget allows.
+   *
+   * @param executor the executor of the task to execute
+   * @return the result obtained by executing the task
+   * @throws Exception the exception of the last attempt, if none succeeded
+   * @throws InterruptedException if the calling thread is interrupted while backing off
+   */
+  public <T> T execute(CircuitBreakerExecutor<T> executor) throws Exception {
+    return execute(executor::execute, executor);
+  }
+
+  /**
+   * Makes the supplied call, retrying it if it fails with a retryable exception and the budget
+   * allows.
+   *
+   * @param call the call to make
+   * @return the value returned by the call
+   * @throws Exception the exception of the last attempt, if none succeeded
+   * @throws InterruptedException if the calling thread is interrupted while backing off
+   */
+  public <T> T execute(Callable<T> call) throws Exception {
+    return execute(call, null);
+  }
+
+  /**
+   * Returns the number of retries made.
+   *
+   * @return the number of retries made
+   */
+  public long getRetryCount() {
+    return retries.sum();
+  }
+
+  /**
+   * Returns the number of failed calls not retried because the retry budget was exhausted.
+   *
+   * @return the number of retries not made for want of budget
+   */
+  public long getBudgetExhaustedCount() {
+    return budgetExhausted.sum();
+  }
+
+  /**
+   * Returns the number of whole retries the budget currently allows.
+   *
+   * @return the number of whole retries the budget currently allows
+   */
+  public long getAvailableRetries() {
+    return budget.tokens();
+  }
+
+  private <T> T execute(Callable<T> call, CircuitBreakerExecutor<T> executor) throws Exception {
+    for (int attempt = 1; ; attempt++) {
+      final T result;
+      try {
+        result = call.call();
+      } catch (CallNotPermittedException | BulkheadFullException e) {
+        throw e;
+      } catch (Exception e) {
+        if (attempt >= maxAttempts
+            || !exceptionClassifier.isErroneous(e)
+            || (executor != null && executor.getState() == CircuitState.OPEN)) {
+          throw e;
+        }
+        if (!budget.tryWithdraw()) {
+          budgetExhausted.increment();
+          throw e;
+        }
+        retries.increment();
+        sleeper.sleep(backoffNanos(attempt));
+        continue;
+      }
+      budget.deposit();
+      return result;
+    }
+  }
+
+  /** Returns a random time, in nanoseconds, to sleep before the retry after the given attempt. */
+  private long backoffNanos(int attempt) {
+    final int doublings = attempt - 1;
+    final long ceiling =
+        doublings >= Long.numberOfLeadingZeros(initialBackoffNanos) - 1
+            ? maxBackoffNanos
+            : Math.min(maxBackoffNanos, initialBackoffNanos << doublings);
+    return ceiling == 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  /** Sleeps the calling thread between attempts; replaced in tests. */
+  interface Sleeper {
+    void sleep(long nanos) throws InterruptedException;
+  }
+
+  /** Builds <tt>Retry</tt> instances. */
+  public static final class Builder {
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private Duration initialBackoff = DEFAULT_INITIAL_BACKOFF;
+
+    private Duration maxBackoff = DEFAULT_MAX_BACKOFF;
+
+    private double budgetRatio = DEFAULT_BUDGET_RATIO;
+
+    private int maxTokens = DEFAULT_MAX_TOKENS;
+
+    private List<Class<? extends Exception>> retryOnExceptions = Collections.emptyList();
+
+    private Sleeper sleeper = TimeUnit.NANOSECONDS::sleep;
+
+    private Builder() {}
+
+    /**
+     * Sets the number of times a call is made, including the first.
+     *
+     * @param maxAttempts the number of times a call is made, including the first
+     * @return this builder
+     * @throws IllegalArgumentException if the <tt>maxAttempts</tt> is < 1
+     */
+    public Builder maxAttempts(int maxAttempts) {
+      if (maxAttempts < 1) {
+        throw new IllegalArgumentException("Max attempts must be >= 1");
+      }
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * Sets the ceilings of the time slept before the first retry and before any retry; the
+     * ceiling doubles with every retry until it reaches the <tt>maxBackoff</tt>.
+     *
+     * @param initialBackoff the ceiling of the time slept before the first retry
+     * @param maxBackoff the ceiling of the time slept before any retry
+     * @return this builder
+     * @throws NullPointerException if the <tt>initialBackoff</tt> or <tt>maxBackoff</tt> is
+     *     <tt>null</tt>
+     * @throws IllegalArgumentException if the <tt>initialBackoff</tt> is negative or greater than
+     *     the <tt>maxBackoff</tt>
+     */
+    public Builder exponentialBackoff(Duration initialBackoff, Duration maxBackoff) {
+      Objects.requireNonNull(initialBackoff);
+      Objects.requireNonNull(maxBackoff);
+      if (initialBackoff.isNegative() || initialBackoff.compareTo(maxBackoff) > 0) {
+        throw new IllegalArgumentException("Initial backoff must be in [0, max backoff]");
+      }
+      this.initialBackoff = initialBackoff;
+      this.maxBackoff = maxBackoff;
+      return this;
+    }
+
+    /**
+     * Sets the retry budget: the fraction of a token deposited by each successful call and the
+     * number of tokens, i.e. retries, the budget holds at most.
+     *
+     * @param budgetRatio the fraction of a token deposited by each successful call, e.g.
+     *     <tt>0.1</tt> to allow one retry per ten successful calls
+     * @param maxTokens the number of tokens the budget holds at most, and starts with
+     * @return this builder
+     * @throws IllegalArgumentException if the <tt>budgetRatio</tt> is not in <tt>[0.000001,
+     *     1]</tt> or the <tt>maxTokens</tt> is < 1
+     */
+    public Builder retryBudget(double budgetRatio, int maxTokens) {
+      if (!(budgetRatio >= TokenBucket.MIN_RATIO && budgetRatio <= 1)) {
+        throw new IllegalArgumentException("Budget ratio must be in [0.000001, 1]");
+      }
+      if (maxTokens < 1) {
+        throw new IllegalArgumentException("Max tokens must be >= 1");
+      }
+      this.budgetRatio = budgetRatio;
+      this.maxTokens = maxTokens;
+      return this;
+    }
+
+    /**
+     * Sets the exceptions (including <em>checked</em>) which when thrown by a call will cause it
+     * to be retried, along with their subclasses. If <tt>empty</tt> then any
+     * <tt>RuntimeException</tt> will cause it to be retried.
+     *
+     * @param retryOnExceptions list of exceptions which when thrown by a call will cause it to be
+     *     retried
+     * @return this builder
+     * @throws NullPointerException if the <tt>retryOnExceptions</tt> is <tt>null</tt>
+     */
+    public Builder retryOnExceptions(List<Class<? extends Exception>> retryOnExceptions) {
+      this.retryOnExceptions =
+          Collections.unmodifiableList(new ArrayList<>(Objects.requireNonNull(retryOnExceptions)));
+      return this;
+    }
+
+    /**
+     * Sets what sleeps the calling thread between attempts.
+     *
+     * <p>Intended for tests; defaults to {@link TimeUnit#sleep(long)}.
+     */
+    Builder sleeper(Sleeper sleeper) {
+      this.sleeper = Objects.requireNonNull(sleeper);
+      return this;
+    }
+
+    /**
+     * Returns a <tt>Retry</tt> instance with the settings of this builder.
+     *
+     * @return a <tt>Retry</tt> instance with the settings of this builder
+     */
+    public Retry build() {
+      return new Retry(this);
+    }
+  }
+}
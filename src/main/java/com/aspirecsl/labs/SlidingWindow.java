@@ -0,0 +1,23 @@
+package com.aspirecsl.labs;
+
+/**
+ * Aggregates the outcomes of recent task executions so that a <tt>circuit breaker</tt> can trip on
+ * the <em>rate</em> of errors, or of slow calls, rather than on a run of consecutive errors.
+ *
+ * @author anoopr
+ */
+interface SlidingWindow {
+
+  /**
+   * Records the outcome of a task execution.
+   *
+   * @param error <tt>true</tt> if the execution failed with an exception deemed as erroneous
+   * @param slow <tt>true</tt> if the execution took longer than the slow call duration threshold
+   * @return <tt>true</tt> if, with this outcome, the window holds enough executions and either the
+   *     rate of errors or the rate of slow calls has reached its threshold
+   */
+  boolean record(boolean error, boolean slow);
+
+  /** Forgets every outcome recorded so far. */
+  void reset();
+}
@@ -0,0 +1,72 @@
+package com.aspirecsl.labs;
+
+/**
+ * Packs the state of a <tt>circuit breaker</tt> into a single <tt>long</tt> so that every
+ * transition is one compare-and-set.
+ *
+ * <p>The word is laid out as:
+ *
+ * <pre>
+ *   | 63..62 |  61..40  |             39..0              |
+ *   | state  |  count   |             stamp              |
+ * </pre>
+ *
+ * <ul>
+ *   <li><tt>state</tt> is the ordinal of the {@link CircuitState}
+ *   <li><tt>count</tt> is the number of consecutive errors when <tt>CLOSED</tt> and the number of
+ *       probe calls let through when <tt>HALF_OPEN</tt>
+ *   <li><tt>stamp</tt> is the time, in milliseconds since the breaker was created, at which it
+ *       last opened when <tt>OPEN</tt> and the number of probe calls that passed when
+ *       <tt>HALF_OPEN</tt>
+ * </ul>
+ *
+ * @author anoopr
+ */
+final class StateWord {
+
+  /** the largest value the <tt>count</tt> field can hold * */
+  static final int MAX_COUNT = (1 << 22) - 1;
+
+  /** the largest value the <tt>stamp</tt> field can hold (about 34 years in milliseconds) * */
+  static final long MAX_STAMP = (1L << 40) - 1;
+
+  /** the value to add to a word to increment its <tt>count</tt> field by one * */
+  static final long COUNT_UNIT = 1L << 40;
+
+  /** a <tt>CLOSED</tt> word with no errors recorded * */
+  static final long CLOSED = 0L;
+
+  private static final int STATE_SHIFT = 62;
+
+  private static final int COUNT_SHIFT = 40;
+
+  private static final CircuitState[] STATES = CircuitState.values();
+
+  private StateWord() {}
+
+  static CircuitState state(long word) {
+    return STATES[(int) (word >>> STATE_SHIFT)];
+  }
+
+  static int count(long word) {
+    return (int) ((word >>> COUNT_SHIFT) & MAX_COUNT);
+  }
+
+  static long stamp(long word) {
+    return word & MAX_STAMP;
+  }
+
+  static long closed(int errors) {
+    return (long) errors << COUNT_SHIFT;
+  }
+
+  static long open(long openedAt) {
+    return ((long) CircuitState.OPEN.ordinal() << STATE_SHIFT) | (openedAt & MAX_STAMP);
+  }
+
+  static long halfOpen(int permitted, long passed) {
+    return ((long) CircuitState.HALF_OPEN.ordinal() << STATE_SHIFT)
+        | ((long) permitted << COUNT_SHIFT)
+        | passed;
+  }
+}
@@ -0,0 +1,74 @@
+package com.aspirecsl.labs;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts the threads that {@link VirtualThreadTask} runs tasks on.
+ *
+ * <p>This is the Java 8 version: tasks run on a pool of at most {@value #MAX_THREADS} daemon
+ * platform threads, each kept for a minute once idle. A task that is given up on keeps its thread
+ * until it returns, so tasks stuck in I/O that ignores interrupts would otherwise add a thread, and
+ * its stack, per call; once every thread is busy a task is rejected instead. The multi-release JAR
+ * replaces this class on Java 21 and later with a version that starts a virtual thread per task.
+ *
+ * @author anoopr
+ */
+final class TaskThreads {
+
+  /** the largest number of platform threads tasks run on at once * */
+  static final int MAX_THREADS = 256;
+
+  /** numbers the pool threads * */
+  private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+  /** the threads tasks run on * */
+  private static final ExecutorService POOL = newPool(MAX_THREADS);
+
+  private TaskThreads() {}
+
+  /**
+   * Returns a pool that starts a daemon thread per task, up to the supplied number at once, and
+   * rejects tasks rather than queueing them once every thread is busy.
+   *
+   * @param maxThreads the largest number of threads the pool runs tasks on at once
+   * @return a pool that starts a daemon thread per task, up to <tt>maxThreads</tt> at once
+   */
+  static ExecutorService newPool(int maxThreads) {
+    return new ThreadPoolExecutor(
+        0,
+        maxThreads,
+        1,
+        TimeUnit.MINUTES,
+        new SynchronousQueue<>(),
+        runnable -> {
+          final Thread thread =
+              new Thread(runnable, "circuit-breaker-task-" + THREAD_NUMBER.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * Runs the supplied task on a thread of its own.
+   *
+   * @param task the task to run
+   * @throws RejectedExecutionException if {@value #MAX_THREADS} tasks are already running
+   */
+  static void start(Runnable task) {
+    POOL.execute(task);
+  }
+
+  /**
+   * Returns <tt>true</tt> if tasks run on virtual threads.
+   *
+   * @return <tt>false</tt>; tasks run on platform threads
+   */
+  static boolean isVirtual() {
+    return false;
+  }
+}
@@ -0,0 +1,122 @@
+package com.aspirecsl.labs;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A <tt>SlidingWindow</tt> over the task executions of the last <tt>T</tt> units of time.
+ *
+ * <p>The window is split into a fixed number of buckets, e.g. ten buckets of one second each, held
+ * in a ring that is allocated up front. Each bucket counts its calls, errors and slow calls in
+ * <tt>LongAdder</tt>s, whose striped cells let many threads record outcomes without contending on
+ * one counter. A bucket is recycled, i.e. its counters are reset, by the first outcome recorded in
+ * it once its time has passed.
+ *
+ * <p>Recording a fast pass only increments a counter. The rates are evaluated, by summing the live
+ * buckets, when an error or a slow call is recorded; a window that reaches a threshold through a
+ * fast pass therefore trips on the next error or slow call. Outcomes recorded concurrently with a
+ * bucket being recycled may be lost, which keeps the window approximate but lock free.
+ *
+ * @author anoopr
+ */
+final class TimeBasedSlidingWindow implements SlidingWindow {
+
+  /** the time, in nanoseconds, covered by one bucket * */
+  private final long bucketDurationNanos;
+
+  /** the minimum number of executions recorded before the error rate is evaluated * */
+  private final int minimumNumberOfCalls;
+
+  /** the error rate, as a percentage, at or above which the window reports a trip * */
+  private final float failureRateThreshold;
+
+  /** the slow call rate, as a percentage, at or above which the window reports a trip * */
+  private final float slowCallRateThreshold;
+
+  /** the monotonic clock, in nanoseconds, used to pick the current bucket * */
+  private final LongSupplier clock;
+
+  /** the clock reading at which this window was created * */
+  private final long epoch;
+
+  /** the ring of buckets * */
+  private final Bucket[] buckets;
+
+  TimeBasedSlidingWindow(
+      long windowDurationNanos,
+      int bucketCount,
+      int minimumNumberOfCalls,
+      float failureRateThreshold,
+      float slowCallRateThreshold,
+      LongSupplier clock) {
+    this.bucketDurationNanos = windowDurationNanos / bucketCount;
+    this.minimumNumberOfCalls = minimumNumberOfCalls;
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallRateThreshold = slowCallRateThreshold;
+    this.clock = clock;
+    this.epoch = clock.getAsLong();
+    this.buckets = new Bucket[bucketCount];
+    for (int i = 0; i < bucketCount; i++) {
+      buckets[i] = new Bucket();
+    }
+  }
+
+  @Override
+  public boolean record(boolean error, boolean slow) {
+    final long tick = (clock.getAsLong() - epoch) / bucketDurationNanos;
+    final Bucket bucket = buckets[(int) (tick % buckets.length)];
+    final long bucketTick = bucket.tick.get();
+    if (bucketTick < tick && bucket.tick.compareAndSet(bucketTick, tick)) {
+      bucket.calls.reset();
+      bucket.errors.reset();
+      bucket.slowCalls.reset();
+    }
+    bucket.calls.increment();
+    if (!error && !slow) {
+      return false;
+    }
+    if (error) {
+      bucket.errors.increment();
+    }
+    if (slow) {
+      bucket.slowCalls.increment();
+    }
+
+    long calls = 0;
+    long errors = 0;
+    long slowCalls = 0;
+    for (Bucket b : buckets) {
+      if (tick - b.tick.get() < buckets.length) {
+        calls += b.calls.sum();
+        errors += b.errors.sum();
+        slowCalls += b.slowCalls.sum();
+      }
+    }
+    return calls >= minimumNumberOfCalls
+        && (errors * 100f >= failureRateThreshold * calls
+            || slowCalls * 100f >= slowCallRateThreshold * calls);
+  }
+
+  @Override
+  public void reset() {
+    for (Bucket bucket : buckets) {
+      bucket.calls.reset();
+      bucket.errors.reset();
+      bucket.slowCalls.reset();
+    }
+  }
+
+  /** The calls, errors and slow calls recorded during one bucket's worth of time. */
+  private static final class Bucket {
+
+    /** the number of bucket durations since the window was created this bucket last covered * */
+    private final AtomicLong tick = new AtomicLong(Long.MIN_VALUE / 2);
+
+    private final LongAdder calls = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder slowCalls = new LongAdder();
+  }
+}
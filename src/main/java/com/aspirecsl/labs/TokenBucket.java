@@ -0,0 +1,87 @@
+package com.aspirecsl.labs;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that fills by a fraction of a token per event, used to cap the rate of extra
+ * work, such as retries or hedged attempts, to a fraction of the rate of some other event.
+ *
+ * <p>The bucket is an <tt>AtomicLong</tt> of millionths of a token and starts full, so the
+ * fraction of a token deposited is rounded to the nearest millionth and must be at least {@link
+ * #MIN_RATIO}. A deposit only writes the bucket while it is not full, so a steady stream of
+ * deposits into a full bucket does not contend on its cache line.
+ *
+ * @author anoopr
+ */
+final class TokenBucket {
+
+  /** the number of units of the bucket that make a token * */
+  private static final long TOKEN = 1_000_000;
+
+  /** the smallest fraction of a token a deposit can add, i.e. one unit * */
+  static final double MIN_RATIO = 1.0 / TOKEN;
+
+  /** the number of units added by each deposit * */
+  private final long deposit;
+
+  /** the number of units the bucket holds at most * */
+  private final long capacity;
+
+  /** the number of units in the bucket * */
+  private final AtomicLong units;
+
+  /**
+   * Constructs a full bucket.
+   *
+   * @param ratio the fraction of a token added by each deposit
+   * @param maxTokens the number of tokens the bucket holds at most
+   * @throws IllegalArgumentException if the <tt>ratio</tt> is below {@link #MIN_RATIO}
+   */
+  TokenBucket(double ratio, int maxTokens) {
+    if (!(ratio >= MIN_RATIO)) {
+      throw new IllegalArgumentException("Ratio must be >= " + MIN_RATIO);
+    }
+    deposit = Math.round(ratio * TOKEN);
+    capacity = maxTokens * TOKEN;
+    units = new AtomicLong(capacity);
+  }
+
+  /** Adds the fraction of a token of one deposit, unless the bucket is already full. */
+  void deposit() {
+    for (; ; ) {
+      final long current = units.get();
+      if (current >= capacity) {
+        return;
+      }
+      if (units.compareAndSet(current, Math.min(capacity, current + deposit))) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Takes a whole token if the bucket holds one.
+   *
+   * @return <tt>true</tt> if a token was taken; <tt>false</tt> otherwise
+   */
+  boolean tryWithdraw() {
+    for (; ; ) {
+      final long current = units.get();
+      if (current < TOKEN) {
+        return false;
+      }
+      if (units.compareAndSet(current, current - TOKEN)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of whole tokens in the bucket.
+   *
+   * @return the number of whole tokens in the bucket
+   */
+  long tokens() {
+    return units.get() / TOKEN;
+  }
+}
@@ -0,0 +1,105 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A task that runs another on a thread of its own, on Java 21 and later a virtual thread, and
+ * gives up on it after a timeout.
+ *
+ * <pre>
+ *   CircuitBreakerExecutor&lt;Quote&gt; executor =
+ *       CircuitBreakerExecutor.create(
+ *           "READ_QUOTE", VirtualThreadTask.create(readQuote, Duration.ofSeconds(2)), config);
+ * </pre>
+ *
+ * <p>The calling thread waits for the task; if the task has not completed within the timeout it
+ * is cancelled, interrupting its thread, and the call fails with a <tt>TimeoutException</tt>. If
+ * the calling thread is interrupted while waiting, the task is cancelled as well. Executed by a
+ * <tt>CircuitBreakerExecutor</tt> the call, including a timeout, is recorded with the breaker like
+ * any other.
+ *
+ * <p>The library is a multi-release JAR. On Java 21 and later every task runs on a new virtual
+ * thread, so a task blocked on I/O holds no platform thread; on earlier versions tasks run on a
+ * pool of at most 256 daemon platform threads, and a call made while all of them are busy fails
+ * with a <tt>RejectedExecutionException</tt>, which a <tt>CircuitBreakerExecutor</tt> counts as an
+ * error unless configured otherwise. Bound the concurrent calls below that, e.g. with a bulkhead,
+ * if they may all block at once. {@link #isVirtual()} tells which path is taken. Neither path
+ * holds a monitor while waiting: the breaker state is updated with compare-and-set, the bulkhead
+ * parks, and the sliding window and result cache take a <tt>ReentrantLock</tt>, so no carrier
+ * thread is pinned on the way to the task.
+ *
+ * @author anoopr
+ */
+public final class VirtualThreadTask<T> implements Callable<T> {
+
+  /** the task to run * */
+  private final Callable<T> task;
+
+  /** the time, in nanoseconds, after which the task is given up on * */
+  private final long timeoutNanos;
+
+  private VirtualThreadTask(Callable<T> task, Duration timeout) {
+    this.task = task;
+    this.timeoutNanos = timeout.toNanos();
+  }
+
+  /**
+   * Returns a <tt>VirtualThreadTask</tt> instance with the supplied values.
+   *
+   * @param task the task to run
+   * @param timeout the time after which the task is given up on
+   * @return a <tt>VirtualThreadTask</tt> instance with the supplied values
+   * @throws NullPointerException if the <tt>task</tt> or <tt>timeout</tt> is <tt>null</tt>
+   * @throws IllegalArgumentException if the <tt>timeout</tt> is not positive
+   */
+  public static <T> VirtualThreadTask<T> create(Callable<T> task, Duration timeout) {
+    Objects.requireNonNull(task);
+    Objects.requireNonNull(timeout);
+    if (timeout.isNegative() || timeout.isZero()) {
+      throw new IllegalArgumentException("Timeout must be > 0");
+    }
+    return new VirtualThreadTask<>(task, timeout);
+  }
+
+  /**
+   * Returns <tt>true</tt> if tasks run on virtual threads, i.e. on Java 21 and later.
+   *
+   * @return <tt>true</tt> if tasks run on virtual threads; <tt>false</tt> otherwise
+   */
+  public static boolean isVirtual() {
+    return TaskThreads.isVirtual();
+  }
+
+  /**
+   * Runs the task on a thread of its own and waits for it, up to the timeout.
+   *
+   * @return the result of the task
+   * @throws Exception if the task throws an exception
+   * @throws TimeoutException if the task has not completed within the timeout
+   * @throws InterruptedException if the calling thread is interrupted while waiting
+   * @throws RejectedExecutionException if tasks run on platform threads and every one is busy
+   */
+  @Override
+  public T call() throws Exception {
+    final FutureTask<T> execution = new FutureTask<>(task);
+    TaskThreads.start(execution);
+    try {
+      return execution.get(timeoutNanos, TimeUnit.NANOSECONDS);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw (Error) cause;
+    } finally {
+      execution.cancel(true);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.aspirecsl.labs;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Starts the threads that {@link VirtualThreadTask} runs tasks on.
+ *
+ * <p>This is the Java 21 version, selected by the multi-release JAR: every task runs on a virtual
+ * thread of its own.
+ *
+ * @author anoopr
+ */
+final class TaskThreads {
+
+  /** creates the virtual threads tasks run on; unlike a <tt>Thread.Builder</tt>, thread safe * */
+  private static final ThreadFactory FACTORY =
+      Thread.ofVirtual().name("circuit-breaker-task-", 1).factory();
+
+  private TaskThreads() {}
+
+  /**
+   * Runs the supplied task on a thread of its own.
+   *
+   * @param task the task to run
+   */
+  static void start(Runnable task) {
+    FACTORY.newThread(task).start();
+  }
+
+  /**
+   * Returns <tt>true</tt> if tasks run on virtual threads.
+   *
+   * @return <tt>true</tt>; tasks run on virtual threads
+   */
+  static boolean isVirtual() {
+    return true;
+  }
+}
@@ -0,0 +1,168 @@
+package com.aspirecsl.labs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for {@link AimdLimit}, {@link GradientLimit} and the reporting of their changes
+ * by {@link CircuitBreakerExecutor}
+ *
+ * @author anoopr
+ */
+public class AdaptiveLimitTest {
+
+  private static final String TASK_ID = "SOME_TASK";
+
+  private static final long MILLIS = 1_000_000L;
+
+  @Test
+  public void aimdGrowsByOneWhileInUseAndBacksOffOnDrops() {
+    final List<String> events = new ArrayList<>();
+    final AimdLimit limit = new AimdLimit(5, 25, TASK_ID, recording(events));
+    assertThat(limit.get()).isEqualTo(20);
+
+    limit.onSample(MILLIS, 2, false);
+    assertThat(limit.get()).isEqualTo(20);
+
+    limit.onSample(MILLIS, 15, false);
+    limit.onSample(MILLIS, 15, false);
+    assertThat(limit.get()).isEqualTo(22);
+
+    limit.onSample(MILLIS, 10, true);
+    assertThat(limit.get()).isEqualTo(19);
+
+    for (int i = 0; i < 20; i++) {
+      limit.onSample(MILLIS, 1, true);
+    }
+    assertThat(limit.get()).isEqualTo(5);
+    for (int i = 0; i < 100; i++) {
+      limit.onSample(MILLIS, 100, false);
+    }
+    assertThat(limit.get()).isEqualTo(25);
+    assertThat(events.subList(0, 3))
+        .containsExactly("limit 20 -> 21", "limit 21 -> 22", "limit 22 -> 19");
+  }
+
+  @Test
+  public void gradientShrinksAsLatencyRisesAndRecoversOnceItSettles() {
+    final GradientLimit limit = new GradientLimit(1, 100, TASK_ID, CircuitBreakerListener.NO_OP);
+    for (int i = 0; i < 200; i++) {
+      limit.onSample(10 * MILLIS, 20, false);
+    }
+    final int steady = limit.get();
+    assertThat(steady).isGreaterThan(20);
+
+    for (int i = 0; i < 50; i++) {
+      limit.onSample(100 * MILLIS, 100, false);
+    }
+    final int congested = limit.get();
+    assertThat(congested).isLessThan(steady);
+
+    for (int i = 0; i < 200; i++) {
+      limit.onSample(10 * MILLIS, 100, false);
+    }
+    assertThat(limit.get()).isGreaterThan(congested);
+  }
+
+  @Test
+  public void gradientDoesNotGrowAnUnusedLimit() {
+    final GradientLimit limit = new GradientLimit(1, 100, TASK_ID, CircuitBreakerListener.NO_OP);
+    for (int i = 0; i < 200; i++) {
+      limit.onSample(10 * MILLIS, 1, false);
+    }
+
+    assertThat(limit.get()).isEqualTo(20);
+  }
+
+  @Test
+  public void gradientGrowsOnRoundTripTimesOfZero() {
+    final GradientLimit limit = new GradientLimit(1, 100, TASK_ID, CircuitBreakerListener.NO_OP);
+    for (int i = 0; i < 50; i++) {
+      limit.onSample(0, 100, false);
+    }
+
+    assertThat(limit.get()).isGreaterThan(20);
+  }
+
+  @Test
+  public void gradientAppliesADropThatArrivesWhileAnotherSampleIsApplied() {
+    final GradientLimit[] racing = new GradientLimit[1];
+    racing[0] =
+        new GradientLimit(
+            1,
+            100,
+            TASK_ID,
+            new CircuitBreakerListener() {
+              @Override
+              public void onLimitChanged(String taskId, int from, int to) {
+                if (from == 20) {
+                  racing[0].onSample(MILLIS, 20, true);
+                }
+              }
+            });
+    final GradientLimit sequential =
+        new GradientLimit(1, 100, TASK_ID, CircuitBreakerListener.NO_OP);
+
+    racing[0].onSample(MILLIS, 20, true);
+    sequential.onSample(MILLIS, 20, true);
+    sequential.onSample(MILLIS, 20, true);
+
+    assertThat(sequential.get()).isLessThan(19);
+    assertThat(racing[0].get()).isEqualTo(sequential.get());
+  }
+
+  @Test
+  public void reportsLimitDropsAndTripsToTheSameListener() {
+    final List<String> events = new ArrayList<>();
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              throw new IllegalStateException();
+            },
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(2)
+                .aimdConcurrencyLimit(1, 10)
+                .listener(recording(events))
+                .build());
+
+    catchThrowable(circuitBreakerExecutor::execute);
+    catchThrowable(circuitBreakerExecutor::execute);
+
+    assertThat(events).containsExactly("limit 10 -> 9", "CLOSED -> OPEN", "limit 9 -> 8");
+  }
+
+  @Test
+  public void adaptiveAndFixedConcurrencyLimitsAreExclusive() {
+    final Throwable thrown =
+        catchThrowable(
+            () ->
+                CircuitBreakerConfig.builder()
+                    .maxConcurrentCalls(10)
+                    .gradientConcurrencyLimit(1, 10)
+                    .build());
+
+    assertThat(thrown).isInstanceOf(IllegalStateException.class);
+    assertThat(catchThrowable(() -> CircuitBreakerConfig.builder().aimdConcurrencyLimit(5, 4)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static CircuitBreakerListener recording(List<String> events) {
+    return new CircuitBreakerListener() {
+      @Override
+      public void onStateTransition(String taskId, CircuitState from, CircuitState to) {
+        events.add(from + " -> " + to);
+      }
+
+      @Override
+      public void onLimitChanged(String taskId, int from, int to) {
+        events.add("limit " + from + " -> " + to);
+      }
+    };
+  }
+}
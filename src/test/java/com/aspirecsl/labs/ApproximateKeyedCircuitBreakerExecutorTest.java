@@ -0,0 +1,144 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for {@link ApproximateKeyedCircuitBreakerExecutor}
+ *
+ * @author anoopr
+ */
+public class ApproximateKeyedCircuitBreakerExecutorTest {
+
+  private static final Callable<Integer> FAILING =
+      () -> {
+        throw new IllegalStateException();
+      };
+
+  private static ApproximateKeyedCircuitBreakerExecutor create(long[] now) {
+    return ApproximateKeyedCircuitBreakerExecutor.create("USERS", 0.001, 0.01, config(now));
+  }
+
+  private static CircuitBreakerConfig config(long[] now) {
+    return CircuitBreakerConfig.builder()
+        .errorToleranceFactor(3)
+        .waitDurationInOpenState(Duration.ofSeconds(10))
+        .clock(() -> now[0])
+        .build();
+  }
+
+  @Test
+  public void rejectsAKeyOnceItsRecentFailuresReachTheThreshold() throws Exception {
+    final ApproximateKeyedCircuitBreakerExecutor executor = create(new long[1]);
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(catchThrowable(() -> executor.execute("user-1", FAILING)))
+          .isInstanceOf(IllegalStateException.class);
+    }
+
+    assertThat(executor.estimateFailures("user-1")).isEqualTo(3);
+    assertThat(catchThrowable(() -> executor.execute("user-1", () -> 1)))
+        .isInstanceOf(CallNotPermittedException.class);
+    assertThat(executor.execute("user-2", () -> 2)).isEqualTo(2);
+  }
+
+  @Test
+  public void neverUnderestimatesAndStaysWithinTheErrorBound() throws Exception {
+    final ApproximateKeyedCircuitBreakerExecutor executor = create(new long[1]);
+    for (long key = 0; key < 1_000; key++) {
+      final long k = key;
+      catchThrowable(() -> executor.execute(k, FAILING));
+    }
+
+    int overestimated = 0;
+    for (long key = 0; key < 1_000; key++) {
+      final int estimate = executor.estimateFailures(key);
+      assertThat(estimate).isGreaterThanOrEqualTo(1);
+      if (estimate > 1 + 0.001 * 1_000) {
+        overestimated++;
+      }
+    }
+    // each key exceeds the bound with a probability of at most 1%
+    assertThat(overestimated).isLessThan(50);
+  }
+
+  @Test
+  public void forgetsFailuresAfterTwoGenerations() throws Exception {
+    final long[] now = {0L};
+    final ApproximateKeyedCircuitBreakerExecutor executor = create(now);
+    for (int i = 0; i < 3; i++) {
+      catchThrowable(() -> executor.execute(42L, FAILING));
+    }
+
+    now[0] = Duration.ofSeconds(15).toNanos();
+    assertThat(executor.estimateFailures(42L)).isEqualTo(3);
+    assertThat(catchThrowable(() -> executor.execute(42L, () -> 1)))
+        .isInstanceOf(CallNotPermittedException.class);
+
+    now[0] = Duration.ofSeconds(25).toNanos();
+    assertThat(executor.estimateFailures(42L)).isEqualTo(0);
+    assertThat(executor.execute(42L, () -> 1)).isEqualTo(1);
+  }
+
+  @Test
+  public void clearsBothGenerationsAfterALongPause() {
+    final long[] now = {0L};
+    final ApproximateKeyedCircuitBreakerExecutor executor = create(now);
+    catchThrowable(() -> executor.execute(7L, FAILING));
+    now[0] = Duration.ofSeconds(10).toNanos();
+    catchThrowable(() -> executor.execute(7L, FAILING));
+    assertThat(executor.estimateFailures(7L)).isEqualTo(2);
+
+    now[0] = Duration.ofSeconds(100).toNanos();
+    assertThat(executor.estimateFailures(7L)).isEqualTo(0);
+  }
+
+  @Test
+  public void clearsExpiredGenerationsOnTheClearer() {
+    final long[] now = {0L};
+    final List<Runnable> clearings = new ArrayList<>();
+    final ApproximateKeyedCircuitBreakerExecutor executor =
+        ApproximateKeyedCircuitBreakerExecutor.create(
+            "USERS", 0.001, 0.01, clearings::add, config(now));
+    catchThrowable(() -> executor.execute(7L, FAILING));
+
+    now[0] = Duration.ofSeconds(10).toNanos();
+    assertThat(executor.estimateFailures(7L)).isEqualTo(1);
+    assertThat(clearings).hasSize(1);
+    clearings.forEach(Runnable::run);
+    clearings.clear();
+
+    now[0] = Duration.ofSeconds(20).toNanos();
+    catchThrowable(() -> executor.execute(7L, FAILING));
+    assertThat(executor.estimateFailures(7L)).isEqualTo(1);
+
+    // after a long pause no set of counters is ready until the clearer has run
+    now[0] = Duration.ofSeconds(100).toNanos();
+    catchThrowable(() -> executor.execute(7L, FAILING));
+    assertThat(executor.estimateFailures(7L)).isEqualTo(0);
+    clearings.forEach(Runnable::run);
+    catchThrowable(() -> executor.execute(7L, FAILING));
+    assertThat(executor.estimateFailures(7L)).isEqualTo(1);
+  }
+
+  @Test
+  public void rejectsAZeroWaitDuration() {
+    final Throwable thrown =
+        catchThrowable(
+            () ->
+                ApproximateKeyedCircuitBreakerExecutor.create(
+                    "USERS",
+                    0.001,
+                    0.01,
+                    CircuitBreakerConfig.builder().waitDurationInOpenState(Duration.ZERO).build()));
+
+    assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+  }
+}
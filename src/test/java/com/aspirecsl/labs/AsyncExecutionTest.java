@@ -0,0 +1,96 @@
+package com.aspirecsl.labs;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for {@link CircuitBreakerExecutor#executeAsync}
+ *
+ * @author anoopr
+ */
+public class AsyncExecutionTest {
+
+  private static final String TASK_ID = "SOME_TASK";
+
+  @Test
+  public void recordsTheOutcomeWhenTheStageCompletes() throws Exception {
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(TASK_ID, () -> 0, 1);
+    final CompletableFuture<Integer> pending = new CompletableFuture<>();
+
+    final CompletionStage<Integer> stage = circuitBreakerExecutor.executeAsync(() -> pending);
+    assertThat(stage.toCompletableFuture().isDone()).isFalse();
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.CLOSED);
+
+    pending.completeExceptionally(new IllegalStateException());
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+  }
+
+  @Test
+  public void completesWithTheResultOfTheStage() throws Exception {
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(TASK_ID, () -> 0, 1);
+
+    final CompletionStage<Integer> stage =
+        circuitBreakerExecutor.executeAsync(() -> CompletableFuture.completedFuture(1));
+
+    assertThat(stage.toCompletableFuture().get()).isEqualTo(1);
+  }
+
+  @Test
+  public void classifiesTheUnwrappedExceptionOfAFailedStage() {
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> 0,
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(1)
+                .failOnExceptions(Collections.singletonList(IOException.class))
+                .build());
+
+    final CompletableFuture<Integer> ignored = new CompletableFuture<>();
+    ignored.completeExceptionally(new IllegalStateException());
+    circuitBreakerExecutor.executeAsync(() -> ignored.thenApply(i -> i));
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.CLOSED);
+
+    // the dependent stage completes with a CompletionException wrapping the IOException
+    final CompletableFuture<Integer> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new IOException());
+    circuitBreakerExecutor.executeAsync(() -> failed.thenApply(i -> i));
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+  }
+
+  @Test
+  public void failsTheStageWithoutCallingTheSupplierOnceTheCircuitIsBroken() {
+    final int[] calls = {0};
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(TASK_ID, () -> 0, 1);
+    for (int i = 0; i < 3; i++) {
+      circuitBreakerExecutor.executeAsync(
+          () -> {
+            calls[0]++;
+            throw new IllegalStateException();
+          });
+    }
+
+    final Throwable rejection =
+        catchThrowable(
+            () ->
+                circuitBreakerExecutor
+                    .executeAsync(() -> CompletableFuture.completedFuture(1))
+                    .toCompletableFuture()
+                    .get());
+
+    assertThat(calls[0]).isEqualTo(1);
+    assertThat(rejection).isInstanceOf(ExecutionException.class);
+    assertThat(rejection).hasCauseInstanceOf(CallNotPermittedException.class);
+  }
+}
@@ -0,0 +1,208 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for {@link BatchingCircuitBreakerExecutor}
+ *
+ * @author anoopr
+ */
+public class BatchingCircuitBreakerExecutorTest {
+
+  private static final String TASK_ID = "SOME_TASK";
+
+  private final ExecutorService pool = Executors.newCachedThreadPool();
+
+  private final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+
+  @After
+  public void shutDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void callsTheBatchTaskOnceAFullBatchIsSubmitted() throws Exception {
+    final BatchingCircuitBreakerExecutor<Integer, Integer> batchingExecutor =
+        BatchingCircuitBreakerExecutor.create(
+            TASK_ID,
+            this::square,
+            3,
+            Duration.ofMinutes(1),
+            pool,
+            CircuitBreakerConfig.ofDefaults());
+
+    final CompletableFuture<Integer> first = batchingExecutor.submit(1).toCompletableFuture();
+    final CompletableFuture<Integer> second = batchingExecutor.submit(2).toCompletableFuture();
+    assertThat(first.isDone()).isFalse();
+    final CompletableFuture<Integer> third = batchingExecutor.submit(3).toCompletableFuture();
+
+    assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+    assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(4);
+    assertThat(third.get(5, TimeUnit.SECONDS)).isEqualTo(9);
+    assertThat(batches).hasSize(1);
+    assertThat(batches.get(0)).containsExactly(1, 2, 3);
+  }
+
+  @Test
+  public void callsTheBatchTaskWithAPartialBatchOnceTheMaxDelayHasElapsed() throws Exception {
+    final BatchingCircuitBreakerExecutor<Integer, Integer> batchingExecutor =
+        BatchingCircuitBreakerExecutor.create(
+            TASK_ID,
+            this::square,
+            100,
+            Duration.ofMillis(5),
+            pool,
+            CircuitBreakerConfig.ofDefaults());
+
+    assertThat(batchingExecutor.execute(4)).isEqualTo(16);
+    assertThat(batchingExecutor.execute(5)).isEqualTo(25);
+    assertThat(batches).hasSize(2);
+  }
+
+  @Test
+  public void recordsOneOutcomePerBatchWithTheBreaker() throws Exception {
+    final BatchingCircuitBreakerExecutor<Integer, Integer> batchingExecutor =
+        BatchingCircuitBreakerExecutor.create(
+            TASK_ID,
+            items -> {
+              batches.add(items);
+              throw new IllegalStateException();
+            },
+            2,
+            Duration.ofMinutes(1),
+            pool,
+            CircuitBreakerConfig.builder().errorToleranceFactor(2).build());
+
+    final CompletableFuture<Integer> first = batchingExecutor.submit(1).toCompletableFuture();
+    assertThat(catchThrowable(() -> batchingExecutor.execute(2)))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(catchThrowable(first::join).getCause()).isInstanceOf(IllegalStateException.class);
+    assertThat(batchingExecutor.getState()).isEqualTo(CircuitState.CLOSED);
+
+    batchingExecutor.submit(3);
+    assertThat(catchThrowable(() -> batchingExecutor.execute(4)))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(batchingExecutor.getState()).isEqualTo(CircuitState.OPEN);
+
+    batchingExecutor.submit(5);
+    assertThat(catchThrowable(() -> batchingExecutor.execute(6)))
+        .isInstanceOf(CallNotPermittedException.class);
+    assertThat(batches).hasSize(2);
+  }
+
+  @Test
+  public void failsEveryItemIfTheBatchTaskReturnsTheWrongNumberOfResults() {
+    final BatchingCircuitBreakerExecutor<Integer, Integer> batchingExecutor =
+        BatchingCircuitBreakerExecutor.create(
+            TASK_ID,
+            items -> Collections.singletonList(0),
+            2,
+            Duration.ofMinutes(1),
+            pool,
+            CircuitBreakerConfig.ofDefaults());
+
+    batchingExecutor.submit(1);
+    assertThat(catchThrowable(() -> batchingExecutor.execute(2)))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void failsEveryItemAndRecordsAnErrorIfTheBatchTaskThrowsAnError() {
+    final BatchingCircuitBreakerExecutor<Integer, Integer> batchingExecutor =
+        BatchingCircuitBreakerExecutor.create(
+            TASK_ID,
+            items -> {
+              throw new AssertionError();
+            },
+            2,
+            Duration.ofMinutes(1),
+            pool,
+            CircuitBreakerConfig.builder().errorToleranceFactor(1).build());
+
+    final CompletableFuture<Integer> first = batchingExecutor.submit(1).toCompletableFuture();
+    assertThat(catchThrowable(() -> batchingExecutor.execute(2)))
+        .isInstanceOf(AssertionError.class);
+    assertThat(catchThrowable(first::join).getCause()).isInstanceOf(AssertionError.class);
+    assertThat(batchingExecutor.getState()).isEqualTo(CircuitState.OPEN);
+  }
+
+  @Test
+  public void failsEveryItemIfTheResultsOfTheBatchTaskCannotBeRead() {
+    final BatchingCircuitBreakerExecutor<Integer, Integer> batchingExecutor =
+        BatchingCircuitBreakerExecutor.create(
+            TASK_ID,
+            items ->
+                new AbstractList<Integer>() {
+                  @Override
+                  public Integer get(int index) {
+                    throw new IllegalStateException();
+                  }
+
+                  @Override
+                  public int size() {
+                    return items.size();
+                  }
+                },
+            2,
+            Duration.ofMinutes(1),
+            pool,
+            CircuitBreakerConfig.ofDefaults());
+
+    final CompletableFuture<Integer> first = batchingExecutor.submit(1).toCompletableFuture();
+    assertThat(catchThrowable(() -> batchingExecutor.execute(2)))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(catchThrowable(first::join).getCause()).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void everyConcurrentSubmissionReceivesTheResultOfItsOwnItem() throws Exception {
+    final BatchingCircuitBreakerExecutor<Integer, Integer> batchingExecutor =
+        BatchingCircuitBreakerExecutor.create(
+            TASK_ID,
+            this::square,
+            16,
+            Duration.ofMillis(2),
+            pool,
+            CircuitBreakerConfig.ofDefaults());
+    final List<CompletableFuture<Boolean>> submitters = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      final int base = t * 1000;
+      submitters.add(
+          CompletableFuture.supplyAsync(
+              () -> {
+                for (int i = base; i < base + 1000; i++) {
+                  if (batchingExecutor.submit(i).toCompletableFuture().join() != i * i) {
+                    return false;
+                  }
+                }
+                return true;
+              },
+              pool));
+    }
+
+    for (CompletableFuture<Boolean> submitter : submitters) {
+      assertThat(submitter.get(30, TimeUnit.SECONDS)).isTrue();
+    }
+    assertThat(batches.stream().mapToInt(List::size).sum()).isEqualTo(8000);
+  }
+
+  private List<Integer> square(List<Integer> items) {
+    batches.add(new ArrayList<>(items));
+    return items.stream().map(i -> i * i).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,157 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for {@link Bulkhead} and its use by {@link CircuitBreakerExecutor}
+ *
+ * @author anoopr
+ */
+public class BulkheadTest {
+
+  private static final String TASK_ID = "SOME_TASK";
+
+  @Test
+  public void limitsTheNumberOfPermitsInFlight() {
+    final Bulkhead bulkhead = new Bulkhead(2, 0L);
+
+    assertThat(bulkhead.tryAcquirePermission()).isTrue();
+    assertThat(bulkhead.tryAcquirePermission()).isTrue();
+    assertThat(bulkhead.tryAcquirePermission()).isFalse();
+    assertThat(bulkhead.availablePermits()).isEqualTo(0);
+
+    bulkhead.release();
+    assertThat(bulkhead.availablePermits()).isEqualTo(1);
+    assertThat(bulkhead.tryAcquirePermission()).isTrue();
+  }
+
+  @Test
+  public void waitsForAPermitUpToTheMaxWaitDuration() throws Exception {
+    final Bulkhead bulkhead = new Bulkhead(1, TimeUnit.SECONDS.toNanos(5));
+    assertThat(bulkhead.tryAcquirePermission()).isTrue();
+
+    final FutureTask<Boolean> waiter = new FutureTask<>(bulkhead::tryAcquirePermission);
+    final Thread thread = new Thread(waiter);
+    thread.start();
+    awaitParked(thread);
+    assertThat(waiter.isDone()).isFalse();
+
+    bulkhead.release();
+    assertThat(waiter.get(5, TimeUnit.SECONDS)).isTrue();
+
+    final Bulkhead impatient = new Bulkhead(1, TimeUnit.MILLISECONDS.toNanos(20));
+    assertThat(impatient.tryAcquirePermission()).isTrue();
+    final long startedAt = System.nanoTime();
+    assertThat(impatient.tryAcquirePermission()).isFalse();
+    assertThat(System.nanoTime() - startedAt).isGreaterThanOrEqualTo(20_000_000L);
+  }
+
+  @Test
+  public void rejectsCallsBeyondTheLimitBeforeCheckingTheBreaker() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              started.countDown();
+              release.await();
+              return 1;
+            },
+            CircuitBreakerConfig.builder().maxConcurrentCalls(1).build());
+
+    final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try {
+      final Future<Integer> inFlight = executorService.submit(circuitBreakerExecutor::execute);
+      assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+      final Throwable thrown = catchThrowable(circuitBreakerExecutor::execute);
+      assertThat(thrown).isInstanceOf(BulkheadFullException.class);
+      assertThat(catchThrowable(circuitBreakerExecutor::execute)).isSameAs(thrown);
+      assertThat(circuitBreakerExecutor.tryExecute().isBulkheadFull()).isTrue();
+      assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.CLOSED);
+
+      release.countDown();
+      assertThat(inFlight.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+      assertThat(circuitBreakerExecutor.tryExecute().getValue()).isEqualTo(1);
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  public void releasesThePermitWhenACallIsRejectedByTheBreaker() {
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              throw new IllegalStateException();
+            },
+            CircuitBreakerConfig.builder().errorToleranceFactor(1).maxConcurrentCalls(1).build());
+
+    assertThat(catchThrowable(circuitBreakerExecutor::execute))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(catchThrowable(circuitBreakerExecutor::execute))
+        .isInstanceOf(CallNotPermittedException.class);
+    assertThat(circuitBreakerExecutor.tryExecute().isRejected()).isTrue();
+  }
+
+  @Test
+  public void holdsThePermitUntilTheStageCompletes() throws Exception {
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID, () -> 0, CircuitBreakerConfig.builder().maxConcurrentCalls(1).build());
+    final CompletableFuture<Integer> pending = new CompletableFuture<>();
+
+    circuitBreakerExecutor.executeAsync(() -> pending);
+    final Throwable thrown =
+        catchThrowable(
+            () ->
+                circuitBreakerExecutor
+                    .executeAsync(() -> CompletableFuture.completedFuture(1))
+                    .toCompletableFuture()
+                    .get());
+    assertThat(thrown).isInstanceOf(ExecutionException.class);
+    assertThat(thrown.getCause()).isInstanceOf(BulkheadFullException.class);
+
+    pending.complete(0);
+    assertThat(
+            circuitBreakerExecutor
+                .executeAsync(() -> CompletableFuture.completedFuture(1))
+                .toCompletableFuture()
+                .get())
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void maxWaitDurationRequiresMaxConcurrentCalls() {
+    final Throwable thrown =
+        catchThrowable(
+            () -> CircuitBreakerConfig.builder().maxWaitDuration(Duration.ofMillis(10)).build());
+
+    assertThat(thrown).isInstanceOf(IllegalStateException.class);
+  }
+
+  /** Waits, for up to 5 seconds, until the supplied thread parks. */
+  private static void awaitParked(Thread thread) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (thread.getState() != Thread.State.TIMED_WAITING
+        && thread.getState() != Thread.State.WAITING) {
+      assertThat(System.nanoTime() - deadline).isLessThan(0L);
+      Thread.sleep(1);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.aspirecsl.labs;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for the per-call timeout of {@link CircuitBreakerExecutor}
+ *
+ * @author anoopr
+ */
+public class CallTimeoutTest {
+
+  private static final String TASK_ID = "SOME_TASK";
+
+  private static CircuitBreakerConfig timeoutOf(long millis) {
+    return CircuitBreakerConfig.builder()
+        .errorToleranceFactor(1)
+        .timeoutDuration(Duration.ofMillis(millis))
+        .build();
+  }
+
+  @Test
+  public void interruptsATaskThatExceedsTheTimeout() {
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              Thread.sleep(10_000);
+              return 0;
+            },
+            timeoutOf(20));
+
+    final Throwable thrown = catchThrowable(circuitBreakerExecutor::execute);
+
+    assertThat(thrown).isInstanceOf(TimeoutException.class);
+    assertThat(thrown.getCause()).isInstanceOf(InterruptedException.class);
+    assertThat(Thread.currentThread().isInterrupted()).isFalse();
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+  }
+
+  @Test
+  public void reportsATaskThatIgnoresTheInterruptAsTimedOut() {
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              final long deadline = System.nanoTime() + 100_000_000L;
+              while (System.nanoTime() < deadline) {
+                Thread.yield();
+              }
+              return 0;
+            },
+            timeoutOf(10));
+
+    final ExecutionResult<Integer> result = circuitBreakerExecutor.tryExecute();
+
+    assertThat(result.getStatus()).isEqualTo(ExecutionResult.Status.FAILURE);
+    assertThat(result.getFailure()).isInstanceOf(TimeoutException.class);
+    assertThat(Thread.interrupted()).isFalse();
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+  }
+
+  @Test
+  public void keepsAnInterruptThatDidNotComeFromTheTimeout() {
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              // cancelled from elsewhere during the call, which goes on regardless
+              Thread.currentThread().interrupt();
+              final long deadline = System.nanoTime() + 100_000_000L;
+              while (System.nanoTime() < deadline) {
+                Thread.yield();
+              }
+              return 0;
+            },
+            timeoutOf(10));
+
+    final ExecutionResult<Integer> result = circuitBreakerExecutor.tryExecute();
+
+    assertThat(result.getFailure()).isInstanceOf(TimeoutException.class);
+    assertThat(Thread.interrupted()).isTrue();
+  }
+
+  @Test
+  public void leavesATaskThatFinishesInTimeUntouched() throws Exception {
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(TASK_ID, () -> 1, timeoutOf(1_000));
+
+    assertThat(circuitBreakerExecutor.execute()).isEqualTo(1);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.CLOSED);
+
+    final CircuitBreakerExecutor<Integer> failingExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              throw new IOException();
+            },
+            timeoutOf(1_000));
+    assertThat(catchThrowable(failingExecutor::execute)).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  public void failsAStageThatExceedsTheTimeout() {
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(TASK_ID, () -> 0, timeoutOf(20));
+    final CompletableFuture<Integer> pending = new CompletableFuture<>();
+
+    final CompletionStage<Integer> stage = circuitBreakerExecutor.executeAsync(() -> pending);
+    final Throwable thrown = catchThrowable(() -> stage.toCompletableFuture().get());
+
+    assertThat(thrown).isInstanceOf(ExecutionException.class);
+    assertThat(thrown.getCause()).isInstanceOf(TimeoutException.class);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+
+    // a late completion is not recorded a second time
+    pending.complete(1);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+  }
+}
@@ -1,6 +1,9 @@
 package com.aspirecsl.labs;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeoutException;
 
@@ -262,4 +265,324 @@ public class CircuitBreakerExecutorTest {
 
     assertThat(result).containsExactly(0, 1, 0, 1, 0, 1, 0, 1, 0, 1);
   }
+
+  @Test
+  public void staysOpenUntilTheWaitDurationHasElapsed() {
+    final long[] now = {0};
+    final int[] calls = {0};
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              calls[0]++;
+              throw new RuntimeException();
+            },
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(2)
+                .waitDurationInOpenState(Duration.ofSeconds(30))
+                .clock(() -> now[0])
+                .build());
+    for (int i = 0; i < 5; i++) {
+      try {
+        now[0] += Duration.ofSeconds(1).toNanos();
+        circuitBreakerExecutor.execute();
+      } catch (Exception ignore) {
+      }
+    }
+
+    assertThat(calls[0]).isEqualTo(2);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+  }
+
+  @Test
+  public void closesTheCircuitOnceAllTheProbeCallsPass() throws Exception {
+    final long[] now = {0};
+    final boolean[] failing = {true};
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              if (failing[0]) {
+                throw new RuntimeException();
+              }
+              return 1;
+            },
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(2)
+                .waitDurationInOpenState(Duration.ofSeconds(30))
+                .permittedCallsInHalfOpenState(2)
+                .clock(() -> now[0])
+                .build());
+    for (int i = 0; i < 2; i++) {
+      try {
+        circuitBreakerExecutor.execute();
+      } catch (Exception ignore) {
+      }
+    }
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+
+    failing[0] = false;
+    now[0] += Duration.ofSeconds(30).toNanos();
+
+    assertThat(circuitBreakerExecutor.execute()).isEqualTo(1);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.HALF_OPEN);
+    assertThat(circuitBreakerExecutor.execute()).isEqualTo(1);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.CLOSED);
+  }
+
+  @Test
+  public void reopensTheCircuitIfAProbeCallFails() {
+    final long[] now = {0};
+    final int[] calls = {0};
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              calls[0]++;
+              throw new RuntimeException();
+            },
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(1)
+                .waitDurationInOpenState(Duration.ofSeconds(30))
+                .permittedCallsInHalfOpenState(3)
+                .clock(() -> now[0])
+                .build());
+    try {
+      circuitBreakerExecutor.execute();
+    } catch (Exception ignore) {
+    }
+
+    now[0] += Duration.ofSeconds(30).toNanos();
+    for (int i = 0; i < 5; i++) {
+      try {
+        circuitBreakerExecutor.execute();
+      } catch (Exception ignore) {
+      }
+    }
+
+    assertThat(calls[0]).isEqualTo(2);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+  }
+
+  @Test
+  public void onlyLetsThePermittedNumberOfProbeCallsThroughWhenHalfOpen() throws Exception {
+    final long[] now = {0};
+    final boolean[] probeRejected = {false};
+    final List<CircuitBreakerExecutor<Integer>> self = new ArrayList<>();
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              if (now[0] == 0) {
+                throw new RuntimeException();
+              }
+              // a second call arriving while the only permitted probe is still running
+              try {
+                self.get(0).execute();
+              } catch (RuntimeException e) {
+                probeRejected[0] = true;
+              }
+              return 1;
+            },
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(1)
+                .waitDurationInOpenState(Duration.ofSeconds(30))
+                .permittedCallsInHalfOpenState(1)
+                .clock(() -> now[0])
+                .build());
+    self.add(circuitBreakerExecutor);
+    try {
+      circuitBreakerExecutor.execute();
+    } catch (Exception ignore) {
+    }
+    now[0] += Duration.ofSeconds(30).toNanos();
+
+    assertThat(circuitBreakerExecutor.execute()).isEqualTo(1);
+    assertThat(probeRejected[0]).isTrue();
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.CLOSED);
+  }
+
+  @Test
+  public void breaksTheCircuitOnTheErrorRateOfACountBasedSlidingWindow() {
+    final int[] share = {0};
+    final int[] result = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              if (share[0] % 2 == 0) {
+                throw new RuntimeException();
+              } else {
+                return 1;
+              }
+            },
+            CircuitBreakerConfig.builder()
+                .countBasedSlidingWindow(4)
+                .minimumNumberOfCalls(4)
+                .failureRateThreshold(50f)
+                .build());
+    for (int i = 0; i < 10; i++) {
+      try {
+        share[0] = i;
+        result[i] = circuitBreakerExecutor.execute();
+      } catch (Exception ignore) {
+      }
+    }
+
+    assertThat(result).containsExactly(0, 1, 0, 1, 0, 0, 0, 0, 0, 0);
+  }
+
+  @Test
+  public void breaksTheCircuitOnTheRateOfSlowCalls() {
+    final long[] now = {0};
+    final int[] share = {0};
+    final int[] result = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              // every other call hangs for nine seconds but does eventually pass
+              now[0] += Duration.ofSeconds(share[0] % 2 == 0 ? 9 : 0).toNanos();
+              return 1;
+            },
+            CircuitBreakerConfig.builder()
+                .countBasedSlidingWindow(4)
+                .minimumNumberOfCalls(4)
+                .slowCallDurationThreshold(Duration.ofSeconds(5))
+                .slowCallRateThreshold(50f)
+                .clock(() -> now[0])
+                .build());
+    for (int i = 0; i < 10; i++) {
+      try {
+        share[0] = i;
+        result[i] = circuitBreakerExecutor.execute();
+      } catch (Exception ignore) {
+      }
+    }
+
+    assertThat(result).containsExactly(1, 1, 1, 1, 0, 0, 0, 0, 0, 0);
+  }
+
+  @Test
+  public void recordsAProbeCallThatThrowsAnErrorAsAFailure() throws Exception {
+    assertAProbeCallThatThrowsAnErrorIsRecorded(CircuitBreakerConfig.builder());
+  }
+
+  @Test
+  public void recordsATimedProbeCallThatThrowsAnErrorAsAFailure() throws Exception {
+    assertAProbeCallThatThrowsAnErrorIsRecorded(
+        CircuitBreakerConfig.builder().timeoutDuration(Duration.ofSeconds(30)));
+  }
+
+  private static void assertAProbeCallThatThrowsAnErrorIsRecorded(
+      CircuitBreakerConfig.Builder config) throws Exception {
+    final long[] now = {0};
+    final int[] calls = {0};
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              switch (calls[0]++) {
+                case 0:
+                  throw new RuntimeException();
+                case 1:
+                  throw new AssertionError();
+                default:
+                  return 1;
+              }
+            },
+            config
+                .errorToleranceFactor(1)
+                .waitDurationInOpenState(Duration.ofSeconds(30))
+                .permittedCallsInHalfOpenState(1)
+                .clock(() -> now[0])
+                .build());
+    try {
+      circuitBreakerExecutor.execute();
+    } catch (RuntimeException ignore) {
+    }
+    now[0] += Duration.ofSeconds(30).toNanos();
+    try {
+      circuitBreakerExecutor.execute();
+    } catch (AssertionError ignore) {
+    }
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+
+    now[0] += Duration.ofSeconds(30).toNanos();
+
+    assertThat(circuitBreakerExecutor.execute()).isEqualTo(1);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.CLOSED);
+  }
+
+  @Test
+  public void recoversWhenTheListenerThrowsOnEveryTransition() throws Exception {
+    final long[] now = {0};
+    final boolean[] failing = {true};
+    final List<String> transitions = new ArrayList<>();
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              if (failing[0]) {
+                throw new RuntimeException();
+              }
+              return 1;
+            },
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(1)
+                .waitDurationInOpenState(Duration.ofSeconds(30))
+                .permittedCallsInHalfOpenState(1)
+                .clock(() -> now[0])
+                .listener(
+                    new CircuitBreakerListener() {
+                      @Override
+                      public void onStateTransition(
+                          String taskId, CircuitState from, CircuitState to) {
+                        transitions.add(from + " -> " + to);
+                        throw new IllegalStateException();
+                      }
+                    })
+                .build());
+    try {
+      circuitBreakerExecutor.execute();
+    } catch (RuntimeException ignore) {
+    }
+    failing[0] = false;
+    now[0] += Duration.ofSeconds(30).toNanos();
+
+    assertThat(circuitBreakerExecutor.execute()).isEqualTo(1);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.CLOSED);
+    assertThat(transitions)
+        .containsExactly("CLOSED -> OPEN", "OPEN -> HALF_OPEN", "HALF_OPEN -> CLOSED");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void slowCallDetectionRequiresASlidingWindow() {
+    CircuitBreakerConfig.builder().slowCallDurationThreshold(Duration.ofSeconds(5)).build();
+  }
+
+  @Test
+  public void rejectsEveryCallWithTheSameStacklessException() {
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              throw new RuntimeException();
+            },
+            1);
+    final List<Exception> rejections = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      try {
+        circuitBreakerExecutor.execute();
+      } catch (CallNotPermittedException e) {
+        rejections.add(e);
+      } catch (Exception ignore) {
+      }
+    }
+
+    assertThat(rejections).hasSize(2);
+    assertThat(rejections.get(0)).isSameAs(rejections.get(1));
+    assertThat(rejections.get(0)).hasMessage("Too many failures for task [" + TASK_ID + "].");
+    assertThat(rejections.get(0).getStackTrace().length).isEqualTo(0);
+  }
 }
@@ -0,0 +1,127 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for {@link CircuitBreakerRegistry}
+ *
+ * @author anoopr
+ */
+public class CircuitBreakerRegistryTest {
+
+  private static final long SECONDS = 1_000_000_000L;
+
+  @Test
+  public void createsOneExecutorPerTaskIdOnFirstUse() throws Exception {
+    final CircuitBreakerRegistry registry = CircuitBreakerRegistry.ofDefaults();
+
+    final CircuitBreakerExecutor<Integer> first = registry.executor("HOST_1", () -> 1);
+    final CircuitBreakerExecutor<Integer> again = registry.executor("HOST_1", () -> 2);
+    final CircuitBreakerExecutor<Integer> other = registry.executor("HOST_2", () -> 3);
+
+    assertThat(again).isSameAs(first);
+    assertThat(again.execute()).isEqualTo(1);
+    assertThat(other).isNotSameAs(first);
+    assertThat(registry.size()).isEqualTo(2);
+    assertThat(registry.find("HOST_2").orElse(null)).isSameAs(other);
+    assertThat(registry.find("HOST_3").isPresent()).isFalse();
+
+    assertThat(registry.remove("HOST_2")).isTrue();
+    assertThat(registry.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void evictsExecutorsThatAreIdleAndClosed() {
+    final long[] now = {0L};
+    final CircuitBreakerRegistry registry =
+        new CircuitBreakerRegistry(
+            CircuitBreakerConfig.builder().errorToleranceFactor(1).build(),
+            Duration.ofSeconds(60),
+            () -> now[0]);
+    final CircuitBreakerExecutor<Integer> failing =
+        registry.executor(
+            "FAILING",
+            () -> {
+              throw new IllegalStateException();
+            });
+    catchThrowable(failing::execute);
+    registry.executor("IDLE", () -> 1);
+    registry.executor("BUSY", () -> 1);
+
+    now[0] = 45 * SECONDS;
+    registry.executor("BUSY", () -> 1);
+    now[0] = 75 * SECONDS;
+    registry.evictIdleExecutors();
+
+    assertThat(registry.find("IDLE").isPresent()).isFalse();
+    assertThat(registry.find("BUSY").isPresent()).isTrue();
+    assertThat(registry.find("FAILING").isPresent()).isTrue();
+  }
+
+  @Test
+  public void sweepsIdleExecutorsOnLookup() {
+    final long[] now = {0L};
+    final CircuitBreakerRegistry registry =
+        new CircuitBreakerRegistry(
+            CircuitBreakerConfig.ofDefaults(), Duration.ofSeconds(60), () -> now[0]);
+    registry.executor("IDLE", () -> 1);
+
+    now[0] = 29 * SECONDS;
+    registry.executor("OTHER", () -> 1);
+    assertThat(registry.size()).isEqualTo(2);
+
+    now[0] = 61 * SECONDS;
+    registry.executor("OTHER", () -> 1);
+    assertThat(registry.find("IDLE").isPresent()).isFalse();
+    assertThat(registry.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void keepsAnExecutorThatIsCalledWithoutBeingLookedUp() throws Exception {
+    final long[] now = {0L};
+    final CircuitBreakerRegistry registry =
+        new CircuitBreakerRegistry(
+            CircuitBreakerConfig.ofDefaults(), Duration.ofSeconds(60), () -> now[0]);
+    final CircuitBreakerExecutor<Integer> held = registry.executor("HELD", () -> 1);
+
+    now[0] = 50 * SECONDS;
+    held.execute();
+    now[0] = 75 * SECONDS;
+    registry.evictIdleExecutors();
+    assertThat(registry.find("HELD").orElse(null)).isSameAs(held);
+
+    now[0] = 134 * SECONDS;
+    registry.evictIdleExecutors();
+    assertThat(registry.find("HELD").isPresent()).isTrue();
+    now[0] = 135 * SECONDS;
+    registry.evictIdleExecutors();
+    assertThat(registry.find("HELD").isPresent()).isFalse();
+  }
+
+  @Test
+  public void spreadsASweepOverTheLookupsThatFollow() {
+    final long[] now = {0L};
+    final CircuitBreakerRegistry registry =
+        new CircuitBreakerRegistry(
+            CircuitBreakerConfig.ofDefaults(), Duration.ofSeconds(60), () -> now[0]);
+    for (int i = 0; i < 10; i++) {
+      registry.executor("IDLE_" + i, () -> 1);
+    }
+    registry.executor("OTHER", () -> 1);
+
+    now[0] = 61 * SECONDS;
+    // each lookup checks four of the eleven executors, one of which is the one looked up
+    registry.executor("OTHER", () -> 1);
+    assertThat(registry.size()).isBetween(7, 8);
+    registry.executor("OTHER", () -> 1);
+    assertThat(registry.size()).isBetween(3, 4);
+    registry.executor("OTHER", () -> 1);
+    assertThat(registry.size()).isEqualTo(1);
+    assertThat(registry.find("OTHER").isPresent()).isTrue();
+  }
+}
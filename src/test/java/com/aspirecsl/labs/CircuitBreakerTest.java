@@ -0,0 +1,87 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A unit test class for {@link CircuitBreaker}
+ *
+ * @author anoopr
+ */
+public class CircuitBreakerTest {
+
+  @Test
+  public void packsTheStateCountAndStampIntoOneWord() {
+    final long open = StateWord.open(123_456L);
+    final long halfOpen = StateWord.halfOpen(7, 3);
+    final long closed = StateWord.closed(42);
+
+    assertThat(StateWord.state(open)).isEqualTo(CircuitState.OPEN);
+    assertThat(StateWord.stamp(open)).isEqualTo(123_456L);
+    assertThat(StateWord.state(halfOpen)).isEqualTo(CircuitState.HALF_OPEN);
+    assertThat(StateWord.count(halfOpen)).isEqualTo(7);
+    assertThat(StateWord.stamp(halfOpen)).isEqualTo(3L);
+    assertThat(StateWord.state(closed)).isEqualTo(CircuitState.CLOSED);
+    assertThat(StateWord.count(closed)).isEqualTo(42);
+    assertThat(StateWord.count(StateWord.closed(StateWord.MAX_COUNT)))
+        .isEqualTo(StateWord.MAX_COUNT);
+  }
+
+  @Test
+  public void concurrentErrorsTripTheBreakerAndKeepItOpen() throws Exception {
+    final CircuitBreaker circuitBreaker =
+        new CircuitBreaker(CircuitBreakerConfig.builder().errorToleranceFactor(3).build());
+    final int threads = 8;
+    final CountDownLatch start = new CountDownLatch(1);
+    final ExecutorService pool = Executors.newFixedThreadPool(threads);
+    for (int i = 0; i < threads; i++) {
+      pool.execute(
+          () -> {
+            try {
+              start.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            for (int j = 0; j < 10_000; j++) {
+              if (circuitBreaker.tryAcquirePermission()) {
+                circuitBreaker.onError(0L);
+              }
+            }
+          });
+    }
+    start.countDown();
+    pool.shutdown();
+    assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitState.OPEN);
+    assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+  }
+
+  @Test
+  public void errorsRecordedWhileOpenDoNotMoveTheOpenedAtStamp() {
+    final long[] now = {0};
+    final CircuitBreaker circuitBreaker =
+        new CircuitBreaker(
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(1)
+                .waitDurationInOpenState(Duration.ofSeconds(10))
+                .clock(() -> now[0])
+                .build());
+    circuitBreaker.onError(0L);
+
+    now[0] = Duration.ofSeconds(9).toNanos();
+    // a late error from a call that was let through before the breaker opened
+    circuitBreaker.onError(0L);
+    now[0] = Duration.ofSeconds(10).toNanos();
+
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitState.HALF_OPEN);
+  }
+}
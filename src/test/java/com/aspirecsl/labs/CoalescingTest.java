@@ -0,0 +1,117 @@
+package com.aspirecsl.labs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for the coalescing of concurrent calls by {@link CircuitBreakerExecutor}
+ *
+ * @author anoopr
+ */
+public class CoalescingTest {
+
+  private static final String TASK_ID = "SOME_TASK";
+
+  private static final int CALLERS = 8;
+
+  @Test
+  public void concurrentCallsShareOneExecution() throws Exception {
+    final AtomicInteger executions = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              executions.incrementAndGet();
+              release.await();
+              return 42;
+            },
+            CircuitBreakerConfig.builder().coalesceConcurrentCalls(true).build());
+
+    final List<Future<Integer>> results = callConcurrently(circuitBreakerExecutor, release);
+
+    for (Future<Integer> result : results) {
+      assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(42);
+    }
+    assertThat(executions.get()).isEqualTo(1);
+    assertThat(circuitBreakerExecutor.execute()).isEqualTo(42);
+    assertThat(executions.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void concurrentCallsShareOneFailureRecordedOnce() throws Exception {
+    final IllegalStateException failure = new IllegalStateException();
+    final CountDownLatch release = new CountDownLatch(1);
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              release.await();
+              throw failure;
+            },
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(2)
+                .coalesceConcurrentCalls(true)
+                .build());
+
+    final List<Future<Integer>> results = callConcurrently(circuitBreakerExecutor, release);
+
+    for (Future<Integer> result : results) {
+      assertThat(catchThrowable(() -> result.get(5, TimeUnit.SECONDS)).getCause())
+          .isSameAs(failure);
+    }
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.CLOSED);
+  }
+
+  /**
+   * Starts {@link #CALLERS} concurrent calls, lets the task complete once all but the first are
+   * waiting for it, and returns their results. A caller only ever waits in the task or for the
+   * call in flight, so once every caller waits they have all joined it.
+   */
+  private static List<Future<Integer>> callConcurrently(
+      CircuitBreakerExecutor<Integer> circuitBreakerExecutor, CountDownLatch release)
+      throws InterruptedException {
+    final List<Thread> callers = new CopyOnWriteArrayList<>();
+    final ExecutorService executorService =
+        Executors.newFixedThreadPool(
+            CALLERS,
+            runnable -> {
+              final Thread caller = new Thread(runnable);
+              callers.add(caller);
+              return caller;
+            });
+    final List<Future<Integer>> results = new ArrayList<>();
+    try {
+      for (int i = 0; i < CALLERS; i++) {
+        results.add(executorService.submit(circuitBreakerExecutor::execute));
+      }
+      awaitWaiting(callers);
+      release.countDown();
+      return results;
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  /** Waits, for up to 5 seconds, until all {@link #CALLERS} callers are waiting. */
+  private static void awaitWaiting(List<Thread> callers) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (callers.size() < CALLERS
+        || callers.stream().anyMatch(caller -> caller.getState() != Thread.State.WAITING)) {
+      assertThat(System.nanoTime() - deadline).isLessThan(0L);
+      Thread.sleep(1);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.aspirecsl.labs;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A unit test class for {@link CountBasedSlidingWindow}
+ *
+ * @author anoopr
+ */
+public class CountBasedSlidingWindowTest {
+
+  @Test
+  public void doesNotTripUntilTheMinimumNumberOfCallsIsRecorded() {
+    final CountBasedSlidingWindow window = new CountBasedSlidingWindow(10, 4, 50f, 100f);
+
+    assertThat(window.record(true, false)).isFalse();
+    assertThat(window.record(true, false)).isFalse();
+    assertThat(window.record(true, false)).isFalse();
+    assertThat(window.record(true, false)).isTrue();
+  }
+
+  @Test
+  public void tripsOnceTheErrorRateReachesTheThreshold() {
+    final CountBasedSlidingWindow window = new CountBasedSlidingWindow(5, 5, 40f, 100f);
+    final boolean[] outcomes = {true, false, false, false, false, false, true, true};
+    final boolean[] result = new boolean[outcomes.length];
+    for (int i = 0; i < outcomes.length; i++) {
+      result[i] = window.record(outcomes[i], false);
+    }
+
+    // 1 of 5, then none once the first error is evicted, then 1 of 5 and finally 2 of 5
+    assertThat(result[4]).isFalse();
+    assertThat(result[5]).isFalse();
+    assertThat(result[6]).isFalse();
+    assertThat(result[7]).isTrue();
+  }
+
+  @Test
+  public void evictsTheOldestOutcomeAcrossWordBoundaries() {
+    final CountBasedSlidingWindow window = new CountBasedSlidingWindow(70, 70, 100f, 100f);
+    for (int i = 0; i < 69; i++) {
+      window.record(true, false);
+    }
+    assertThat(window.record(true, false)).isTrue();
+
+    // every error is evicted in turn, so the window never again holds errors only
+    for (int i = 0; i < 140; i++) {
+      assertThat(window.record(i % 2 == 1, false)).isFalse();
+    }
+  }
+
+  @Test
+  public void forgetsEveryOutcomeOnReset() {
+    final CountBasedSlidingWindow window = new CountBasedSlidingWindow(4, 2, 50f, 100f);
+    window.record(true, false);
+    window.reset();
+
+    assertThat(window.record(false, false)).isFalse();
+    assertThat(window.record(false, false)).isFalse();
+    assertThat(window.record(true, false)).isFalse();
+    assertThat(window.record(true, false)).isTrue();
+  }
+
+  @Test
+  public void tripsOnTheSlowCallRateIndependentlyOfTheErrorRate() {
+    final CountBasedSlidingWindow window = new CountBasedSlidingWindow(4, 4, 50f, 75f);
+
+    assertThat(window.record(false, true)).isFalse();
+    assertThat(window.record(false, true)).isFalse();
+    assertThat(window.record(false, false)).isFalse();
+    assertThat(window.record(false, true)).isTrue();
+  }
+}
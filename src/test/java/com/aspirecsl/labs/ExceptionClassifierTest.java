@@ -0,0 +1,50 @@
+package com.aspirecsl.labs;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A unit test class for {@link ExceptionClassifier}
+ *
+ * @author anoopr
+ */
+public class ExceptionClassifierTest {
+
+  @Test
+  public void deemsAnyRuntimeExceptionErroneousIfNoExceptionsAreSpecified() {
+    final ExceptionClassifier classifier = new ExceptionClassifier(Collections.emptyList());
+
+    assertThat(classifier.isErroneous(new RuntimeException())).isTrue();
+    assertThat(classifier.isErroneous(new IllegalStateException())).isTrue();
+    assertThat(classifier.isErroneous(new IOException())).isFalse();
+  }
+
+  @Test
+  public void deemsSubclassesOfTheSpecifiedExceptionsErroneous() {
+    final ExceptionClassifier classifier =
+        new ExceptionClassifier(Arrays.asList(IOException.class, IllegalStateException.class));
+
+    assertThat(classifier.isErroneous(new IOException())).isTrue();
+    assertThat(classifier.isErroneous(new SocketTimeoutException())).isTrue();
+    assertThat(classifier.isErroneous(new IllegalStateException())).isTrue();
+    assertThat(classifier.isErroneous(new IllegalArgumentException())).isFalse();
+    assertThat(classifier.isErroneous(new TimeoutException())).isFalse();
+  }
+
+  @Test
+  public void classifiesTheSameExceptionClassConsistently() {
+    final ExceptionClassifier classifier =
+        new ExceptionClassifier(Collections.singletonList(IOException.class));
+    for (int i = 0; i < 3; i++) {
+      assertThat(classifier.isErroneous(new SocketTimeoutException())).isTrue();
+      assertThat(classifier.isErroneous(new IllegalStateException())).isFalse();
+    }
+  }
+}
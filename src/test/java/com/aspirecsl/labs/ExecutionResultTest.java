@@ -0,0 +1,66 @@
+package com.aspirecsl.labs;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A unit test class for {@link ExecutionResult} as returned by {@link
+ * CircuitBreakerExecutor#tryExecute()}
+ *
+ * @author anoopr
+ */
+public class ExecutionResultTest {
+
+  private static final String TASK_ID = "SOME_TASK";
+
+  @Test
+  public void returnsTheValueOfATaskThatSucceeds() {
+    final ExecutionResult<Integer> result =
+        CircuitBreakerExecutor.create(TASK_ID, () -> 1, 1).tryExecute();
+
+    assertThat(result.getStatus()).isEqualTo(ExecutionResult.Status.SUCCESS);
+    assertThat(result.getValue()).isEqualTo(1);
+    assertThat(result.getFailure()).isNull();
+  }
+
+  @Test
+  public void returnsTheExceptionOfATaskThatFails() {
+    final IllegalStateException failure = new IllegalStateException();
+    final ExecutionResult<Integer> result =
+        CircuitBreakerExecutor.<Integer>create(
+                TASK_ID,
+                () -> {
+                  throw failure;
+                },
+                1)
+            .tryExecute();
+
+    assertThat(result.isFailure()).isTrue();
+    assertThat(result.getFailure()).isSameAs(failure);
+    assertThat(result.getValue()).isNull();
+  }
+
+  @Test
+  public void returnsTheSharedRejectionOnceTheCircuitIsBroken() {
+    final int[] calls = {0};
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              calls[0]++;
+              throw new RuntimeException();
+            },
+            2);
+    final ExecutionResult<?>[] results = new ExecutionResult<?>[5];
+    for (int i = 0; i < results.length; i++) {
+      results[i] = circuitBreakerExecutor.tryExecute();
+    }
+
+    assertThat(calls[0]).isEqualTo(2);
+    assertThat(results[1].isFailure()).isTrue();
+    assertThat(results[2].isRejected()).isTrue();
+    assertThat(results[2]).isSameAs(results[4]);
+    assertThat(results[2]).isSameAs(ExecutionResult.rejected());
+  }
+}
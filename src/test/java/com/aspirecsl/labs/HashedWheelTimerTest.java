@@ -0,0 +1,65 @@
+package com.aspirecsl.labs;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A unit test class for {@link HashedWheelTimer}
+ *
+ * @author anoopr
+ */
+public class HashedWheelTimerTest {
+
+  @Test
+  public void runsATaskOnceItsDelayElapses() throws Exception {
+    final CountDownLatch fired = new CountDownLatch(1);
+    final long scheduledAt = System.nanoTime();
+
+    HashedWheelTimer.shared().schedule(fired::countDown, TimeUnit.MILLISECONDS.toNanos(20));
+
+    assertThat(fired.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(System.nanoTime() - scheduledAt).isGreaterThanOrEqualTo(20_000_000L);
+  }
+
+  @Test
+  public void runsATaskThatSpansSeveralRotationsOfTheWheel() throws Exception {
+    final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1_000_000L, 4);
+    final CountDownLatch fired = new CountDownLatch(1);
+    final long scheduledAt = System.nanoTime();
+
+    timer.schedule(fired::countDown, TimeUnit.MILLISECONDS.toNanos(30));
+
+    assertThat(fired.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(System.nanoTime() - scheduledAt).isGreaterThanOrEqualTo(30_000_000L);
+  }
+
+  @Test
+  public void doesNotRunACancelledTask() throws Exception {
+    final int[] runs = {0};
+    final HashedWheelTimer.Timeout timeout =
+        HashedWheelTimer.shared().schedule(() -> runs[0]++, TimeUnit.MILLISECONDS.toNanos(10));
+
+    assertThat(timeout.cancel()).isTrue();
+    assertThat(timeout.isCancelled()).isTrue();
+
+    final CountDownLatch later = new CountDownLatch(1);
+    HashedWheelTimer.shared().schedule(later::countDown, TimeUnit.MILLISECONDS.toNanos(30));
+    assertThat(later.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(runs[0]).isEqualTo(0);
+  }
+
+  @Test
+  public void cannotCancelATaskThatHasRun() throws Exception {
+    final CountDownLatch fired = new CountDownLatch(1);
+    final HashedWheelTimer.Timeout timeout =
+        HashedWheelTimer.shared().schedule(fired::countDown, 0L);
+
+    assertThat(fired.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(timeout.cancel()).isFalse();
+    assertThat(timeout.isCancelled()).isFalse();
+  }
+}
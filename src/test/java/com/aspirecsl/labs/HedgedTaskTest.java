@@ -0,0 +1,214 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for {@link HedgedTask}
+ *
+ * @author anoopr
+ */
+public class HedgedTaskTest {
+
+  private final ExecutorService pool = Executors.newCachedThreadPool();
+
+  @After
+  public void shutDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void doesNotHedgeUntilEnoughLatenciesHaveBeenRecorded() throws Exception {
+    final HedgedTask<Integer> hedgedTask = HedgedTask.create(() -> 7, pool, 90, 1);
+
+    assertThat(hedgedTask.call()).isEqualTo(7);
+    assertThat(hedgedTask.getHedgeDelay().isPresent()).isFalse();
+    assertThat(hedgedTask.getHedgeCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void hedgesASlowAttemptAndCancelsTheLoser() throws Exception {
+    final long[] now = {0L};
+    final AtomicInteger attempts = new AtomicInteger();
+    final AtomicBoolean loserInterrupted = new AtomicBoolean();
+    final CountDownLatch loserDone = new CountDownLatch(1);
+    final HedgedTask<Integer> hedgedTask =
+        new HedgedTask<>(
+            () -> {
+              if (attempts.incrementAndGet() == 101) {
+                try {
+                  Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                  loserInterrupted.set(true);
+                  throw e;
+                } finally {
+                  loserDone.countDown();
+                }
+              }
+              return attempts.get();
+            },
+            pool,
+            50,
+            1,
+            () -> now[0]);
+    for (int i = 0; i < 100; i++) {
+      hedgedTask.call();
+    }
+    now[0] = Duration.ofSeconds(1).toNanos();
+    assertThat(hedgedTask.getHedgeDelay().get()).isEqualTo(Duration.ofNanos(1));
+
+    assertThat(hedgedTask.call()).isEqualTo(102);
+    assertThat(hedgedTask.getHedgeCount()).isEqualTo(1);
+    assertThat(loserDone.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(loserInterrupted.get()).isTrue();
+  }
+
+  @Test
+  public void hedgesAreCappedAtTheHedgeRatio() throws Exception {
+    final long[] now = {0L};
+    final AtomicInteger calls = new AtomicInteger();
+    final List<HedgedTask<Integer>> hedgedTask = new ArrayList<>();
+    hedgedTask.add(
+        new HedgedTask<>(
+            () -> {
+              // every call outlasts the hedge delay until its hedge is decided
+              if (now[0] > 0) {
+                awaitHedgeDecisions(hedgedTask.get(0), calls.get());
+              }
+              return 7;
+            },
+            pool,
+            50,
+            0.1,
+            () -> now[0]));
+    for (int i = 0; i < 100; i++) {
+      hedgedTask.get(0).call();
+    }
+    now[0] = Duration.ofSeconds(1).toNanos();
+
+    for (int i = 0; i < 30; i++) {
+      calls.incrementAndGet();
+      hedgedTask.get(0).call();
+    }
+
+    // a burst of ten from the full bucket, then one per ten calls
+    assertThat(hedgedTask.get(0).getHedgeCount()).isEqualTo(12L);
+    assertThat(hedgedTask.get(0).getBudgetExhaustedCount()).isEqualTo(18L);
+  }
+
+  @Test
+  public void returnsTheHedgeWithoutWaitingForAFirstAttemptThatIgnoresInterrupts()
+      throws Exception {
+    final long[] now = {0L};
+    final AtomicInteger attempts = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    final HedgedTask<Integer> hedgedTask =
+        new HedgedTask<>(
+            () -> {
+              if (attempts.incrementAndGet() == 101) {
+                awaitIgnoringInterrupts(release);
+              }
+              return attempts.get();
+            },
+            pool,
+            50,
+            1,
+            () -> now[0]);
+    for (int i = 0; i < 100; i++) {
+      hedgedTask.call();
+    }
+    now[0] = Duration.ofSeconds(1).toNanos();
+
+    try {
+      assertThat(hedgedTask.call()).isEqualTo(102);
+      assertThat(release.getCount()).isEqualTo(1);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void runsCallsThatCannotBeHedgedOnTheCallingThread() throws Exception {
+    final List<Thread> threads = new ArrayList<>();
+    final HedgedTask<Integer> hedgedTask =
+        HedgedTask.create(
+            () -> {
+              threads.add(Thread.currentThread());
+              return 7;
+            },
+            pool,
+            90,
+            1);
+
+    assertThat(hedgedTask.call()).isEqualTo(7);
+    assertThat(threads).containsExactly(Thread.currentThread());
+  }
+
+  @Test
+  public void aLogicalCallIsRecordedOnceWithTheBreaker() {
+    final AtomicInteger attempts = new AtomicInteger();
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            "SOME_TASK",
+            HedgedTask.create(
+                () -> {
+                  attempts.incrementAndGet();
+                  throw new IllegalStateException();
+                },
+                pool,
+                90,
+                1),
+            CircuitBreakerConfig.builder().errorToleranceFactor(2).build());
+
+    assertThat(catchThrowable(circuitBreakerExecutor::execute))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.CLOSED);
+    assertThat(catchThrowable(circuitBreakerExecutor::execute))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+    assertThat(attempts.get()).isEqualTo(2);
+  }
+
+  /** Waits until the cap has either launched or refused the supplied number of hedges. */
+  private static void awaitHedgeDecisions(HedgedTask<Integer> hedgedTask, long decisions) {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (hedgedTask.getHedgeCount() + hedgedTask.getBudgetExhaustedCount() < decisions) {
+      assertThat(System.nanoTime() - deadline).isLessThan(0L);
+      Thread.yield();
+    }
+  }
+
+  /** Waits for the latch like blocking I/O that ignores interrupts, for up to five seconds. */
+  private static void awaitIgnoringInterrupts(CountDownLatch latch) {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (latch.getCount() > 0 && System.nanoTime() - deadline < 0) {
+      try {
+        latch.await(10, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ignored) {
+        // keeps waiting
+      }
+    }
+  }
+
+  @Test
+  public void latencyBucketsOverstateByAtMostAQuarter() {
+    for (long nanos : new long[] {0, 1, 7, 8, 9, 1_000, 123_456_789, Long.MAX_VALUE / 3}) {
+      final long upperBound = LatencyHistogram.upperBound(LatencyHistogram.bucket(nanos));
+      assertThat(upperBound).isGreaterThan(nanos);
+      assertThat(upperBound - nanos).isLessThanOrEqualTo(Math.max(1, nanos / 4));
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for {@link KeyedCircuitBreakerExecutor}
+ *
+ * @author anoopr
+ */
+public class KeyedCircuitBreakerExecutorTest {
+
+  private static final Callable<Integer> FAILING =
+      () -> {
+        throw new IllegalStateException();
+      };
+
+  private static CircuitBreakerConfig.Builder config(long[] now) {
+    return CircuitBreakerConfig.builder()
+        .errorToleranceFactor(2)
+        .waitDurationInOpenState(Duration.ofSeconds(10))
+        .clock(() -> now[0]);
+  }
+
+  @Test
+  public void tripsTheBreakerOfTheFailingKeyOnly() throws Exception {
+    final KeyedCircuitBreakerExecutor executor =
+        KeyedCircuitBreakerExecutor.create("SHARDS", 16, config(new long[1]).build());
+
+    catchThrowable(() -> executor.execute(1L, FAILING));
+    assertThat(executor.getState(1L)).isEqualTo(CircuitState.CLOSED);
+    catchThrowable(() -> executor.execute(1L, FAILING));
+
+    assertThat(executor.getState(1L)).isEqualTo(CircuitState.OPEN);
+    assertThat(catchThrowable(() -> executor.execute(1L, () -> 1)))
+        .isInstanceOf(CallNotPermittedException.class);
+    assertThat(executor.getState(2L)).isEqualTo(CircuitState.CLOSED);
+    assertThat(executor.execute(2L, () -> 2)).isEqualTo(2);
+    assertThat(executor.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void resetsTheErrorCountOfAKeyOnAPass() throws Exception {
+    final KeyedCircuitBreakerExecutor executor =
+        KeyedCircuitBreakerExecutor.create("CUSTOMERS", 16, config(new long[1]).build());
+
+    catchThrowable(() -> executor.execute("customer-1", FAILING));
+    executor.execute("customer-1", () -> 1);
+    catchThrowable(() -> executor.execute("customer-1", FAILING));
+
+    assertThat(executor.getState("customer-1")).isEqualTo(CircuitState.CLOSED);
+  }
+
+  @Test
+  public void probesAnOpenKeyOnceTheWaitDurationElapses() throws Exception {
+    final long[] now = {0L};
+    final KeyedCircuitBreakerExecutor executor =
+        KeyedCircuitBreakerExecutor.create(
+            "SHARDS", 16, config(now).permittedCallsInHalfOpenState(2).build());
+    catchThrowable(() -> executor.execute(7L, FAILING));
+    catchThrowable(() -> executor.execute(7L, FAILING));
+
+    now[0] = Duration.ofSeconds(10).toNanos();
+    assertThat(executor.execute(7L, () -> 1)).isEqualTo(1);
+    assertThat(executor.getState(7L)).isEqualTo(CircuitState.HALF_OPEN);
+    assertThat(executor.execute(7L, () -> 1)).isEqualTo(1);
+    assertThat(executor.getState(7L)).isEqualTo(CircuitState.CLOSED);
+
+    catchThrowable(() -> executor.execute(7L, FAILING));
+    catchThrowable(() -> executor.execute(7L, FAILING));
+    now[0] += Duration.ofSeconds(10).toNanos();
+    catchThrowable(() -> executor.execute(7L, FAILING));
+    assertThat(executor.getState(7L)).isEqualTo(CircuitState.OPEN);
+  }
+
+  @Test
+  public void failsOpenOnceAtCapacity() throws Exception {
+    final KeyedCircuitBreakerExecutor executor =
+        KeyedCircuitBreakerExecutor.create("SHARDS", 2, config(new long[1]).build());
+    for (long key = 0; key < 4; key++) {
+      final long k = key;
+      catchThrowable(() -> executor.execute(k, FAILING));
+      catchThrowable(() -> executor.execute(k, FAILING));
+    }
+
+    assertThat(executor.size()).isEqualTo(2);
+    assertThat(executor.isSaturated()).isTrue();
+    assertThat(executor.getState(0L)).isEqualTo(CircuitState.OPEN);
+    assertThat(executor.getState(1L)).isEqualTo(CircuitState.OPEN);
+    assertThat(executor.getState(3L)).isEqualTo(CircuitState.CLOSED);
+    assertThat(executor.execute(3L, () -> 3)).isEqualTo(3);
+  }
+
+  @Test
+  public void givesBackTheSlotOfAKeyOnceItsBreakerRecovers() throws Exception {
+    final long[] now = {0L};
+    final KeyedCircuitBreakerExecutor executor =
+        KeyedCircuitBreakerExecutor.create("SHARDS", 1, config(now).build());
+    catchThrowable(() -> executor.execute(1L, FAILING));
+    assertThat(executor.size()).isEqualTo(1);
+    executor.execute(1L, () -> 1);
+    assertThat(executor.size()).isEqualTo(0);
+
+    catchThrowable(() -> executor.execute(2L, FAILING));
+    catchThrowable(() -> executor.execute(2L, FAILING));
+    catchThrowable(() -> executor.execute(3L, FAILING));
+    catchThrowable(() -> executor.execute(3L, FAILING));
+    assertThat(executor.isSaturated()).isTrue();
+    assertThat(executor.getState(2L)).isEqualTo(CircuitState.OPEN);
+    assertThat(executor.getState(3L)).isEqualTo(CircuitState.CLOSED);
+
+    now[0] = Duration.ofSeconds(10).toNanos();
+    executor.execute(2L, () -> 2);
+    assertThat(executor.isSaturated()).isFalse();
+    catchThrowable(() -> executor.execute(3L, FAILING));
+    catchThrowable(() -> executor.execute(3L, FAILING));
+    assertThat(executor.getState(3L)).isEqualTo(CircuitState.OPEN);
+  }
+
+  @Test
+  public void reusesTheSlotsGivenBackByManyKeys() throws Exception {
+    final KeyedCircuitBreakerExecutor executor =
+        KeyedCircuitBreakerExecutor.create("CUSTOMERS", 8, config(new long[1]).build());
+    for (int i = 0; i < 10_000; i++) {
+      final String key = "customer-" + i;
+      catchThrowable(() -> executor.execute(key, FAILING));
+      if (i % 3 != 0) {
+        executor.execute(key, () -> 1);
+      }
+      if (i % 3 == 0 && i % 2 == 0) {
+        executor.execute("customer-" + (i - 6), () -> 1);
+      }
+    }
+    assertThat(executor.size()).isLessThanOrEqualTo(8);
+
+    for (int i = 0; i < 10_000; i += 3) {
+      executor.execute("customer-" + i, () -> 1);
+    }
+    assertThat(executor.size()).isEqualTo(0);
+    catchThrowable(() -> executor.execute("customer-new", FAILING));
+    catchThrowable(() -> executor.execute("customer-new", FAILING));
+    assertThat(executor.getState("customer-new")).isEqualTo(CircuitState.OPEN);
+  }
+
+  @Test
+  public void claimsOneSlotPerKeyWhenClaimedConcurrently() throws Exception {
+    final KeyedCircuitBreakerExecutor executor =
+        KeyedCircuitBreakerExecutor.create(
+            "SHARDS", 1_000, config(new long[1]).errorToleranceFactor(100).build());
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      final Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  return;
+                }
+                for (long key = 0; key < 500; key++) {
+                  final long k = key;
+                  catchThrowable(() -> executor.execute(k, FAILING));
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(executor.size()).isEqualTo(500);
+    for (long key = 0; key < 500; key++) {
+      executor.execute(key, () -> 1);
+    }
+    assertThat(executor.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void countsAnErrorThrownByTheTask() {
+    final KeyedCircuitBreakerExecutor executor =
+        KeyedCircuitBreakerExecutor.create("SHARDS", 16, config(new long[1]).build());
+    final Callable<Integer> throwingAnError =
+        () -> {
+          throw new AssertionError();
+        };
+
+    assertThat(catchThrowable(() -> executor.execute(5L, throwingAnError)))
+        .isInstanceOf(AssertionError.class);
+    catchThrowable(() -> executor.execute(5L, throwingAnError));
+
+    assertThat(executor.getState(5L)).isEqualTo(CircuitState.OPEN);
+  }
+}
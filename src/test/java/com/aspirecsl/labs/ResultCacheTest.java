@@ -0,0 +1,106 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for {@link ResultCache}
+ *
+ * @author anoopr
+ */
+public class ResultCacheTest {
+
+  @Test
+  public void servesHitsWithoutExecutingTheTaskUntilTheEntryExpires() throws Exception {
+    final long[] now = {0L};
+    final AtomicInteger calls = new AtomicInteger();
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            "SOME_TASK", calls::incrementAndGet, CircuitBreakerConfig.ofDefaults());
+    final ResultCache<String, Integer> cache =
+        new ResultCache<>(10, Duration.ofSeconds(30), () -> now[0]);
+
+    assertThat(cache.get("a", circuitBreakerExecutor)).isEqualTo(1);
+    assertThat(cache.get("a", circuitBreakerExecutor)).isEqualTo(1);
+    now[0] = Duration.ofSeconds(29).toNanos();
+    assertThat(cache.get("a", circuitBreakerExecutor)).isEqualTo(1);
+    assertThat(calls.get()).isEqualTo(1);
+
+    now[0] = Duration.ofSeconds(30).toNanos();
+    assertThat(cache.get("a", circuitBreakerExecutor)).isEqualTo(2);
+    assertThat(cache.getHitCount()).isEqualTo(2);
+    assertThat(cache.getMissCount()).isEqualTo(2);
+    assertThat(cache.getHitRate()).isEqualTo(0.5);
+  }
+
+  @Test
+  public void hitsAreNotRecordedWithTheBreaker() throws Exception {
+    final boolean[] failing = {false};
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            "SOME_TASK",
+            () -> {
+              if (failing[0]) {
+                throw new IllegalStateException();
+              }
+              return 7;
+            },
+            CircuitBreakerConfig.builder().errorToleranceFactor(1).build());
+    final ResultCache<String, Integer> cache = ResultCache.create(10, Duration.ofMinutes(1));
+
+    assertThat(cache.get("a", circuitBreakerExecutor)).isEqualTo(7);
+    failing[0] = true;
+    assertThat(cache.get("a", circuitBreakerExecutor)).isEqualTo(7);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.CLOSED);
+
+    assertThat(catchThrowable(() -> cache.get("b", circuitBreakerExecutor)))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+    assertThat(catchThrowable(() -> cache.get("b", circuitBreakerExecutor)))
+        .isInstanceOf(CallNotPermittedException.class);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void evictsAnEntryNotReferencedSinceTheLastSweep() throws Exception {
+    final ResultCache<String, String> cache = ResultCache.create(3, Duration.ofMinutes(1));
+    cache.get("a", () -> "a");
+    cache.get("b", () -> "b");
+    cache.get("c", () -> "c");
+    cache.get("a", () -> "x");
+    cache.get("c", () -> "x");
+
+    cache.get("d", () -> "d");
+
+    assertThat(cache.size()).isEqualTo(3);
+    assertThat(cache.get("a", () -> "x")).isEqualTo("a");
+    assertThat(cache.get("c", () -> "x")).isEqualTo("c");
+    assertThat(cache.get("d", () -> "x")).isEqualTo("d");
+    assertThat(cache.get("b", () -> "reloaded")).isEqualTo("reloaded");
+  }
+
+  @Test
+  public void invalidatedEntriesAreReloadedAndTheirSlotsReused() throws Exception {
+    final ResultCache<String, String> cache = ResultCache.create(2, Duration.ofMinutes(1));
+    cache.get("a", () -> "a");
+    cache.get("b", () -> "b");
+    cache.invalidate("a");
+
+    assertThat(cache.get("a", () -> "reloaded")).isEqualTo("reloaded");
+    cache.get("c", () -> "c");
+    assertThat(cache.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void rejectsANonPositiveTimeToLive() {
+    assertThat(catchThrowable(() -> ResultCache.create(10, Duration.ZERO)))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThat(catchThrowable(() -> ResultCache.create(0, Duration.ofSeconds(1))))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
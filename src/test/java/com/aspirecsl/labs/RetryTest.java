@@ -0,0 +1,170 @@
+package com.aspirecsl.labs;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for {@link Retry}
+ *
+ * @author anoopr
+ */
+public class RetryTest {
+
+  private final List<Long> sleeps = new ArrayList<>();
+
+  @Test
+  public void retriesWithJitteredExponentialBackoffUntilACallSucceeds() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    final Retry retry =
+        Retry.builder()
+            .maxAttempts(4)
+            .exponentialBackoff(Duration.ofMillis(100), Duration.ofMillis(250))
+            .sleeper(sleeps::add)
+            .build();
+
+    final int result =
+        retry.execute(
+            () -> {
+              if (calls.incrementAndGet() < 4) {
+                throw new IllegalStateException();
+              }
+              return 7;
+            });
+
+    assertThat(result).isEqualTo(7);
+    assertThat(retry.getRetryCount()).isEqualTo(3);
+    assertThat(sleeps).hasSize(3);
+    assertThat(sleeps.get(0)).isBetween(0L, Duration.ofMillis(100).toNanos());
+    assertThat(sleeps.get(1)).isBetween(0L, Duration.ofMillis(200).toNanos());
+    assertThat(sleeps.get(2)).isBetween(0L, Duration.ofMillis(250).toNanos());
+  }
+
+  @Test
+  public void throwsTheLastFailureOnceTheAttemptsAreUsedUp() {
+    final AtomicInteger calls = new AtomicInteger();
+    final Retry retry = Retry.builder().maxAttempts(3).sleeper(sleeps::add).build();
+
+    final Throwable thrown =
+        catchThrowable(
+            () ->
+                retry.execute(
+                    () -> {
+                      throw new IllegalStateException("attempt " + calls.incrementAndGet());
+                    }));
+
+    assertThat(thrown).isInstanceOf(IllegalStateException.class).hasMessage("attempt 3");
+  }
+
+  @Test
+  public void doesNotRetryExceptionsThatAreNotRetryable() {
+    final AtomicInteger calls = new AtomicInteger();
+    final Retry retry =
+        Retry.builder()
+            .retryOnExceptions(Collections.singletonList(IOException.class))
+            .sleeper(sleeps::add)
+            .build();
+
+    assertThat(
+            catchThrowable(
+                () ->
+                    retry.execute(
+                        () -> {
+                          calls.incrementAndGet();
+                          throw new IllegalStateException();
+                        })))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(calls.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void neverRetriesWhenTheCircuitIsOpen() {
+    final AtomicInteger calls = new AtomicInteger();
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            "SOME_TASK",
+            () -> {
+              calls.incrementAndGet();
+              throw new IllegalStateException();
+            },
+            CircuitBreakerConfig.builder().errorToleranceFactor(2).build());
+    final Retry retry = Retry.builder().maxAttempts(5).sleeper(sleeps::add).build();
+
+    assertThat(catchThrowable(() -> retry.execute(circuitBreakerExecutor)))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(calls.get()).isEqualTo(2);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+
+    assertThat(catchThrowable(() -> retry.execute(circuitBreakerExecutor)))
+        .isInstanceOf(CallNotPermittedException.class);
+    assertThat(retry.getRetryCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void retriesAreBoundedByTheBudgetAndRefilledBySuccessfulCalls() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    final Retry retry =
+        Retry.builder().maxAttempts(2).retryBudget(0.5, 2).sleeper(sleeps::add).build();
+    final Runnable fail =
+        () -> {
+          try {
+            retry.execute(
+                () -> {
+                  calls.incrementAndGet();
+                  throw new IllegalStateException();
+                });
+          } catch (Exception e) {
+            // expected
+          }
+        };
+
+    fail.run();
+    fail.run();
+    assertThat(calls.get()).isEqualTo(4);
+    assertThat(retry.getAvailableRetries()).isEqualTo(0);
+
+    fail.run();
+    assertThat(calls.get()).isEqualTo(5);
+    assertThat(retry.getBudgetExhaustedCount()).isEqualTo(1);
+
+    retry.execute(() -> 1);
+    retry.execute(() -> 1);
+    assertThat(retry.getAvailableRetries()).isEqualTo(1);
+    fail.run();
+    assertThat(calls.get()).isEqualTo(7);
+  }
+
+  @Test
+  public void refillsTheBudgetAtSmallRatios() throws Exception {
+    final Retry retry =
+        Retry.builder().maxAttempts(2).retryBudget(0.0001, 1).sleeper(sleeps::add).build();
+    catchThrowable(
+        () ->
+            retry.execute(
+                () -> {
+                  throw new IllegalStateException();
+                }));
+    assertThat(retry.getAvailableRetries()).isEqualTo(0);
+
+    for (int i = 0; i < 9_999; i++) {
+      retry.execute(() -> 1);
+    }
+    assertThat(retry.getAvailableRetries()).isEqualTo(0);
+    retry.execute(() -> 1);
+    assertThat(retry.getAvailableRetries()).isEqualTo(1);
+  }
+
+  @Test
+  public void rejectsABudgetRatioBelowTheResolutionOfTheBudget() {
+    assertThat(catchThrowable(() -> Retry.builder().retryBudget(0.0000001, 1)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
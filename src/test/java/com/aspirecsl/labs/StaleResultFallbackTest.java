@@ -0,0 +1,133 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for the stale result fallback of {@link CircuitBreakerExecutor}
+ *
+ * @author anoopr
+ */
+public class StaleResultFallbackTest {
+
+  private static final String TASK_ID = "SOME_TASK";
+
+  @Test
+  public void servesTheLastResultWhileOpenUpToTheMaxStaleness() throws Exception {
+    final long[] now = {0L};
+    final boolean[] failing = {false};
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              if (failing[0]) {
+                throw new IllegalStateException();
+              }
+              return 7;
+            },
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(1)
+                .waitDurationInOpenState(Duration.ofMinutes(1))
+                .staleResultFallback(Duration.ofSeconds(30))
+                .clock(() -> now[0])
+                .build());
+
+    assertThat(circuitBreakerExecutor.execute()).isEqualTo(7);
+    failing[0] = true;
+    assertThat(catchThrowable(circuitBreakerExecutor::execute))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+
+    now[0] = Duration.ofSeconds(30).toNanos();
+    assertThat(circuitBreakerExecutor.execute()).isEqualTo(7);
+    final ExecutionResult<Integer> result = circuitBreakerExecutor.tryExecute();
+    assertThat(result.isStale()).isTrue();
+    assertThat(result.getValue()).isEqualTo(7);
+
+    now[0] = Duration.ofSeconds(31).toNanos();
+    assertThat(catchThrowable(circuitBreakerExecutor::execute))
+        .isInstanceOf(CallNotPermittedException.class);
+    assertThat(circuitBreakerExecutor.tryExecute().isRejected()).isTrue();
+  }
+
+  @Test
+  public void agesTheLastResultFromTheStartOfTheCallThatReturnedIt() throws Exception {
+    final long[] now = {0L};
+    final boolean[] failing = {false};
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              if (failing[0]) {
+                throw new IllegalStateException();
+              }
+              now[0] += Duration.ofSeconds(10).toNanos();
+              return 7;
+            },
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(1)
+                .waitDurationInOpenState(Duration.ofMinutes(1))
+                .staleResultFallback(Duration.ofSeconds(30))
+                .clock(() -> now[0])
+                .build());
+
+    assertThat(circuitBreakerExecutor.execute()).isEqualTo(7);
+    failing[0] = true;
+    catchThrowable(circuitBreakerExecutor::execute);
+
+    now[0] = Duration.ofSeconds(30).toNanos();
+    assertThat(circuitBreakerExecutor.execute()).isEqualTo(7);
+    now[0] = Duration.ofSeconds(31).toNanos();
+    assertThat(catchThrowable(circuitBreakerExecutor::execute))
+        .isInstanceOf(CallNotPermittedException.class);
+  }
+
+  @Test
+  public void rejectsWhenNoResultHasBeenReturnedYet() {
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> {
+              throw new IllegalStateException();
+            },
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(1)
+                .staleResultFallback(Duration.ofSeconds(30))
+                .build());
+
+    catchThrowable(circuitBreakerExecutor::execute);
+
+    assertThat(catchThrowable(circuitBreakerExecutor::execute))
+        .isInstanceOf(CallNotPermittedException.class);
+  }
+
+  @Test
+  public void servesTheLastAsynchronousResultWhileOpen() throws Exception {
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            TASK_ID,
+            () -> 0,
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(1)
+                .staleResultFallback(Duration.ofMinutes(1))
+                .build());
+    final CompletableFuture<Integer> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new IllegalStateException());
+
+    circuitBreakerExecutor.executeAsync(() -> CompletableFuture.completedFuture(3));
+    circuitBreakerExecutor.executeAsync(() -> failed);
+
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+    assertThat(
+            circuitBreakerExecutor
+                .executeAsync(() -> CompletableFuture.completedFuture(4))
+                .toCompletableFuture()
+                .get())
+        .isEqualTo(3);
+  }
+}
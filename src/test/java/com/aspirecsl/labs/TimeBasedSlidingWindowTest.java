@@ -0,0 +1,80 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A unit test class for {@link TimeBasedSlidingWindow}
+ *
+ * @author anoopr
+ */
+public class TimeBasedSlidingWindowTest {
+
+  private static final long ONE_SECOND = Duration.ofSeconds(1).toNanos();
+
+  @Test
+  public void tripsOnceTheErrorRateReachesTheThreshold() {
+    final long[] now = {0};
+    final TimeBasedSlidingWindow window =
+        new TimeBasedSlidingWindow(10 * ONE_SECOND, 10, 4, 50f, 100f, () -> now[0]);
+
+    assertThat(window.record(false, false)).isFalse();
+    assertThat(window.record(false, false)).isFalse();
+    assertThat(window.record(true, false)).isFalse();
+    now[0] += ONE_SECOND;
+    assertThat(window.record(true, false)).isTrue();
+  }
+
+  @Test
+  public void forgetsTheCallsOfExpiredBuckets() {
+    final long[] now = {0};
+    final TimeBasedSlidingWindow window =
+        new TimeBasedSlidingWindow(10 * ONE_SECOND, 10, 4, 50f, 100f, () -> now[0]);
+    for (int i = 0; i < 3; i++) {
+      window.record(true, false);
+    }
+
+    // the errors of the first second drop out of the window once ten seconds have passed
+    now[0] += 10 * ONE_SECOND;
+    window.record(false, false);
+    window.record(false, false);
+
+    assertThat(window.record(true, false)).isFalse();
+    assertThat(window.record(true, false)).isTrue();
+  }
+
+  @Test
+  public void countsEveryOutcomeRecordedConcurrently() throws Exception {
+    final TimeBasedSlidingWindow window =
+        new TimeBasedSlidingWindow(10 * ONE_SECOND, 10, 80_001, 50f, 100f, () -> 0L);
+    final int threads = 8;
+    final CountDownLatch start = new CountDownLatch(1);
+    final ExecutorService pool = Executors.newFixedThreadPool(threads);
+    for (int i = 0; i < threads; i++) {
+      pool.execute(
+          () -> {
+            try {
+              start.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            for (int j = 0; j < 10_000; j++) {
+              window.record(j % 2 == 0, false);
+            }
+          });
+    }
+    start.countDown();
+    pool.shutdown();
+    assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+    // 80,000 calls with 40,000 errors are recorded, so one more error reaches the minimum
+    assertThat(window.record(true, false)).isTrue();
+  }
+}
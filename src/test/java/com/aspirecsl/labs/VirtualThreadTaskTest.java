@@ -0,0 +1,119 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * A unit test class for {@link VirtualThreadTask}
+ *
+ * @author anoopr
+ */
+public class VirtualThreadTaskTest {
+
+  @Test
+  public void returnsTheResultOfTheTaskRunOnAnotherThread() throws Exception {
+    final Thread caller = Thread.currentThread();
+    final VirtualThreadTask<Boolean> virtualThreadTask =
+        VirtualThreadTask.create(() -> Thread.currentThread() != caller, Duration.ofSeconds(5));
+
+    assertThat(virtualThreadTask.call()).isTrue();
+  }
+
+  @Test
+  public void runsTheTaskOnTheKindOfThreadItReports() throws Exception {
+    final VirtualThreadTask<Thread> virtualThreadTask =
+        VirtualThreadTask.create(Thread::currentThread, Duration.ofSeconds(5));
+
+    // against target/classes this is the Java 8 version even on Java 21; against the multi-release
+    // JAR on Java 21 and later, the virtual one
+    assertThat(isVirtual(virtualThreadTask.call())).isEqualTo(VirtualThreadTask.isVirtual());
+  }
+
+  @Test
+  public void rethrowsTheExceptionOfTheTask() {
+    final VirtualThreadTask<Integer> virtualThreadTask =
+        VirtualThreadTask.create(
+            () -> {
+              throw new IllegalStateException();
+            },
+            Duration.ofSeconds(5));
+
+    assertThat(catchThrowable(virtualThreadTask::call)).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void interruptsTheTaskAndTimesOutTheCallAfterTheTimeout() throws Exception {
+    final AtomicBoolean interrupted = new AtomicBoolean();
+    final CountDownLatch done = new CountDownLatch(1);
+    final CircuitBreakerExecutor<Integer> circuitBreakerExecutor =
+        CircuitBreakerExecutor.create(
+            "SOME_TASK",
+            VirtualThreadTask.create(
+                () -> {
+                  try {
+                    Thread.sleep(10_000);
+                    return 1;
+                  } catch (InterruptedException e) {
+                    interrupted.set(true);
+                    throw e;
+                  } finally {
+                    done.countDown();
+                  }
+                },
+                Duration.ofMillis(20)),
+            CircuitBreakerConfig.builder()
+                .errorToleranceFactor(1)
+                .failOnExceptions(Collections.singletonList(TimeoutException.class))
+                .build());
+
+    assertThat(catchThrowable(circuitBreakerExecutor::execute))
+        .isInstanceOf(TimeoutException.class);
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(interrupted.get()).isTrue();
+    assertThat(circuitBreakerExecutor.getState()).isEqualTo(CircuitState.OPEN);
+  }
+
+  @Test
+  public void rejectsTasksOnceEveryPlatformThreadIsBusy() {
+    final ExecutorService pool = TaskThreads.newPool(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Runnable blocked =
+        () -> {
+          try {
+            release.await();
+          } catch (InterruptedException ignored) {
+            // the thread returns to the pool
+          }
+        };
+    try {
+      pool.execute(blocked);
+      pool.execute(blocked);
+
+      assertThat(catchThrowable(() -> pool.execute(blocked)))
+          .isInstanceOf(RejectedExecutionException.class);
+    } finally {
+      release.countDown();
+      pool.shutdown();
+    }
+  }
+
+  /** Returns <tt>Thread.isVirtual()</tt> on Java 21 and later, and <tt>false</tt> before. */
+  private static boolean isVirtual(Thread thread) throws Exception {
+    try {
+      return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+}
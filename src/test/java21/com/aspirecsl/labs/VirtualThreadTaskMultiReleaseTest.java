@@ -0,0 +1,25 @@
+package com.aspirecsl.labs;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A unit test class for the Java 21 version of {@link VirtualThreadTask}, run against the
+ * multi-release JAR
+ *
+ * @author anoopr
+ */
+public class VirtualThreadTaskMultiReleaseTest {
+
+  @Test
+  public void runsTheTaskOnAVirtualThread() throws Exception {
+    final VirtualThreadTask<Thread> virtualThreadTask =
+        VirtualThreadTask.create(Thread::currentThread, Duration.ofSeconds(5));
+
+    assertThat(VirtualThreadTask.isVirtual()).isTrue();
+    assertThat(virtualThreadTask.call().isVirtual()).isTrue();
+  }
+}